@@ -0,0 +1,76 @@
+package io.xygeni.extensions.custom_detectors;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * BenchmarkSupport - Scaffolding shared by the JMH benchmarks of the custom detectors: command line arguments,
+ * runner options, secondary results and the generated corpus directories.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class BenchmarkSupport {
+
+  private BenchmarkSupport() {}
+
+  /** The arguments, split at blanks: exec:exec passes benchmark.args as a single argument */
+  public static List<String> args(String[] args) {
+    var argv = new ArrayList<String>();
+    for(String arg : args) argv.addAll(Arrays.asList(arg.trim().split("\\s+")));
+    argv.removeIf(String::isEmpty);
+    return argv;
+  }
+
+  /** Runner options with the given heap, the module directory and the allocation profiler */
+  public static ChainedOptionsBuilder options(String heap) {
+    return new OptionsBuilder()
+      // forked JVMs need the module directory to find the detector configurations
+      .jvmArgsAppend("-Xms" + heap, "-Xmx" + heap, "-Dproject.rootdir=" + TestHelper.getModuleBasedir().getAbsolutePath())
+      .addProfiler(GCProfiler.class);
+  }
+
+  /** A single short fork, for smoke-testing a timed benchmark */
+  public static ChainedOptionsBuilder quick(ChainedOptionsBuilder opts) {
+    return opts.warmupIterations(1).warmupTime(TimeValue.seconds(2)).measurementIterations(2).measurementTime(TimeValue.seconds(2));
+  }
+
+  /** Score of a secondary result (a profiler or an aux counter), or NaN if missing */
+  public static double secondary(RunResult r, String label) {
+    var secondary = r.getSecondaryResults();
+    // older JMH versions prefix the profiler results with '·'
+    Result<?> res = secondary.containsKey(label) ? secondary.get(label) : secondary.get("·" + label);
+    return res == null ? Double.NaN : res.getScore();
+  }
+
+  /**
+   * Prints what a trial runs on, and what a first scan found, as a JMH comment line; fails the trial if it
+   * is not ok, so a detector or provider that finds nothing is not measured.
+   */
+  public static void sanityCheck(boolean ok, String format, Object... args) {
+    String message = String.format(format, args);
+    System.out.println("# " + message);
+    if(!ok) throw new IllegalStateException("Sanity check failed: " + message);
+  }
+
+  /** Deletes a generated corpus */
+  public static void deleteTree(File dir) throws IOException {
+    try(Stream<Path> paths = Files.walk(dir.toPath())) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+}
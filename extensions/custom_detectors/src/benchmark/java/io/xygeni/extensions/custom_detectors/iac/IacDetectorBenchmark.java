@@ -0,0 +1,227 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.commons.file.FileType;
+import com.depsdoctor.core.model.iac.IacFramework;
+import com.depsdoctor.iac.scanner.config.DetectorConfig;
+import com.depsdoctor.iac.scanner.detector.IacFlawDetector;
+import com.depsdoctor.iac.scanner.detector.terraform.TerraformDetector;
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
+import com.depsdoctor.stan.scanner.parser.iac.parser.terraform.TerraformParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.args;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.deleteTree;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.options;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.quick;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.sanityCheck;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.secondary;
+
+/**
+ * IacDetectorBenchmark - Time and allocation per scan of a generated Terraform module ({@link TerraformCorpus}),
+ * for each stage separately, so that scaling cliffs show up as the module grows:
+ * <ul>
+ *   <li>{@code parse}: the Terraform parser, without the template cache;</li>
+ *   <li>{@code index}: building the bucket acl edges of a new {@link TerraformIndex};</li>
+ *   <li>{@code s3PublicAclRead}: {@link S3PublicACLRead} on the parsed module, building its index;</li>
+ *   <li>{@code albProtectedByWaf}: the {@code custom_alb_protected_by_waf} XYPOL detector.</li>
+ * </ul>
+ * Each invocation is a new scan, with a new {@link IacContext} created out of the measured time, so the indexes kept
+ * in the context are built again instead of being looked up.
+ * Run with {@code mvn test-compile exec:exec -P default,benchmark -Dbenchmark.main=io.xygeni.extensions.custom_detectors.iac.IacDetectorBenchmark}.
+ * Arguments, passed with {@code -Dbenchmark.args="..."}:
+ * <ul>
+ *   <li>{@code --resources N[,M...]}: module sizes (default: 1000,10000,100000)</li>
+ *   <li>{@code --benchmarks parse,index,...}: stages to run (default: all)</li>
+ *   <li>{@code --quick}: a single short fork</li>
+ * </ul>
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IacDetectorBenchmark {
+  private static final String S3 = "custom_s3_bucket_acl_read_to_all";
+  private static final String ALB = "custom_alb_protected_by_waf";
+  private static final List<String> BENCHMARKS = List.of("parse", "index", "s3PublicAclRead", "albProtectedByWaf");
+
+  /** Number of resources in the module */
+  @Param({"1000"})
+  public int resources;
+
+  @Param({"42"})
+  public long seed;
+
+  private TerraformCorpus.Module module;
+  private Configuration conf;
+  private List<Resource> buckets;
+  private final Unindexed unindexed = new Unindexed();
+
+  private Detector s3;
+  private Detector alb;
+
+  /** A new scan context for each invocation */
+  @State(Scope.Thread)
+  public static class Scan {
+    IacContext ctx;
+
+    @Setup(Level.Invocation)
+    public void newScan(IacDetectorBenchmark benchmark) {
+      ctx = IacRuleTestHelper.context(benchmark.module.getDirectory());
+    }
+  }
+
+  /** A detector configured once, run with a new context on each invocation */
+  private static final class Detector {
+    private final DetectorConfig dc;
+    private final IacFlawDetector rule;
+
+    Detector(String id, IacFlawDetector rule, File dir) {
+      IacContext ctx = IacRuleTestHelper.context(dir);
+      this.dc = IacRuleTestHelper.load(id, IacFramework.terraform);
+      dc.setEnabled(true);
+      ctx.getConfiguration().addDetector(dc);
+      this.rule = rule != null ? rule : IacRuleTestHelper.loadRule(id, IacFramework.terraform, ctx);
+      this.rule.configure(dc, ctx.getConfiguration());
+      this.rule.initialize(ctx);
+    }
+
+    IacContext run(File dir, Configuration conf) {
+      return run(IacRuleTestHelper.context(dir), conf);
+    }
+
+    IacContext run(IacContext ctx, Configuration conf) {
+      ctx.getConfiguration().addDetector(dc);
+      rule.detect(conf, ctx);
+      return ctx;
+    }
+  }
+
+  /** Base class lookups, without the index */
+  private static final class Unindexed extends TerraformDetector {
+    List<Resource> all(Configuration conf, String type) {
+      List<Resource> result = new ArrayList<>();
+      for(var r : resources(conf, type)) result.add(r);
+      return result;
+    }
+
+    @Override protected void detect(Configuration conf, IacContext ctx) {}
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    File dir = Files.createTempDirectory("terraform-corpus").toFile();
+    module = new TerraformCorpus(seed).generate(dir, resources);
+    conf = parse();
+    buckets = unindexed.all(conf, TerraformCorpus.BUCKET);
+
+    s3 = new Detector(S3, new S3PublicACLRead(), dir);
+    alb = new Detector(ALB, null, dir);
+
+    // the corpus has public acls and unprotected load balancers
+    int s3Flaws = s3.run(dir, conf).flaws().getFlaws().size();
+    int albFlaws = alb.run(dir, conf).flaws().getFlaws().size();
+    sanityCheck(s3Flaws > 0 && albFlaws > 0, "%,d resources %s, %,d bytes: %s %,d flaws, %s %,d flaws",
+      module.getResources(), module.getCounts(), module.getBytes(), S3, s3Flaws, ALB, albFlaws);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    deleteTree(module.getDirectory());
+  }
+
+  @Benchmark
+  public Configuration parse() throws Exception {
+    return (Configuration) new TerraformParser().parse(module.getMainTf(), "main.tf", FileType.terraform, module.getDirectory());
+  }
+
+  @Benchmark
+  public int index(Scan scan) {
+    var index = TerraformIndex.of(scan.ctx, conf);
+    int edges = 0;
+    for(Resource bucket : buckets) {
+      var acls = index.referencing(bucket, "bucket", TerraformCorpus.BUCKET_ACL, t -> unindexed.all(conf, t));
+      if(acls != null) edges += acls.size();
+    }
+    return edges;
+  }
+
+  @Benchmark
+  public IacContext s3PublicAclRead(Scan scan) {
+    return s3.run(scan.ctx, conf);
+  }
+
+  @Benchmark
+  public IacContext albProtectedByWaf(Scan scan) {
+    return alb.run(scan.ctx, conf);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    String sizes = "1000,10000,100000";
+    List<String> benchmarks = BENCHMARKS;
+    boolean quick = false;
+
+    var argv = args(args);
+    for(int i = 0; i < argv.size(); i++) {
+      switch (argv.get(i)) {
+        case "--resources": sizes = argv.get(++i); break;
+        case "--benchmarks": benchmarks = Arrays.asList(argv.get(++i).split(",")); break;
+        case "--quick": quick = true; break;
+        default:
+          System.err.println("Usage: IacDetectorBenchmark [--resources N,...] [--benchmarks parse,index,...] [--quick]");
+          return;
+      }
+    }
+
+    ChainedOptionsBuilder opts = options("2g").param("resources", sizes.split(","));
+    for(String b : benchmarks) opts.include(IacDetectorBenchmark.class.getName() + "." + b + "$");
+    if(quick) quick(opts);
+
+    report(new Runner(opts.build()).run());
+  }
+
+  /** Prints time and allocation per scan, and per resource, for each stage and module size */
+  private static void report(Collection<RunResult> results) {
+    System.out.printf("%n%-20s %10s %12s %14s %14s %16s%n",
+      "Benchmark", "Resources", "ms/op", "us/resource", "Alloc MB/op", "Alloc B/resource");
+    for(RunResult r : results) {
+      String name = r.getParams().getBenchmark();
+      int n = Integer.parseInt(r.getParams().getParam("resources"));
+      double ms = r.getPrimaryResult().getScore();
+      double bytes = secondary(r, "gc.alloc.rate.norm");
+      System.out.printf("%-20s %10d %12.3f %14.3f %14.2f %16.0f%n",
+        name.substring(name.lastIndexOf('.') + 1), n, ms, ms * 1000 / n, bytes / (1024 * 1024), bytes / n);
+    }
+  }
+}
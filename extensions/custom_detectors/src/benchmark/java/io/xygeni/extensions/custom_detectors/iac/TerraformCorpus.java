@@ -0,0 +1,135 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * TerraformCorpus - Generates a synthetic Terraform module for benchmarking IaC detectors, with a given number of resources.
+ * <p>
+ * Resources are the ones the custom detectors look at, linked as in real configurations: S3 buckets with
+ * {@code aws_s3_bucket_acl} resources referencing them, and load balancers with WAF web ACL associations.
+ * The fan-in is skewed, as in real modules: most buckets have no separate acl or a single one, a few have many.
+ * About a third of the resources are unrelated (instances, security groups referencing each other) and only add
+ * to the graph. Some acls are public and some load balancers are not protected, so the detectors report flaws.
+ * <p>
+ * Generation is deterministic for a given seed. The module is a single {@code main.tf}.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class TerraformCorpus {
+  public static final String BUCKET = "aws_s3_bucket";
+  public static final String BUCKET_ACL = "aws_s3_bucket_acl";
+  public static final String LB = "aws_lb";
+  public static final String WAF_ASSOCIATION = "aws_wafv2_web_acl_association";
+
+  private static final String[] ACLS = { "private", "private", "private", "log-delivery-write", "public-read", "website" };
+
+  private final Random random;
+  private final Map<String, Integer> counts = new TreeMap<>();
+
+  public TerraformCorpus(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /** A generated module */
+  public static class Module {
+    private final File directory;
+    private final File mainTf;
+    private final long bytes;
+    private final Map<String, Integer> counts;
+
+    Module(File directory, File mainTf, long bytes, Map<String, Integer> counts) {
+      this.directory = directory;
+      this.mainTf = mainTf;
+      this.bytes = bytes;
+      this.counts = Collections.unmodifiableMap(counts);
+    }
+
+    public File getDirectory() { return directory; }
+    public File getMainTf() { return mainTf; }
+    public long getBytes() { return bytes; }
+    /** Number of resources, by type */
+    public Map<String, Integer> getCounts() { return counts; }
+    public int getResources() { return counts.values().stream().mapToInt(Integer::intValue).sum(); }
+  }
+
+  /** Writes a module with about the given number of resources in dir */
+  public Module generate(File dir, int resources) {
+    int buckets = Math.max(1, resources * 3 / 10);
+    int acls = Math.max(1, resources / 4);
+    int lbs = Math.max(1, resources / 20);
+    int associations = lbs / 2;
+    int others = Math.max(0, resources - buckets - acls - lbs - 2 * associations);
+
+    File main = new File(dir, "main.tf");
+    try(Writer w = Files.newBufferedWriter(main.toPath(), StandardCharsets.UTF_8)) {
+      w.write("variable \"env\" {\n  default = \"bench\"\n}\n\n");
+
+      for(int i = 0; i < buckets; i++) {
+        w.write(String.format("resource \"%s\" \"b%d\" {\n  bucket = \"bucket-%d-${var.env}\"\n", BUCKET, i, i));
+        // a few buckets still use the deprecated acl attribute
+        if(random.nextInt(20) == 0) w.write(String.format("  acl    = \"%s\"\n", acl()));
+        w.write("}\n\n");
+      }
+      for(int i = 0; i < acls; i++) {
+        w.write(String.format("resource \"%s\" \"a%d\" {\n  bucket = %s.b%d.id\n  acl    = \"%s\"\n}\n\n",
+          BUCKET_ACL, i, BUCKET, skewed(buckets), acl()));
+      }
+      for(int i = 0; i < lbs; i++) {
+        w.write(String.format("resource \"%s\" \"lb%d\" {\n  name               = \"lb-%d\"\n", LB, i, i));
+        int kind = random.nextInt(10);
+        if(kind == 0) w.write("  internal           = true\n");
+        else if(kind == 1) w.write("  load_balancer_type = \"network\"\n");
+        else w.write("  load_balancer_type = \"application\"\n");
+        w.write("}\n\n");
+      }
+      for(int i = 0; i < associations; i++) {
+        w.write(String.format("resource \"aws_wafv2_web_acl\" \"waf%d\" {\n  name  = \"waf-%d\"\n  scope = \"REGIONAL\"\n}\n\n", i, i));
+        w.write(String.format(
+          "resource \"%s\" \"assoc%d\" {\n  resource_arn = %s.lb%d.arn\n  web_acl_arn  = aws_wafv2_web_acl.waf%d.arn\n}\n\n",
+          WAF_ASSOCIATION, i, LB, random.nextInt(lbs), i
+        ));
+      }
+      for(int i = 0; i < others; i++) {
+        if(i % 2 == 0) {
+          w.write(String.format("resource \"aws_security_group\" \"sg%d\" {\n  name = \"sg-%d\"\n}\n\n", i, i));
+        } else {
+          w.write(String.format(
+            "resource \"aws_instance\" \"vm%d\" {\n  ami                    = \"ami-0123456789\"\n" +
+            "  instance_type          = \"t3.micro\"\n  vpc_security_group_ids = [aws_security_group.sg%d.id]\n}\n\n",
+            i, i - 1
+          ));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    counts.put(BUCKET, buckets);
+    counts.put(BUCKET_ACL, acls);
+    counts.put(LB, lbs);
+    counts.put("aws_wafv2_web_acl", associations);
+    counts.put(WAF_ASSOCIATION, associations);
+    counts.put("other", others);
+    return new Module(dir, main, main.length(), counts);
+  }
+
+  private String acl() {
+    return ACLS[random.nextInt(ACLS.length)];
+  }
+
+  /** Index in [0, n), skewed to the low end: a few targets get most of the references */
+  private int skewed(int n) {
+    double u = random.nextDouble();
+    return Math.min(n - 1, (int) (n * u * u * u));
+  }
+}
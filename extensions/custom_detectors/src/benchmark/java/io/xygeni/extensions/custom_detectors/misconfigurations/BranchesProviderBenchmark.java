@@ -0,0 +1,202 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RepositoryBatch;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.args;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.options;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.sanityCheck;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.secondary;
+
+/**
+ * BranchesProviderBenchmark - Wall time of an organization scan by {@link UnreviewedBranch}: the protections of
+ * the default and release branches of every repository, fetched by a branches provider from a {@link MockScmServer}
+ * with a fixed latency per request, {@code concurrency} repositories at a time.
+ * <p>
+ * The scan is bound by the round trips, not by the cpu, so the interesting numbers are the requests per repository
+ * (which the provider decides) and how the wall time goes down with the concurrency.
+ * Run with {@code mvn test-compile exec:exec -P default,benchmark -Dbenchmark.main=io.xygeni.extensions.custom_detectors.misconfigurations.BranchesProviderBenchmark}.
+ * Arguments, passed with {@code -Dbenchmark.args="..."}:
+ * <ul>
+ *   <li>{@code --providers githubGraphql,gitlabRest}: providers to run (default: both)</li>
+ *   <li>{@code --repos N}: repositories in the organization (default: 1000)</li>
+ *   <li>{@code --branches N}: branches per repository (default: 500)</li>
+ *   <li>{@code --latency MS}: delay per response (default: 50)</li>
+ *   <li>{@code --concurrency N[,M...]}: repositories fetched at a time (default: 1,8,32)</li>
+ *   <li>{@code --quick}: a single scan per configuration</li>
+ * </ul>
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class BranchesProviderBenchmark {
+
+  @Param({"githubGraphql", "gitlabRest"})
+  public String provider;
+
+  /** Repositories in the organization */
+  @Param({"1000"})
+  public int repos;
+
+  /** Branches per repository */
+  @Param({"500"})
+  public int branches;
+
+  @Param({"50"})
+  public long latencyMs;
+
+  @Param({"1", "8", "32"})
+  public int concurrency;
+
+  private MockScmServer server;
+  private OkHttpClient client;
+  private List<String> repositories;
+
+  /** Requests sent to the server and repositories scanned, per scan */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counters {
+    public long requests;
+    public long repositories;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      requests = 0;
+      repositories = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() {
+    server = new MockScmServer().repos(repos).branches(branches).latency(latencyMs).start();
+    repositories = server.repositories();
+    // without the http cache of ScmHttp: every scan goes to the server
+    client = new OkHttpClient();
+
+    var found = fetch(MockScmServer.repo(1)).keySet();
+    var expected = server.expected(1).keySet();
+    sanityCheck(found.equals(expected), "%s: %,d repositories, %,d branches, %d ms latency, %d requests for %s, found %s, expected %s",
+      provider, repos, branches, latencyMs, server.getRequests(), MockScmServer.repo(1), found, expected);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    server.close();
+    client.dispatcher().executorService().shutdown();
+    client.connectionPool().evictAll();
+  }
+
+  @Benchmark
+  public List<RepositoryBatch.Result<String, Map<String, BranchProtectionInfo>>> scan(Counters counters) {
+    long before = server.getRequests();
+    var results = new RepositoryBatch(concurrency).fetch(repositories, this::fetch);
+    for(var r : results) {
+      if(!r.isOk()) throw new IllegalStateException(r.getRepository() + ": " + r.getError(), r.getError());
+    }
+    counters.requests += server.getRequests() - before;
+    counters.repositories += results.size();
+    return results;
+  }
+
+  private Map<String, BranchProtectionInfo> fetch(String repo) {
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    switch (provider) {
+      case "githubGraphql":
+        new GithubGraphqlBranchesProvider(null, MockScmServer.RELEASE_PATTERN, server.githubGraphqlUrl(), "t0ken", client)
+          .fetch(MockScmServer.ORG, repo, result);
+        break;
+      case "gitlabRest":
+        new GitlabRestBranchesProvider(null, MockScmServer.RELEASE_PATTERN, server.gitlabApiUrl(), "t0ken", client)
+          .fetch(MockScmServer.ORG + "/" + repo, result);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown provider: " + provider);
+    }
+    return result;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    String providers = "githubGraphql,gitlabRest";
+    String repos = "1000";
+    String branches = "500";
+    String latency = "50";
+    String concurrency = "1,8,32";
+    boolean quick = false;
+
+    var argv = args(args);
+    for(int i = 0; i < argv.size(); i++) {
+      switch (argv.get(i)) {
+        case "--providers": providers = argv.get(++i); break;
+        case "--repos": repos = argv.get(++i); break;
+        case "--branches": branches = argv.get(++i); break;
+        case "--latency": latency = argv.get(++i); break;
+        case "--concurrency": concurrency = argv.get(++i); break;
+        case "--quick": quick = true; break;
+        default:
+          System.err.println("Usage: BranchesProviderBenchmark [--providers githubGraphql,gitlabRest] [--repos N] " +
+            "[--branches N] [--latency MS] [--concurrency N,...] [--quick]");
+          return;
+      }
+    }
+
+    ChainedOptionsBuilder opts = options("1g")
+      .include(BranchesProviderBenchmark.class.getName() + ".scan$")
+      .param("provider", providers.split(","))
+      .param("repos", repos)
+      .param("branches", branches)
+      .param("latencyMs", latency)
+      .param("concurrency", concurrency.split(","));
+    if(quick) {
+      opts.warmupIterations(0).measurementIterations(1);
+    }
+
+    report(new Runner(opts.build()).run());
+  }
+
+  /** Prints wall time per scan and per repository, and requests per repository, for each provider and concurrency */
+  private static void report(Collection<RunResult> results) {
+    System.out.printf("%n%-14s %8s %8s %12s %12s %14s %14s%n",
+      "Provider", "Repos", "Threads", "ms/scan", "ms/repo", "requests/repo", "Alloc KB/repo");
+    for(RunResult r : results) {
+      var params = r.getParams();
+      int n = Integer.parseInt(params.getParam("repos"));
+      double ms = r.getPrimaryResult().getScore();
+      double requests = secondary(r, "requests") / Math.max(1, secondary(r, "repositories"));
+      double bytes = secondary(r, "gc.alloc.rate.norm");
+      System.out.printf("%-14s %8d %8s %12.0f %12.2f %14.2f %14.1f%n",
+        params.getParam("provider"), n, params.getParam("concurrency"), ms, ms / n, requests, bytes / 1024 / n);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package io.xygeni.extensions.custom_detectors.secrets;
+
+import com.depsdoctor.commons.Resources;
+import com.depsdoctor.secrets.scanner.config.SecretsConfig;
+import com.depsdoctor.secrets.scanner.detector.SecretDetectorLoader;
+import com.depsdoctor.secrets.scanner.engine.SecretsContext;
+import com.depsdoctor.secrets.scanner.engine.SecretsEngine;
+import io.xygeni.extensions.custom_detectors.TestHelper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.args;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.deleteTree;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.options;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.quick;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.sanityCheck;
+import static io.xygeni.extensions.custom_detectors.BenchmarkSupport.secondary;
+
+/**
+ * SecretDetectorBenchmark - Throughput (MB/s) and allocation rate (bytes allocated per scanned byte)
+ * of each custom secret detector, scanning a synthetic {@link SecretsCorpus} with the secrets engine.
+ * <p>
+ * Each detector configuration in {@code src/main/resources/secrets} is benchmarked alone, so the numbers can be compared
+ * against the budget for the org-wide scan. Verification is disabled: only parsing and detection are measured.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -P default,benchmark}. Arguments, passed with {@code -Dbenchmark.args="..."}:
+ * <ul>
+ *   <li>{@code --detectors custom_a,custom_b}: detectors to benchmark (default: all)</li>
+ *   <li>{@code --mb N}: corpus size in MB (default: 16)</li>
+ *   <li>{@code --density N[,M...]}: planted secrets per MB (default: 50)</li>
+ *   <li>{@code --quick}: a single short fork, for smoke-testing a new detector</li>
+ * </ul>
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SecretDetectorBenchmark {
+  private static final String SECRETS_DIR = "src/main/resources/secrets";
+  private static final double MB = 1_000_000.0;
+
+  /** Detector configuration file, in src/main/resources/secrets */
+  @Param({"custom_gitlab_token"})
+  public String detector;
+
+  /** Corpus size, in MB */
+  @Param({"16"})
+  public int corpusMb;
+
+  /** Planted secrets per MB */
+  @Param({"50"})
+  public int hitsPerMb;
+
+  @Param({"42"})
+  public long seed;
+
+  private SecretsCorpus.Corpus corpus;
+  private SecretsConfig conf;
+  private SecretsEngine engine;
+
+  /** Bytes scanned, reported by JMH as a rate (bytes per second) */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Scanned {
+    public long bytes;
+
+    @Setup(Level.Iteration) public void reset() { bytes = 0; }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    File dir = Files.createTempDirectory("secrets-corpus").toFile();
+    corpus = new SecretsCorpus(seed, hitsPerMb).generate(dir, corpusMb * 1_000_000L);
+
+    conf = SecretTestHelper.buildContext(detector, dir).getConfiguration();
+    conf.setTimeout(0);
+    conf.setParsingTimeout(0);
+    conf.setNoVerify(true);
+    SecretTestHelper.load(detector, conf);
+    conf.getDetectors().forEach(dc -> dc.setEnabled(true));
+
+    engine = new SecretsEngine();
+    engine.setDetectors(new SecretDetectorLoader().loadDetectors(conf, d -> true, Resources.getThreadClassLoader()));
+
+    // findings vs planted secrets
+    int[] findings = {0};
+    scanOnce().secrets().forEach(s -> findings[0]++);
+    sanityCheck(findings[0] > 0 || hitsPerMb == 0, "%s: %,d bytes in %,d files, %,d findings, planted %s",
+      detector, corpus.getBytes(), corpus.getFiles().size(), findings[0], corpus.getPlanted());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    deleteTree(corpus.getDirectory());
+  }
+
+  @Benchmark
+  public SecretsContext scan(Scanned scanned) {
+    var ctx = scanOnce();
+    scanned.bytes += corpus.getBytes();
+    return ctx;
+  }
+
+  private SecretsContext scanOnce() {
+    var ctx = SecretTestHelper.buildContext(detector, corpus.getDirectory(), conf);
+    engine.scanSecrets(corpus.getFiles().stream(), ctx);
+    return ctx;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    List<String> detectors = allDetectors();
+    String mb = "16", density = "50";
+    boolean quick = false;
+
+    var argv = args(args);
+    for(int i = 0; i < argv.size(); i++) {
+      switch (argv.get(i)) {
+        case "--detectors": detectors = Arrays.asList(argv.get(++i).split(",")); break;
+        case "--mb": mb = argv.get(++i); break;
+        case "--density": density = argv.get(++i); break;
+        case "--quick": quick = true; break;
+        default:
+          System.err.println("Usage: SecretDetectorBenchmark [--detectors id,...] [--mb N] [--density N,...] [--quick]");
+          return;
+      }
+    }
+
+    ChainedOptionsBuilder opts = options("1g")
+      .include(SecretDetectorBenchmark.class.getName() + ".scan")
+      .param("detector", detectors.toArray(new String[0]))
+      .param("corpusMb", mb)
+      .param("hitsPerMb", density.split(","));
+    if(quick) quick(opts);
+
+    report(new Runner(opts.build()).run());
+  }
+
+  /** Prints MB/s and allocated bytes per scanned byte, for each detector and hit density */
+  private static void report(Collection<RunResult> results) {
+    System.out.printf("%n%-32s %10s %12s %14s%n", "Detector", "Hits/MB", "MB/s", "Alloc B/byte");
+    for(RunResult r : results) {
+      var params = r.getParams();
+      double bytesPerSec = secondary(r, "bytes");
+      // gc.alloc.rate is in MB/sec, with MB = 2^20 bytes
+      double allocPerSec = secondary(r, "gc.alloc.rate") * 1024 * 1024;
+      System.out.printf("%-32s %10s %12.2f %14.3f%n",
+        params.getParam("detector"), params.getParam("hitsPerMb"),
+        bytesPerSec / MB, bytesPerSec > 0 ? allocPerSec / bytesPerSec : Double.NaN);
+    }
+  }
+
+  /** Ids of all detector configurations in src/main/resources/secrets */
+  private static List<String> allDetectors() {
+    File dir = new File(TestHelper.getModuleBasedir(), SECRETS_DIR);
+    try(Stream<Path> files = Files.list(dir.toPath())) {
+      var ids = new ArrayList<String>();
+      files.map(p -> p.getFileName().toString()).filter(n -> n.endsWith(".yml")).sorted()
+        .forEach(n -> ids.add(n.substring(0, n.length() - ".yml".length())));
+      return ids;
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package io.xygeni.extensions.custom_detectors.secrets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * SecretsCorpus - Generates a synthetic file tree for benchmarking secret detectors, with a controlled hit density.
+ * <p>
+ * The corpus mixes source files, env files, YAML configuration files with JWTs, and {@code .docker/config.json} files.
+ * Planted secrets follow the format of the custom detectors (GitLab and Dropbox tokens, Xygeni tokens),
+ * plus other JWTs and near-misses that pass the quick filters but not the patterns.
+ * Secrets are spaced by an exponentially distributed number of bytes, with mean {@code 1MB / hitsPerMb}.
+ * <p>
+ * Generation is deterministic for a given seed.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class SecretsCorpus {
+  // planted secret kinds
+  public static final String GITLAB = "gitlab_token";
+  public static final String DROPBOX = "dropbox_token";
+  public static final String XYGENI = "xygeni_token";
+  /** Well-formed JWT, but not a Xygeni token */
+  public static final String OTHER_JWT = "other_jwt";
+  /** Matches a quick filter, but not the detector pattern */
+  public static final String NEAR_MISS = "near_miss";
+  public static final String DOCKER_AUTH = "docker_auth";
+
+  private static final String ALNUM = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+  private static final String TOKEN_CHARS = ALNUM + "-_";
+  private static final String[] WORDS = {
+    "account", "buffer", "client", "config", "default", "element", "factory", "handler", "index", "listener",
+    "manager", "node", "offset", "parser", "queue", "request", "response", "service", "session", "value"
+  };
+  private static final Base64.Encoder B64URL = Base64.getUrlEncoder().withoutPadding();
+
+  private final Random random;
+  private final double hitsPerMb;
+  private final Map<String, Integer> planted = new TreeMap<>();
+  private long untilNextHit;
+
+  public SecretsCorpus(long seed, double hitsPerMb) {
+    this.random = new Random(seed);
+    this.hitsPerMb = hitsPerMb;
+    this.untilNextHit = nextGap();
+  }
+
+  /** A generated corpus */
+  public static class Corpus {
+    private final File directory;
+    private final List<File> files;
+    private final long bytes;
+    private final Map<String, Integer> planted;
+
+    Corpus(File directory, List<File> files, long bytes, Map<String, Integer> planted) {
+      this.directory = directory;
+      this.files = Collections.unmodifiableList(files);
+      this.bytes = bytes;
+      this.planted = Collections.unmodifiableMap(planted);
+    }
+
+    public File getDirectory() { return directory; }
+    public List<File> getFiles() { return files; }
+    /** Total size of the files, in bytes */
+    public long getBytes() { return bytes; }
+    /** Number of planted secrets, by kind */
+    public Map<String, Integer> getPlanted() { return planted; }
+  }
+
+  /** Generates a corpus of about {@code totalBytes} into dir */
+  public Corpus generate(File dir, long totalBytes) {
+    List<File> files = new ArrayList<>();
+    long bytes = 0;
+    int n = 0;
+    try {
+      while(bytes < totalBytes) {
+        File f;
+        String content;
+        int kind = random.nextInt(10);
+        if(kind < 6) {
+          f = new File(dir, "src/pkg" + (n % 50) + "/Service" + n + ".java");
+          content = sourceFile(n, 16 * 1024 + random.nextInt(48 * 1024));
+        } else if(kind < 8) {
+          f = new File(dir, "deploy/env" + n + "/.env");
+          content = envFile(2 * 1024 + random.nextInt(6 * 1024));
+        } else if(kind < 9) {
+          f = new File(dir, "config/app" + n + ".yml");
+          content = yamlFile(4 * 1024 + random.nextInt(8 * 1024));
+        } else {
+          f = new File(dir, "home/user" + n + "/.docker/config.json");
+          content = dockerConfig(1 + random.nextInt(6));
+        }
+        write(f, content);
+        files.add(f);
+        bytes += f.length();
+        n++;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new Corpus(dir, files, bytes, new TreeMap<>(planted));
+  }
+
+  private String sourceFile(int n, int size) {
+    var sb = new StringBuilder(size + 256);
+    sb.append("package com.example.pkg").append(n % 50).append(";\n\n");
+    sb.append("public class Service").append(n).append(" {\n");
+    while(sb.length() < size) {
+      int len = sb.length();
+      switch (random.nextInt(4)) {
+        case 0:
+          sb.append("  private static final String ").append(word().toUpperCase()).append('_').append(random.nextInt(1000))
+            .append(" = \"").append(word()).append('.').append(word()).append("\";\n");
+          break;
+        case 1:
+          sb.append("  // TODO: review the ").append(word()).append(" ").append(word()).append(" when the ")
+            .append(word()).append(" is closed\n");
+          break;
+        case 2:
+          sb.append("  public int ").append(word()).append(random.nextInt(100)).append("(int a, int b) { return a * ")
+            .append(random.nextInt(97)).append(" + b; }\n");
+          break;
+        default:
+          sb.append("    log.info(\"").append(word()).append(" {} for ").append(word()).append("\", ")
+            .append(word()).append(");\n");
+      }
+      if(hit(sb.length() - len)) {
+        sb.append("  private static final String TOKEN = \"").append(secret()).append("\";\n");
+      }
+    }
+    return sb.append("}\n").toString();
+  }
+
+  private String envFile(int size) {
+    var sb = new StringBuilder(size + 256);
+    while(sb.length() < size) {
+      int len = sb.length();
+      sb.append(word().toUpperCase()).append('_').append(word().toUpperCase()).append('=');
+      if(random.nextBoolean()) sb.append(random.nextInt(65536)); else sb.append(word()).append('-').append(word());
+      sb.append('\n');
+      if(hit(sb.length() - len)) sb.append("API_TOKEN=").append(secret()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private String yamlFile(int size) {
+    var sb = new StringBuilder(size + 512);
+    sb.append("application:\n");
+    while(sb.length() < size) {
+      int len = sb.length();
+      sb.append("  ").append(word()).append(":\n")
+        .append("    timeout: ").append(random.nextInt(300)).append('\n')
+        .append("    url: https://").append(word()).append(".example.com/").append(word()).append('\n');
+      if(hit(sb.length() - len)) {
+        // JWTs are more frequent in configuration files
+        sb.append("    token: ").append(random.nextBoolean() ? xygeniToken() : otherJwt()).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Docker config with the given number of registries, each with an auth (always a hit for the dockercfg detector) */
+  private String dockerConfig(int registries) {
+    var sb = new StringBuilder("{\n  \"auths\": {\n");
+    for(int i = 0; i < registries; i++) {
+      String credentials = word() + random.nextInt(100) + ":" + random(ALNUM, 16 + random.nextInt(24));
+      sb.append("    \"registry").append(i).append(".example.com\": {\n")
+        .append("      \"auth\": \"")
+        .append(Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)))
+        .append("\"\n    }").append(i < registries - 1 ? "," : "").append('\n');
+      count(DOCKER_AUTH);
+    }
+    return sb.append("  },\n  \"credsStore\": \"desktop\"\n}\n").toString();
+  }
+
+  /** True if a secret must be planted after count more bytes */
+  private boolean hit(int count) {
+    if(hitsPerMb <= 0) return false;
+    untilNextHit -= count;
+    if(untilNextHit > 0) return false;
+    untilNextHit = nextGap();
+    return true;
+  }
+
+  private long nextGap() {
+    if(hitsPerMb <= 0) return Long.MAX_VALUE;
+    double mean = 1_000_000 / hitsPerMb;
+    return Math.max(1, (long) (-mean * Math.log(1 - random.nextDouble())));
+  }
+
+  private String secret() {
+    switch (random.nextInt(5)) {
+      case 0: count(GITLAB); return "glpat-" + random(TOKEN_CHARS, 20);
+      case 1: count(DROPBOX); return "sl." + random(TOKEN_CHARS, 135);
+      case 2: return xygeniToken();
+      case 3: return otherJwt();
+      default:
+        count(NEAR_MISS);
+        // too short for the patterns
+        switch (random.nextInt(3)) {
+          case 0: return "glpat-" + random(TOKEN_CHARS, 8);
+          case 1: return "sl." + word();
+          default: return "xya_" + word();
+        }
+    }
+  }
+
+  /** Real-format Xygeni token: 'xya_' prefix, HS512 JWT with user email and apitokendata.tokenId */
+  private String xygeniToken() {
+    count(XYGENI);
+    String header = "{\"alg\":\"HS512\"}";
+    String payload = "{\"sub\":\"" + word() + random.nextInt(1000) + "@example.com\",\"iat\":" + (1700000000 + random.nextInt(1000000)) +
+      ",\"apitokendata\":{\"tokenId\":" + random.nextInt(100000) + ",\"userBean\":{\"name\":\"" + word() + "\"}}}";
+    return "xya_" + jwt(header, payload, 64);
+  }
+
+  /** JWT that is not a Xygeni token */
+  private String otherJwt() {
+    count(OTHER_JWT);
+    String header = "{\"alg\":\"HS256\",\"typ\":\"JWT\"}";
+    String payload = "{\"sub\":\"" + random.nextInt(1_000_000_000) + "\",\"name\":\"" + word() + "\",\"admin\":" + random.nextBoolean() + "}";
+    return jwt(header, payload, 32);
+  }
+
+  private String jwt(String header, String payload, int signatureLen) {
+    byte[] signature = new byte[signatureLen];
+    random.nextBytes(signature);
+    return B64URL.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "." +
+      B64URL.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "." +
+      B64URL.encodeToString(signature);
+  }
+
+  private void count(String kind) {
+    planted.merge(kind, 1, Integer::sum);
+  }
+
+  private String word() {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private String random(String alphabet, int len) {
+    char[] chars = new char[len];
+    for(int i = 0; i < len; i++) chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+    return new String(chars);
+  }
+
+  private static void write(File f, String content) throws IOException {
+    Files.createDirectories(f.getParentFile().toPath());
+    try(Writer w = Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8)) {
+      w.write(content);
+    }
+  }
+}
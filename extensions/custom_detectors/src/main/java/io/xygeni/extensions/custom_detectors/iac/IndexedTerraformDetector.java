@@ -0,0 +1,61 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.iac.scanner.config.DetectorConfig;
+import com.depsdoctor.iac.scanner.config.IacScanConfig;
+import com.depsdoctor.iac.scanner.detector.terraform.TerraformDetector;
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IndexedTerraformDetector - Base class for Terraform detectors that look up resources using the {@link TerraformIndex}
+ * shared by all detectors running on the same configuration in a scan.
+ * <p>
+ * {@link #resources(Configuration, IacContext, String)} is served from the index kept in the context, so the resources
+ * of a type are filtered once per scan. Detectors share an index only when their resource filters are the same.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public abstract class IndexedTerraformDetector extends TerraformDetector {
+  /** Index scope, from the resource filters in the detector configuration */
+  private String scope = "";
+
+  @Override public void configure(DetectorConfig dc, IacScanConfig sc) {
+    super.configure(dc, sc);
+    scope = scope(dc.getResourcesToCheck(), dc.getResourcesToIgnore());
+  }
+
+  /** Empty when there are no filters, so unfiltered detectors share the default index */
+  private static String scope(String[] toCheck, String[] toIgnore) {
+    boolean none = (toCheck == null || toCheck.length == 0) && (toIgnore == null || toIgnore.length == 0);
+    return none ? "" : Arrays.toString(toCheck) + Arrays.toString(toIgnore);
+  }
+
+  /** The resources of the given type, filtered from the configuration only by the first detector asking for them */
+  protected List<Resource> resources(Configuration conf, IacContext ctx, String type) {
+    return TerraformIndex.of(ctx, conf, scope).resources(type, t -> resources(conf, t));
+  }
+
+  /**
+   * The resources of sourceType with an attribute that references target. Same result as
+   * {@code incoming(target, attribute, conf, Resource.class, pred(sourceType))}, but with a single pass on the source
+   * resources for all the targets, when the references can be resolved by the index.
+   */
+  protected List<Resource> referencing(
+    Resource target, String attribute, Configuration conf, IacContext ctx, String sourceType
+  ) {
+    var index = TerraformIndex.of(ctx, conf, scope);
+    var found = index.referencing(target, attribute, sourceType, type -> resources(conf, ctx, type));
+    if(found != null) return found;
+
+    // not resolvable from the attribute text
+    List<Resource> result = new ArrayList<>();
+    for(var r : incoming(target, attribute, conf, Resource.class, pred(sourceType))) result.add(r);
+    return result;
+  }
+}
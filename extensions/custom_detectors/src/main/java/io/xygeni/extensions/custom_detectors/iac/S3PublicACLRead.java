@@ -2,11 +2,10 @@ package io.xygeni.extensions.custom_detectors.iac;
 
 import com.depsdoctor.iac.scanner.config.DetectorConfig;
 import com.depsdoctor.iac.scanner.config.IacScanConfig;
-import com.depsdoctor.iac.scanner.detector.terraform.TerraformDetector;
 import com.depsdoctor.iac.scanner.engine.IacContext;
 import com.depsdoctor.stan.scanner.parser.iac.model.terraform.AttributeValue;
 import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
-import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
+import io.xygeni.extensions.custom_detectors.util.KeywordMatcher;
 
 import java.util.Set;
 
@@ -19,22 +18,22 @@ import java.util.Set;
  * @author john.doe
  * @version 01-Jan-1980 (john.doe)
  */
-public class S3PublicACLRead extends TerraformDetector {
+public class S3PublicACLRead extends IndexedTerraformDetector {
   private static final Set<String> FORBIDDEN = Set.of(
     "public-read", "public-read-write", "website", "authenticated-read"
   );
 
-  private Set<String> forbidden = FORBIDDEN;
+  private KeywordMatcher forbidden = KeywordMatcher.of(FORBIDDEN);
 
   @Override public void configure(DetectorConfig dc, IacScanConfig sc) {
     super.configure(dc, sc);
-    // this is how
-    forbidden = dc.getProperty("forbidden", FORBIDDEN);
+    // this is how properties are read, compiled once for the lookups in detect()
+    forbidden = KeywordMatcher.of(dc.getProperty("forbidden", FORBIDDEN));
   }
 
   @Override protected void detect(Configuration conf, IacContext ctx) {
     // This is an example of how to process a terraform configuration, looking for assets of type 'aws_s3_bucket'
-    for(var bucket : resources(conf, "aws_s3_bucket")) {
+    for(var bucket : resources(conf, ctx, "aws_s3_bucket")) {
        // acl attribute in aws_s3_bucket is deprecated
        var acl = bucket.getAttribute("acl");
        if (isTooPermissive(acl)) {
@@ -42,8 +41,8 @@ public class S3PublicACLRead extends TerraformDetector {
          createFlaw(ctx, bucket.qualifiedResource(), location(acl, ctx));
 
        } else {
-         // look for linked aws_s3_bucket_acl
-         for(var bucketAcl : incoming(bucket, "bucket", conf, Resource.class, pred("aws_s3_bucket_acl"))) {
+         // look for linked aws_s3_bucket_acl (all the acls are indexed by bucket on the first call)
+         for(var bucketAcl : referencing(bucket, "bucket", conf, ctx, "aws_s3_bucket_acl")) {
            acl = bucketAcl.getAttribute("acl");
            if(isTooPermissive(acl)) {
              // emit flaw on the acl attribute of bucket_acl, but resource = bucket
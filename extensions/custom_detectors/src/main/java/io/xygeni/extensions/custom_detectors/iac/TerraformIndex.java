@@ -0,0 +1,173 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
+import io.xygeni.extensions.custom_detectors.iac.util.TerraformReferences;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * TerraformIndex - Resource indexes over a Terraform {@link Configuration}, shared by all the detectors
+ * running on the same configuration in a scan.
+ * <p>
+ * The resources of each type are collected on first request and kept for later lookups, so a resource type
+ * is filtered from the configuration once, instead of once per detector asking for it.
+ * <p>
+ * For a (source type, attribute, target type) key, the index maps each target resource to the source resources whose
+ * attribute references it, like {@code aws_s3_bucket_acl.bucket = aws_s3_bucket.example.id}. The edges for a key are
+ * computed once, with a single pass on the source resources, so finding the sources for each target is O(1)
+ * instead of a walk on all the resources per target.
+ * <p>
+ * References are taken from the attribute text (see {@link TerraformReferences}). When an edge cannot be resolved this way
+ * (a source attribute with no reference to the target type, like a variable or a literal bucket name, or targets with
+ * the same type and name in different modules), the key is marked as incomplete, and {@link #referencing} returns null,
+ * so the caller falls back to the engine's {@code incoming()}.
+ * <p>
+ * Indexes are kept as a property of the {@link IacContext}, so they live as long as the scan, and are dropped with it.
+ * A configuration may have several indexes, one per scope: detectors that see different resources (like with different
+ * {@code resourcesToCheck} / {@code resourcesToIgnore}) must not share the cached lists.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class TerraformIndex {
+  /** Context property with the indexes of the scan */
+  private static final String PROPERTY = TerraformIndex.class.getName();
+
+  private final ConcurrentMap<String, List<Resource>> byType = new ConcurrentHashMap<>();
+  private final ConcurrentMap<EdgeKey, Edges> edges = new ConcurrentHashMap<>();
+
+  /** Not shared; use {@link #of(IacContext, Configuration)} */
+  private TerraformIndex() {}
+
+  /** The index for the configuration in the scan, created if needed */
+  public static TerraformIndex of(IacContext ctx, Configuration conf) {
+    return of(ctx, conf, "");
+  }
+
+  /** The index for the configuration in the scan, for detectors with the given scope */
+  public static TerraformIndex of(IacContext ctx, Configuration conf, String scope) {
+    Indexes indexes;
+    synchronized (ctx) {
+      indexes = (Indexes) ctx.getProperty(PROPERTY);
+      if(indexes == null) {
+        indexes = new Indexes();
+        ctx.addProperty(PROPERTY, indexes);
+      }
+    }
+    return indexes.get(conf, scope);
+  }
+
+  /**
+   * The resources of the given type, from loader on the first call for the type. The list returned is unmodifiable.
+   *
+   * @param loader the resources of a type in the configuration, typically filtered from all the resources
+   */
+  public List<Resource> resources(String type, Function<String, ? extends Iterable<Resource>> loader) {
+    return byType.computeIfAbsent(type, t -> {
+      List<Resource> list = new ArrayList<>();
+      for(Resource r : loader.apply(t)) list.add(r);
+      return Collections.unmodifiableList(list);
+    });
+  }
+
+  /**
+   * The resources of sourceType with an attribute that references target,
+   * or null if the references cannot be resolved with the index.
+   *
+   * @param resourcesOfType all the resources of a type in the configuration
+   */
+  public List<Resource> referencing(
+    Resource target, String attribute, String sourceType, Function<String, List<Resource>> resourcesOfType
+  ) {
+    String targetKey = TerraformReferences.key(target.qualifiedResource());
+    if(targetKey == null) return null;
+    String targetType = targetKey.substring(0, targetKey.indexOf('.'));
+    String targetName = targetKey.substring(targetType.length() + 1);
+
+    var key = new EdgeKey(sourceType, attribute, targetType);
+    Edges e = edges.computeIfAbsent(key, k -> Edges.build(k, resourcesOfType));
+    if(!e.complete) return null;
+    return e.byTarget.getOrDefault(targetName, Collections.emptyList());
+  }
+
+  /** Number of edge keys computed */
+  public int size() { return edges.size(); }
+
+  /** Number of resource types loaded */
+  public int types() { return byType.size(); }
+
+  /** The indexes in a scan, by configuration (by identity) and scope */
+  private static final class Indexes {
+    private final Map<Configuration, Map<String, TerraformIndex>> byConf = new IdentityHashMap<>();
+
+    synchronized TerraformIndex get(Configuration conf, String scope) {
+      return byConf.computeIfAbsent(conf, c -> new HashMap<>()).computeIfAbsent(scope, s -> new TerraformIndex());
+    }
+  }
+
+  private static final class Edges {
+    /** target name -> sources */
+    private final Map<String, List<Resource>> byTarget;
+    private final boolean complete;
+
+    private Edges(Map<String, List<Resource>> byTarget, boolean complete) {
+      this.byTarget = byTarget;
+      this.complete = complete;
+    }
+
+    static Edges build(EdgeKey key, Function<String, List<Resource>> resourcesOfType) {
+      // duplicate target names (in different modules) make the text references ambiguous
+      var targetNames = new HashMap<String, Integer>();
+      for(Resource t : resourcesOfType.apply(key.targetType)) {
+        String k = TerraformReferences.key(t.qualifiedResource());
+        if(k != null) targetNames.merge(k, 1, Integer::sum);
+      }
+      if(targetNames.values().stream().anyMatch(n -> n > 1)) return new Edges(Map.of(), false);
+
+      Map<String, List<Resource>> byTarget = new HashMap<>();
+      for(Resource source : resourcesOfType.apply(key.sourceType)) {
+        var value = source.getAttribute(key.attribute);
+        if(value == null) continue;
+        String text = value.asString("");
+        var names = text == null ? List.<String>of() : TerraformReferences.names(text, key.targetType);
+        if(names.isEmpty()) return new Edges(Map.of(), false); // variable, literal... only the engine can tell
+        for(String name : names) byTarget.computeIfAbsent(name, n -> new ArrayList<>()).add(source);
+      }
+      return new Edges(byTarget, true);
+    }
+  }
+
+  private static final class EdgeKey {
+    private final String sourceType;
+    private final String attribute;
+    private final String targetType;
+
+    EdgeKey(String sourceType, String attribute, String targetType) {
+      this.sourceType = sourceType;
+      this.attribute = attribute;
+      this.targetType = targetType;
+    }
+
+    @Override public boolean equals(Object o) {
+      if(this == o) return true;
+      if(!(o instanceof EdgeKey)) return false;
+      EdgeKey k = (EdgeKey) o;
+      return sourceType.equals(k.sourceType) && attribute.equals(k.attribute) && targetType.equals(k.targetType);
+    }
+
+    @Override public int hashCode() {
+      return Objects.hash(sourceType, attribute, targetType);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import com.depsdoctor.commons.os.OS;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * TemplateCache - Content-addressed cache of parsed IaC templates.
+ * <p>
+ * The key is the SHA-256 of the bytes of the input files (walking directories in path order) plus a namespace
+ * naming the parser and the options that change the result. A template is parsed again only when one of its
+ * inputs changes. Entries are kept in memory, least recently used evicted first, and optionally written to a
+ * directory so a later process skips parsing too. Only {@link Serializable} templates go to disk; disk entries
+ * that cannot be read (like after a parser upgrade) are deleted and the template is parsed again.
+ * <p>
+ * Templates are shared between callers, so they must not be modified after parsing. Callers that may modify them
+ * cache the {@link #freeze(Object) frozen} form instead, and {@link #thaw(byte[]) thaw} a copy of their own on each get.
+ * Disk entries are read with Java deserialization: the cache directory must not be writable by untrusted users.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class TemplateCache<T> {
+  /** Environment variable or system property with the directory for the disk cache. Memory only if not set. */
+  public static final String DIR_PROPERTY = "IAC_TEMPLATE_CACHE";
+  public static final int DEFAULT_MAX_ENTRIES = 500;
+
+  private static final String SUFFIX = ".ser";
+
+  private final Cache<String, T> memory;
+  private final Path dir;
+
+  /**
+   * @param maxEntries templates kept in memory
+   * @param dir directory for the disk cache, or null for memory only
+   */
+  public TemplateCache(int maxEntries, Path dir) {
+    this.memory = CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats().build();
+    this.dir = dir;
+  }
+
+  /** A cache with the disk directory, if any, in the {@code IAC_TEMPLATE_CACHE} environment variable or system property */
+  public static <T> TemplateCache<T> fromProperties(int maxEntries) {
+    String d = OS.getProperty(DIR_PROPERTY, "");
+    return new TemplateCache<>(maxEntries, d.isBlank() ? null : Path.of(d));
+  }
+
+  /**
+   * The template for the key, parsed if not found in memory or disk. Exceptions from the parser are propagated,
+   * and nothing is cached for them. Concurrent calls for a missing key may parse it more than once.
+   */
+  public T get(String key, Supplier<? extends T> parser) {
+    T t = memory.getIfPresent(key);
+    if(t != null) return t;
+
+    t = read(key);
+    if(t == null) {
+      t = parser.get();
+      if(t == null) return null;
+      write(key, t);
+    }
+    memory.put(key, t);
+    return t;
+  }
+
+  /** Number of templates in memory */
+  public long size() { return memory.size(); }
+
+  public long hits() { return memory.stats().hitCount(); }
+
+  public void clear() { memory.invalidateAll(); }
+
+  /**
+   * The key for the inputs: {@code sha256:<hex>} over the namespace, and the relative path and bytes of each file
+   * in the inputs (files, or directories walked recursively).
+   */
+  public static String key(String namespace, Collection<Path> inputs) {
+    Hasher h = Hashing.sha256().newHasher();
+    h.putString(namespace, StandardCharsets.UTF_8).putByte((byte) 0);
+    byte[] buf = new byte[8192];
+    for(Path input : inputs) {
+      for(Path f : files(input)) {
+        h.putString(input.relativize(f).toString(), StandardCharsets.UTF_8).putByte((byte) 0);
+        try(InputStream is = Files.newInputStream(f)) {
+          long len = 0;
+          for(int n; (n = is.read(buf)) > 0; len += n) h.putBytes(buf, 0, n);
+          h.putLong(len);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    return "sha256:" + h.hash();
+  }
+
+  /**
+   * The serialized form of a template, immutable: each {@link #thaw(byte[])} materializes a new copy.
+   * Null if the template (or some part of it) is not serializable.
+   */
+  public static byte[] freeze(Object template) {
+    if(!(template instanceof Serializable)) return null;
+    var bytes = new ByteArrayOutputStream();
+    try(var out = new ObjectOutputStream(bytes)) {
+      out.writeObject(template);
+    } catch (NotSerializableException e) {
+      return null;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /** A new copy of the template {@link #freeze(Object) frozen} */
+  @SuppressWarnings("unchecked")
+  public static <T> T thaw(byte[] frozen) {
+    try(var in = new ObjectInputStream(new ByteArrayInputStream(frozen))) {
+      return (T) in.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new IllegalStateException("Frozen template cannot be read", e);
+    }
+  }
+
+  private static List<Path> files(Path input) {
+    if(!Files.isDirectory(input)) return List.of(input);
+    try(Stream<Path> s = Files.walk(input)) {
+      return s.filter(Files::isRegularFile).sorted().collect(Collectors.toCollection(ArrayList::new));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private T read(String key) {
+    if(dir == null) return null;
+    Path f = file(key);
+    if(!Files.isRegularFile(f)) return null;
+    try(var in = new ObjectInputStream(Files.newInputStream(f))) {
+      return (T) in.readObject();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      // stale or corrupt entry
+      try { Files.deleteIfExists(f); } catch (IOException ignored) {}
+      return null;
+    }
+  }
+
+  private void write(String key, T t) {
+    if(dir == null || !(t instanceof Serializable)) return;
+    try {
+      Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, "tmpl", ".tmp");
+      try {
+        try(var out = new ObjectOutputStream(Files.newOutputStream(tmp))) {
+          out.writeObject(t);
+        }
+        Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      // best effort: template graphs with non-serializable parts stay in memory only
+    }
+  }
+
+  private Path file(String key) {
+    return dir.resolve(key.substring(key.indexOf(':') + 1) + SUFFIX);
+  }
+}
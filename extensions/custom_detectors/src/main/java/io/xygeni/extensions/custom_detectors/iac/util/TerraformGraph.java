@@ -0,0 +1,249 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.xygeni.extensions.custom_detectors.util.PatternCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * TerraformGraph - Resources of a Terraform module and the references between them, read from the {@code .tf} text
+ * without the full parser, for incremental scans.
+ * <p>
+ * Each {@code resource "type" "name"} block is a node, identified by {@code type.name}, with the hash of its file name
+ * and block text, and the line where the block starts.
+ * There is an edge from a resource to each resource referenced in its block (see {@link TerraformReferences}).
+ * Everything else (variables, locals, data sources, modules, providers) is hashed together as the module
+ * <em>globals</em>: a change there may affect any resource.
+ * <p>
+ * Only the module directory is read: resources in local child modules ({@code module "x" { source = "./x" }})
+ * are not nodes, and their changes are not seen. The sources of those modules are in {@link #localModules()},
+ * so callers can tell when the graph is not enough to find the affected resources.
+ * <p>
+ * {@link #affected(TerraformGraph)} compares a graph with the graph for a previous version of the module,
+ * and returns the resources whose detection result may have changed: those changed, moved (to another file or line, so
+ * the flaws found on them have a stale location) or added, plus those connected
+ * to a changed, added or removed resource through references in either direction, transitively. A detector looking
+ * at a bucket and the acls referencing it, or at an acl and its bucket, sees the same result for the resources
+ * not returned.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class TerraformGraph {
+  private static final Pattern BLOCK = Pattern.compile(
+    "(?m)^[ \\t]*(resource|data|module|variable|locals|output|provider|terraform|moved|import|check)\\b[^{\\n]*\\{"
+  );
+  private static final Pattern RESOURCE = Pattern.compile("^\\s*resource\\s+\"([^\"]+)\"\\s+\"([^\"]+)\"");
+  private static final Pattern LOCAL_SOURCE = Pattern.compile("(?m)^\\s*source\\s*=\\s*\"(\\.{1,2}/[^\"]*)\"");
+  private static final String NAME = "[A-Za-z_][A-Za-z0-9_-]*";
+
+  private final Map<String, Node> nodes;
+  private final String globals;
+  private final Set<String> localModules;
+
+  private TerraformGraph(Map<String, Node> nodes, String globals, Set<String> localModules) {
+    this.nodes = nodes;
+    this.globals = globals;
+    this.localModules = localModules;
+  }
+
+  /** A resource block */
+  public static final class Node {
+    private final String file;
+    private final int line;
+    private final String hash;
+    private final Set<String> references = new LinkedHashSet<>();
+    private final String body;
+
+    private Node(String file, int line, String hash, String body) {
+      this.file = file;
+      this.line = line;
+      this.hash = hash;
+      this.body = body;
+    }
+
+    /** File name, relative to the module directory */
+    public String getFile() { return file; }
+    /** Line where the block starts, from 1 */
+    public int getLine() { return line; }
+    public String getHash() { return hash; }
+    /** Resources ({@code type.name}) referenced from this one */
+    public Set<String> getReferences() { return Collections.unmodifiableSet(references); }
+
+    /** Same content, in the same file and line */
+    boolean same(Node other) {
+      return other != null && line == other.line && hash.equals(other.hash);
+    }
+  }
+
+  /** The graph for the {@code .tf} files in the module directory (not in subdirectories) */
+  public static TerraformGraph scan(Path moduleDir) {
+    Map<String, String> files = new TreeMap<>();
+    try(Stream<Path> s = Files.list(moduleDir)) {
+      for(Path f : (Iterable<Path>) s.filter(p -> p.toString().endsWith(".tf") && Files.isRegularFile(p))::iterator) {
+        files.put(f.getFileName().toString(), Files.readString(f, StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return parse(files);
+  }
+
+  /** The graph for the given files (name to content) */
+  public static TerraformGraph parse(Map<String, String> files) {
+    Map<String, Node> nodes = new LinkedHashMap<>();
+    Hasher globals = Hashing.sha256().newHasher();
+    Set<String> localModules = new LinkedHashSet<>();
+
+    for(var file : new TreeMap<>(files).entrySet()) {
+      String text = file.getValue();
+      Matcher m = BLOCK.matcher(text);
+      int pos = 0, line = 1, counted = 0;
+      while(pos < text.length() && m.find(pos)) {
+        int end = endOfBlock(text, m.end() - 1);
+        String block = text.substring(m.start(), end);
+        Matcher r = RESOURCE.matcher(block);
+        if(r.find()) {
+          line += lines(text, counted, m.start());
+          counted = m.start();
+          String hash = Hashing.sha256().newHasher()
+            .putString(file.getKey(), StandardCharsets.UTF_8).putByte((byte) 0)
+            .putString(block.strip(), StandardCharsets.UTF_8)
+            .hash().toString();
+          nodes.put(r.group(1) + "." + r.group(2), new Node(file.getKey(), line, hash, block.substring(r.end())));
+        } else {
+          globals.putString(block.strip(), StandardCharsets.UTF_8).putByte((byte) 0);
+          if(m.group(1).equals("module")) {
+            Matcher source = LOCAL_SOURCE.matcher(block);
+            if(source.find()) localModules.add(source.group(1));
+          }
+        }
+        pos = end;
+      }
+    }
+
+    // references, only to resources in the module
+    for(Node n : nodes.values()) {
+      Matcher m = PatternCache.compile("(?<![A-Za-z0-9_.-])(" + NAME + ")\\.(" + NAME + ")").matcher(n.body);
+      while(m.find()) {
+        String key = m.group(1) + "." + m.group(2);
+        if(nodes.containsKey(key)) n.references.add(key);
+      }
+    }
+    return new TerraformGraph(nodes, globals.hash().toString(), Collections.unmodifiableSet(localModules));
+  }
+
+  /** Resources in the module, as {@code type.name} */
+  public Set<String> resources() { return Collections.unmodifiableSet(nodes.keySet()); }
+
+  public Node node(String key) { return nodes.get(key); }
+
+  /** The resource id used in flaws, {@code file:type:name}, for the resource {@code type.name}, or null if not found */
+  public String qualifiedResource(String key) {
+    Node n = nodes.get(key);
+    return n == null ? null : n.file + ':' + key.replaceFirst("\\.", ":");
+  }
+
+  public int size() { return nodes.size(); }
+
+  /** Sources of the local modules used, like {@code ./buckets}: their resources are not in the graph */
+  public Set<String> localModules() { return localModules; }
+
+  /** True if variables, locals, data sources, modules... are the same in both graphs */
+  public boolean sameGlobals(TerraformGraph previous) {
+    return previous != null && globals.equals(previous.globals);
+  }
+
+  /**
+   * The resources in this graph whose result may differ from the previous graph. All the resources
+   * when there is no previous graph or the globals changed.
+   */
+  public Set<String> affected(TerraformGraph previous) {
+    if(!sameGlobals(previous)) return resources();
+
+    var seeds = new ArrayDeque<String>();
+    for(var e : nodes.entrySet()) {
+      if(!e.getValue().same(previous.nodes.get(e.getKey()))) seeds.add(e.getKey());
+    }
+    for(String key : previous.nodes.keySet()) if(!nodes.containsKey(key)) seeds.add(key);
+
+    // undirected adjacency, with the edges of both versions
+    Map<String, Set<String>> adjacent = new HashMap<>();
+    addEdges(nodes, adjacent);
+    addEdges(previous.nodes, adjacent);
+
+    Set<String> reached = new LinkedHashSet<>(seeds);
+    while(!seeds.isEmpty()) {
+      for(String next : adjacent.getOrDefault(seeds.poll(), Set.of())) {
+        if(reached.add(next)) seeds.add(next);
+      }
+    }
+    reached.retainAll(nodes.keySet());
+    return reached;
+  }
+
+  private static void addEdges(Map<String, Node> nodes, Map<String, Set<String>> adjacent) {
+    nodes.forEach((from, n) -> {
+      for(String to : n.references) {
+        adjacent.computeIfAbsent(from, k -> new LinkedHashSet<>()).add(to);
+        adjacent.computeIfAbsent(to, k -> new LinkedHashSet<>()).add(from);
+      }
+    });
+  }
+
+  private static int lines(String s, int from, int to) {
+    int n = 0;
+    for(int i = from; i < to; i++) if(s.charAt(i) == '\n') n++;
+    return n;
+  }
+
+  /** Index after the brace closing the one at open, skipping strings, heredocs and comments */
+  static int endOfBlock(String s, int open) {
+    final int n = s.length();
+    int depth = 0;
+    int i = open;
+    while(i < n) {
+      char c = s.charAt(i);
+      if(c == '"') {
+        i++;
+        while(i < n && s.charAt(i) != '"') i += s.charAt(i) == '\\' ? 2 : 1;
+        i++;
+      } else if(c == '#' || (c == '/' && i + 1 < n && s.charAt(i + 1) == '/')) {
+        while(i < n && s.charAt(i) != '\n') i++;
+      } else if(c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+        int end = s.indexOf("*/", i + 2);
+        i = end < 0 ? n : end + 2;
+      } else if(c == '<' && s.startsWith("<<", i)) {
+        i = endOfHeredoc(s, i);
+      } else {
+        if(c == '{') depth++;
+        else if(c == '}' && --depth == 0) return i + 1;
+        i++;
+      }
+    }
+    return n; // unbalanced, take the rest of the file
+  }
+
+  private static int endOfHeredoc(String s, int start) {
+    Matcher m = PatternCache.compile("<<-?([A-Za-z_][A-Za-z0-9_]*)[ \\t]*\\r?\\n").matcher(s).region(start, s.length());
+    if(!m.lookingAt()) return start + 2;
+    Matcher end = PatternCache.compile("(?m)^[ \\t]*" + Pattern.quote(m.group(1)) + "[ \\t]*$").matcher(s);
+    return end.find(m.end()) ? end.end() : s.length();
+  }
+}
@@ -0,0 +1,49 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import io.xygeni.extensions.custom_detectors.util.PatternCache;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TerraformReferences - Extracts the references to managed resources from the text of a Terraform expression.
+ * <p>
+ * A reference to a resource is {@code <type>.<name>}, optionally with an index ({@code [0]}, {@code ["key"]})
+ * and followed by an attribute, as in {@code aws_s3_bucket.example.id}, possibly inside an interpolation
+ * ({@code "${aws_s3_bucket.example.id}-logs"}). References to data sources ({@code data.<type>.<name>}),
+ * and other symbols (variables, locals, module outputs) are not resource references.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class TerraformReferences {
+  private static final String NAME = "[A-Za-z_][A-Za-z0-9_-]*";
+
+  private TerraformReferences() {}
+
+  /** Names of the resources of the given type referenced in expression */
+  public static Set<String> names(String expression, String type) {
+    Set<String> names = new LinkedHashSet<>();
+    if(expression == null || expression.indexOf(type) < 0) return names;
+
+    Matcher m = pattern(type).matcher(expression);
+    while(m.find()) names.add(m.group(1));
+    return names;
+  }
+
+  /** The reference {@code type.name} for a qualified resource {@code file:type:name}, or null */
+  public static String key(String qualifiedResource) {
+    if(qualifiedResource == null) return null;
+    int nameSep = qualifiedResource.lastIndexOf(':');
+    if(nameSep <= 0) return null;
+    int typeSep = qualifiedResource.lastIndexOf(':', nameSep - 1);
+    return qualifiedResource.substring(typeSep + 1, nameSep) + "." + qualifiedResource.substring(nameSep + 1);
+  }
+
+  private static Pattern pattern(String type) {
+    // not preceded by a name char, a dot (data.<type>, module.x.<type>) or a dash
+    return PatternCache.compile("(?<![A-Za-z0-9_.-])" + Pattern.quote(type) + "\\.(" + NAME + ")(?=\\[|\\.|\\b|$)");
+  }
+}
@@ -0,0 +1,129 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.xygeni.sankxy.xypol.ast.Policy;
+import io.xygeni.sankxy.xypol.parser.XypolParser;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * XypolPolicies - Process-wide cache of parsed XYPOL policies, keyed by the SHA-256 of the normalized policy text.
+ * <p>
+ * The same policies are embedded in the detector YAML files and parsed again on every scan. A scan server
+ * loading hundreds of detectors per repository spends a good part of the detector loading time in the parser.
+ * With this cache, each distinct policy is parsed once per process.
+ * <p>
+ * Two policy texts that differ only in comments or in whitespace outside string literals have the same
+ * {@link #key(String) key}, so reformatting a YAML file does not defeat the cache.
+ * The {@link Policy} returned is shared: callers must treat it as read-only. Source positions in the AST
+ * are those of the first text parsed for the key.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class XypolPolicies {
+  /** Maximum number of policies kept */
+  private static final int MAX_POLICIES = 2_000;
+
+  private static final Cache<String, Policy> CACHE = CacheBuilder.newBuilder()
+    .maximumSize(MAX_POLICIES)
+    .recordStats()
+    .build();
+
+  private XypolPolicies() {}
+
+  /** The parsed policy, from the cache when an equivalent text was parsed before. Parse errors are not cached. */
+  public static Policy compile(String xypol) {
+    Objects.requireNonNull(xypol, "xypol");
+    String normalized = normalize(xypol);
+    try {
+      // the original text is parsed, so positions in parse errors match the YAML
+      return CACHE.get(hash(normalized), () -> parse(xypol));
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      // keep the exception thrown by the parser for invalid policies
+      if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      if(e.getCause() instanceof Error) throw (Error) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** Parses the policy, without caching */
+  public static Policy parse(String xypol) {
+    return new XypolParser(new StringReader(xypol)).Policy();
+  }
+
+  /** The cache key for the policy text: {@code sha256:<hex>} of its normalized form */
+  public static String key(String xypol) {
+    return hash(normalize(xypol));
+  }
+
+  private static String hash(String normalized) {
+    return "sha256:" + Hashing.sha256().hashString(normalized, StandardCharsets.UTF_8);
+  }
+
+  /** Number of parsed policies currently cached */
+  public static long size() { return CACHE.size(); }
+
+  public static CacheStats stats() { return CACHE.stats(); }
+
+  /**
+   * The policy text without comments ({@code #} or {@code //} up to the end of line, {@code /* ... *}{@code /}),
+   * with every run of whitespace outside string literals replaced by a single space, and trimmed.
+   */
+  public static String normalize(String xypol) {
+    final int n = xypol.length();
+    var sb = new StringBuilder(n);
+    boolean space = false;
+    int i = 0;
+    while(i < n) {
+      char c = xypol.charAt(i);
+      if(c == '\'' || c == '"') {
+        // string literal, copied verbatim
+        int end = endOfString(xypol, i);
+        if(space && sb.length() > 0) sb.append(' ');
+        space = false;
+        sb.append(xypol, i, end);
+        i = end;
+
+      } else if(c == '#' || (c == '/' && i + 1 < n && xypol.charAt(i + 1) == '/')) {
+        while(i < n && xypol.charAt(i) != '\n') i++;
+        space = true;
+
+      } else if(c == '/' && i + 1 < n && xypol.charAt(i + 1) == '*') {
+        int end = xypol.indexOf("*/", i + 2);
+        i = end < 0 ? n : end + 2;
+        space = true;
+
+      } else if(Character.isWhitespace(c)) {
+        space = true;
+        i++;
+
+      } else {
+        if(space && sb.length() > 0) sb.append(' ');
+        space = false;
+        sb.append(c);
+        i++;
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Index after the closing quote of the string literal starting at from, honoring backslash escapes */
+  private static int endOfString(String s, int from) {
+    char quote = s.charAt(from);
+    int i = from + 1;
+    while(i < s.length()) {
+      char c = s.charAt(i++);
+      if(c == '\\') i++;
+      else if(c == quote) return Math.min(i, s.length());
+    }
+    return s.length(); // unterminated, the parser will complain
+  }
+}
@@ -0,0 +1,137 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import com.depsdoctor.core.model.scm.ScmCoordinates;
+import com.depsdoctor.core.model.scm.github.GitHubApi;
+import com.depsdoctor.core.model.scm.github.GitHubCoordinates;
+import com.depsdoctor.core.model.scm.gitlab.GitLabApi;
+import com.depsdoctor.core.model.scm.gitlab.GitLabCoordinates;
+import com.depsdoctor.depsscanner.services.gitlab.model.GitLabProtectedBranch;
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.util.PatternCache;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * BranchesProvider - Provides information about the default and release branches of a repository,
+ * and their protection rule.
+ * <p>
+ * Each instance is bound to a single repository and does not keep state between calls, so providers for different
+ * repositories may run concurrently (see {@link UnreviewedBranch#executeAll}).
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class BranchesProvider {
+  protected final ScmCoordinates scm;
+  protected final Pattern relaseBranchesPattern;
+
+  public BranchesProvider(ScmCoordinates scm, String releaseBranchesPattern) {
+    this.scm = scm;
+    this.relaseBranchesPattern = PatternCache.compile(releaseBranchesPattern); // compiled once for all repositories
+  }
+
+  /**
+   * Identifies the branches given by this provider (the provider and the release branches pattern),
+   * for sharing them in a {@link ScmMetadataSnapshot}
+   */
+  public String key() {
+    return getClass().getName() + ":" + relaseBranchesPattern.pattern();
+  }
+
+  /**
+   * The token in the credentials of the coordinates, the same used by the platform api clients
+   * ({@code GitHubApi.with(scm)}, {@code GitLabApi.with(scm)}), or null if none
+   */
+  protected static String token(ScmCoordinates scm) {
+    if(scm == null) return null;
+    String token = scm.getToken();
+    return token != null && !token.isEmpty() ? token : null;
+  }
+
+  public Map<String, BranchProtectionInfo> getProtectionsForMainReleaseBranches() {
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+
+    switch (scm.getKind()) {
+      case gitlab:
+      case gitlab_enterprise: {
+        processBranchProtectionGitlab(result);
+        break;
+      }
+      case github: {
+        processBranchProtectionGithub(result);
+        break;
+      }
+      default: {
+        // other scm systems are unsupported
+      }
+    }
+
+    return result;
+  }
+
+  /** Uses the GitLab API to get the list of target branches and their protection */
+  protected void processBranchProtectionGitlab(Map<String, BranchProtectionInfo> result) {
+    GitLabApi api = GitLabApi.with((GitLabCoordinates) scm);
+    try (var branchesApi = api.branches()) {
+      // endpoint /projects/{owner}/{repo}/repository/branches
+      var branches = branchesApi.getBranches(); // branches for current repository
+      // endpoint /projects/{owner}/{repo}/protected_branches
+      var protectedBranches = branchesApi.getProtectedBranches();
+      // map keyed by branch name
+      Map<String, GitLabProtectedBranch> branchInfo = protectedBranches.stream()
+        .collect(Collectors.toMap(GitLabProtectedBranch::getName, bp -> bp));
+
+      for (var branch : branches) {
+        // is this the repository default branch, or release branch?
+        boolean isDefaultOrRelease =
+          branch.isDefaultBranch() ||
+          relaseBranchesPattern.matcher(branch.getName()).matches();
+
+        if (isDefaultOrRelease) {
+          GitLabProtectedBranch bp = branchInfo.get(branch.getName()); // is protected?
+          var pi = new BranchProtectionInfo(); // unprotected
+          if(bp != null) {
+            pi.isProtected = true;
+            pi.minReviews = bp.getApprovalsRequired();
+            pi.enforceAdmins = true; // in fact, this is the default
+          }
+          result.put(branch.getName(), pi);
+        }
+      }
+    }
+  }
+
+  /**
+   * Uses the GitHub API to get the list of target branches and their protection
+   *
+   */
+  protected void processBranchProtectionGithub(Map<String, BranchProtectionInfo> result) {
+    GitHubApi api = GitHubApi.with((GitHubCoordinates) scm);
+    try (var branchesApi = api.branches(); var repoApi = api.repository(scm.getOwner(), scm.getRepo())) {
+      var branches = branchesApi.getBranches(null); // all branches
+      String defaultBranch = repoApi.getDefaultBranch();
+
+      for (var branch : branches) {
+        // is this the repository default branch, or release branch?
+        boolean isDefaultOrRelease =
+          defaultBranch.equals(branch.getName()) ||
+          relaseBranchesPattern.matcher(branch.getName()).matches();
+
+        if (isDefaultOrRelease) {
+          var pi = new BranchProtectionInfo();  // unprotected
+          pi.isProtected = branch.isProtected();
+          var bp = branch.getProtection();
+          if(bp != null) {
+            var requiredReviews = bp.getRequiredPullRequestReviews();
+            pi.minReviews = requiredReviews != null ? requiredReviews.getRequiredApprovingReviewCount() : 0;
+            pi.enforceAdmins = bp.getEnforceAdmins() != null && bp.getEnforceAdmins().isEnabled();
+          }
+          result.put(branch.getName(), pi);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import com.depsdoctor.core.model.scm.ScmCoordinates;
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.ScmHttp;
+import io.xygeni.extensions.custom_detectors.util.RegexLiterals;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * GithubGraphqlBranchesProvider - Gets the GitHub default and release branches, with their protection rule,
+ * from the GraphQL api.
+ * <p>
+ * The REST provider lists every branch in the repository and asks for the default branch in a separate call,
+ * which in repositories with thousands of stale branches means many pages of branches that are discarded.
+ * Here a single query returns the default branch and the branches whose name contains the literal prefix of
+ * the release branches pattern (for {@code ^release/.+$}, 'release/'), each one with its protection rule.
+ * More requests are done only when there are more than {@value #PAGE_SIZE} matching branches.
+ * The full pattern is still checked on the names returned, as the server filter is looser.
+ * <p>
+ * The token is taken from the credentials of the repository coordinates, as for the platform api client.
+ * GraphQL needs a token: without one, the REST provider is used.
+ * <p>
+ * Protection rules are returned only with admin access to the repository: otherwise, they come as null, as for
+ * branches with no rule. The query asks for {@code viewerCanAdminister}, so a null rule is taken as "no rule" only
+ * when the rules are visible. When they are not, the REST provider is used for the repository, as it tells protected
+ * branches apart with read access.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class GithubGraphqlBranchesProvider extends BranchesProvider {
+  public static final String DEFAULT_URL = "https://api.github.com/graphql";
+  static final int PAGE_SIZE = 100;
+
+  private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+  private static final String RULE = "branchProtectionRule { isAdminEnforced requiresApprovingReviews requiredApprovingReviewCount }";
+  static final String QUERY =
+    "query($owner: String!, $name: String!, $prefix: String!, $first: Int!, $cursor: String) {\n" +
+    "  repository(owner: $owner, name: $name) {\n" +
+    "    viewerCanAdminister\n" +
+    "    defaultBranchRef { name " + RULE + " }\n" +
+    "    refs(refPrefix: \"refs/heads/\", query: $prefix, first: $first, after: $cursor) {\n" +
+    "      pageInfo { hasNextPage endCursor }\n" +
+    "      nodes { name " + RULE + " }\n" +
+    "    }\n" +
+    "  }\n" +
+    "}";
+
+  private final String url;
+  private final String token;
+  private final OkHttpClient client;
+  private final String prefix;
+
+  public GithubGraphqlBranchesProvider(ScmCoordinates scm, String releaseBranchesPattern, String url) {
+    this(scm, releaseBranchesPattern, url, token(scm), ScmHttp.client());
+  }
+
+  public GithubGraphqlBranchesProvider(
+    ScmCoordinates scm, String releaseBranchesPattern, String url, String token, OkHttpClient client
+  ) {
+    super(scm, releaseBranchesPattern);
+    this.url = url != null && !url.isEmpty() ? url : DEFAULT_URL;
+    this.token = token;
+    this.client = client;
+    this.prefix = RegexLiterals.literalPrefix(releaseBranchesPattern);
+  }
+
+  @Override
+  protected void processBranchProtectionGithub(Map<String, BranchProtectionInfo> result) {
+    if(token == null || !fetch(scm.getOwner(), scm.getRepo(), result)) {
+      // no token for GraphQL, or protection rules not visible with it
+      result.clear();
+      super.processBranchProtectionGithub(result);
+    }
+  }
+
+  /**
+   * Adds the default and release branches of owner/repo to result. Returns false, leaving result incomplete,
+   * when some branch has no protection rule and the rules are not visible with the token (no admin access),
+   * so it is unknown if the branch is protected.
+   */
+  public boolean fetch(String owner, String repo, Map<String, BranchProtectionInfo> result) {
+    if(token == null) throw new IllegalStateException("The GitHub GraphQL api needs a token");
+    String cursor = null;
+    do {
+      var variables = new JSONObject()
+        .put("owner", owner).put("name", repo).put("prefix", prefix).put("first", PAGE_SIZE)
+        .put("cursor", cursor == null ? JSONObject.NULL : cursor);
+      JSONObject repository = query(variables).optJSONObject("repository");
+      if(repository == null) return true; // not found, or not visible with the token
+      boolean rulesVisible = repository.optBoolean("viewerCanAdminister");
+
+      if(cursor == null) {
+        JSONObject defaultBranch = repository.optJSONObject("defaultBranchRef");
+        if(defaultBranch != null) {
+          if(!rulesVisible && defaultBranch.isNull("branchProtectionRule")) return false;
+          result.put(defaultBranch.getString("name"), protection(defaultBranch));
+        }
+      }
+
+      JSONObject refs = repository.getJSONObject("refs");
+      JSONArray nodes = refs.getJSONArray("nodes");
+      for(int i = 0; i < nodes.length(); i++) {
+        JSONObject ref = nodes.getJSONObject(i);
+        String name = ref.getString("name");
+        if(relaseBranchesPattern.matcher(name).matches()) {
+          if(!rulesVisible && ref.isNull("branchProtectionRule")) return false;
+          result.put(name, protection(ref));
+        }
+      }
+
+      JSONObject page = refs.getJSONObject("pageInfo");
+      cursor = page.getBoolean("hasNextPage") ? page.getString("endCursor") : null;
+    } while(cursor != null);
+    return true;
+  }
+
+  private static BranchProtectionInfo protection(JSONObject ref) {
+    var pi = new BranchProtectionInfo(); // unprotected (no rule)
+    JSONObject rule = ref.optJSONObject("branchProtectionRule");
+    if(rule != null) {
+      pi.isProtected = true;
+      pi.minReviews = rule.optBoolean("requiresApprovingReviews") ? rule.optInt("requiredApprovingReviewCount") : 0;
+      pi.enforceAdmins = rule.optBoolean("isAdminEnforced");
+    }
+    return pi;
+  }
+
+  /** Runs the query, returning its data */
+  private JSONObject query(JSONObject variables) {
+    String body = new JSONObject().put("query", QUERY).put("variables", variables).toString();
+    var req = new Request.Builder().url(url)
+      .header("Authorization", "Bearer " + token)
+      .post(RequestBody.create(body, JSON))
+      .build();
+
+    try(var res = client.newCall(req).execute()) {
+      String text = res.body() != null ? res.body().string() : "";
+      if(!res.isSuccessful()) throw new IOException("GitHub GraphQL api returned " + res.code() + ": " + text);
+      var json = new JSONObject(text);
+      JSONArray errors = json.optJSONArray("errors");
+      for(int i = 0; errors != null && i < errors.length(); i++) {
+        JSONObject error = errors.getJSONObject(i);
+        // a missing repository comes as an error, with null data for it
+        if(!"NOT_FOUND".equals(error.optString("type"))) {
+          throw new IOException("GitHub GraphQL api error: " + error.optString("message"));
+        }
+      }
+      JSONObject data = json.optJSONObject("data");
+      return data != null ? data : new JSONObject();
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
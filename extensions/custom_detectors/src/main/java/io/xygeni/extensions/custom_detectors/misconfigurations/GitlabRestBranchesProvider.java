@@ -0,0 +1,197 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import com.depsdoctor.core.model.scm.ScmCoordinates;
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.ScmHttp;
+import io.xygeni.extensions.custom_detectors.util.PatternCache;
+import io.xygeni.extensions.custom_detectors.util.RegexLiterals;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * GitlabRestBranchesProvider - Gets the GitLab default and release branches, with their protection, streaming
+ * the branches page by page and filtering them in the server.
+ * <p>
+ * The default provider loads all the branches and all the protected branches of the project, then filters them.
+ * In monorepos with thousands of branches this means many requests and all the branches in memory. Here:
+ * <ul>
+ *   <li>the default branch is taken from the project, and fetched by name;</li>
+ *   <li>branches are listed with {@code search=^prefix}, where prefix is the literal prefix of the release branches
+ *   pattern (for {@code ^release/.+$}, 'release/'), and only the ones matching the full pattern are kept,
+ *   one page at a time;</li>
+ *   <li>the protection comes from the {@code protected} flag of each branch, which also covers wildcard protected
+ *   branches like {@code release/*}, and the approvals required from the protected branches of the project (as in the
+ *   default provider), requested only when some target branch is protected.</li>
+ * </ul>
+ * The token is taken from the credentials of the repository coordinates, as for the platform api client. The api root
+ * is the one of the GitLab server in the repository URL, unless another one is given.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class GitlabRestBranchesProvider extends BranchesProvider {
+  public static final String DEFAULT_URL = "https://gitlab.com/api/v4";
+  static final int PAGE_SIZE = 100;
+
+  private final String url;
+  private final String token;
+  private final OkHttpClient client;
+  private final String prefix;
+
+  /** With the given api root, or the one of the server of the repository if null or empty */
+  public GitlabRestBranchesProvider(ScmCoordinates scm, String releaseBranchesPattern, String url) {
+    this(scm, releaseBranchesPattern, url != null && !url.isEmpty() ? url : apiUrl(scm), token(scm), ScmHttp.client());
+  }
+
+  public GitlabRestBranchesProvider(
+    ScmCoordinates scm, String releaseBranchesPattern, String url, String token, OkHttpClient client
+  ) {
+    super(scm, releaseBranchesPattern);
+    String u = url != null && !url.isEmpty() ? url : DEFAULT_URL;
+    this.url = u.endsWith("/") ? u.substring(0, u.length() - 1) : u;
+    this.token = token;
+    this.client = client;
+    this.prefix = RegexLiterals.literalPrefix(releaseBranchesPattern);
+  }
+
+  @Override
+  protected void processBranchProtectionGitlab(Map<String, BranchProtectionInfo> result) {
+    fetch(scm.getOwner() + "/" + scm.getRepo(), result);
+  }
+
+  /** Adds the default and release branches of the project (full path, like 'group/subgroup/project') to result */
+  public void fetch(String projectPath, Map<String, BranchProtectionInfo> result) {
+    String project = url + "/projects/" + encode(projectPath);
+    JSONObject p = getObject(project);
+    if(p == null) return; // not found, or not visible with the token
+
+    Map<String, Boolean> targets = new TreeMap<>(); // branch name -> protected
+
+    String defaultBranch = p.optString("default_branch", null);
+    if(defaultBranch != null) {
+      JSONObject b = getObject(project + "/repository/branches/" + encode(defaultBranch));
+      if(b != null) targets.put(defaultBranch, b.optBoolean("protected"));
+    }
+
+    String search = prefix.isEmpty() ? "" : "&search=" + encode("^" + prefix);
+    forEachPage(project + "/repository/branches?per_page=" + PAGE_SIZE + search, b -> {
+      String name = b.getString("name");
+      if(relaseBranchesPattern.matcher(name).matches()) targets.put(name, b.optBoolean("protected"));
+    });
+
+    List<JSONObject> protectedBranches = new ArrayList<>();
+    if(targets.containsValue(true)) {
+      // a few per project, with wildcards like 'release/*' that a name search would miss
+      forEachPage(project + "/protected_branches?per_page=" + PAGE_SIZE, protectedBranches::add);
+    }
+
+    targets.forEach((name, isProtected) -> {
+      var pi = new BranchProtectionInfo(); // unprotected
+      if(isProtected) {
+        pi.isProtected = true;
+        pi.minReviews = approvalsRequired(protectedBranches, name);
+        pi.enforceAdmins = true; // in fact, this is the default
+      }
+      result.put(name, pi);
+    });
+  }
+
+  /** The approvals required for merging into the branch: the highest of the protected branches matching it */
+  static int approvalsRequired(List<JSONObject> protectedBranches, String branch) {
+    int max = 0;
+    for(JSONObject pb : protectedBranches) {
+      String name = pb.optString("name");
+      // protected branch names may have '*' wildcards
+      if(name.equals(branch) || (name.contains("*") && PatternCache.compile(wildcard(name)).matcher(branch).matches())) {
+        max = Math.max(max, pb.optInt("approvals_required"));
+      }
+    }
+    return max;
+  }
+
+  private static String wildcard(String name) {
+    return "\\Q" + name.replace("*", "\\E.*\\Q") + "\\E";
+  }
+
+  /** Calls consumer for each element of the paginated list, fetching one page at a time */
+  private void forEachPage(String firstPage, Consumer<JSONObject> consumer) {
+    String next = firstPage;
+    while(next != null) {
+      try(var res = client.newCall(request(next)).execute()) {
+        String text = body(res);
+        JSONArray items = new JSONArray(text);
+        for(int i = 0; i < items.length(); i++) consumer.accept(items.getJSONObject(i));
+
+        String nextPage = res.header("X-Next-Page");
+        next = nextPage == null || nextPage.isEmpty() ? null : withPage(firstPage, nextPage);
+
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /** The object, or null if not found */
+  private JSONObject getObject(String endpoint) {
+    try(var res = client.newCall(request(endpoint)).execute()) {
+      if(res.code() == HttpURLConnection.HTTP_NOT_FOUND) return null;
+      return new JSONObject(body(res));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Request request(String endpoint) {
+    var req = new Request.Builder().url(endpoint).get();
+    // as a bearer token, so cached responses vary with it
+    if(token != null) req.header("Authorization", "Bearer " + token);
+    return req.build();
+  }
+
+  private static String body(Response res) throws IOException {
+    String text = res.body() != null ? res.body().string() : "";
+    if(!res.isSuccessful()) throw new IOException("GitLab api returned " + res.code() + " for " + res.request().url() + ": " + text);
+    return text;
+  }
+
+  /** The api root of the GitLab server of the repository, gitlab.com when there is no repository URL */
+  static String apiUrl(ScmCoordinates scm) {
+    return scm != null ? apiUrl(scm.getUrl(), scm.getOwner(), scm.getRepo()) : DEFAULT_URL;
+  }
+
+  /**
+   * The api root of the GitLab server in the repository URL, keeping the relative path of the server if any
+   * (https://host/gitlab/group/project gives https://host/gitlab/api/v4)
+   */
+  static String apiUrl(String repositoryUrl, String owner, String repo) {
+    HttpUrl url = repositoryUrl != null ? HttpUrl.parse(repositoryUrl) : null;
+    if(url == null) return DEFAULT_URL;
+    String path = url.encodedPath().replaceAll("(\\.git)?/*$", "");
+    String project = "/" + owner + "/" + repo;
+    String root = path.endsWith(project) ? path.substring(0, path.length() - project.length()) : "";
+    return url.newBuilder().encodedPath(root + "/api/v4").query(null).fragment(null).build().toString();
+  }
+
+  private static String withPage(String endpoint, String page) {
+    return endpoint + (endpoint.contains("?") ? "&" : "?") + "page=" + page;
+  }
+
+  private static String encode(String s) {
+    return URLEncoder.encode(s, StandardCharsets.UTF_8).replace("+", "%20");
+  }
+}
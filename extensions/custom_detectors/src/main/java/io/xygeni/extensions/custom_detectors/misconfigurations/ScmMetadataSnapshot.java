@@ -0,0 +1,112 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import com.depsdoctor.core.model.scm.ScmCoordinates;
+import com.depsdoctor.misc.scanner.engine.MiscContext;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import okhttp3.HttpUrl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ScmMetadataSnapshot - Metadata of a repository (protections, and any other data from the SCM api) fetched once per scan
+ * and shared by all the custom SCM detectors.
+ * <p>
+ * Several detectors need the same data from the SCM api: an unreviewed branch detector, an unprotected branch detector
+ * and a stale branches detector all list the branches. Each detector asks the snapshot for the repository, typically
+ * in {@code preprocess()}, and gets the data fetched by the first detector that asked for it under the same key.
+ * Each value is fetched at most once per scan, even with concurrent callers; a fetch that fails is not recorded,
+ * so a later call tries again. A fetch blocks only the callers asking for the same key.
+ * <p>
+ * Repositories are told apart by kind, host, owner and name, so those with the same owner and name on two servers
+ * (say gitlab.com and a self-managed GitLab) have their own snapshot. The protections depend on the provider and
+ * the release branches pattern, see {@link BranchesProvider#key()}.
+ * <p>
+ * Snapshots are bound to the {@code MiscContext} of the scan (weakly referenced, so they go away with it).
+ * Values are shared: they must not be modified.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class ScmMetadataSnapshot {
+  private static final Cache<Object, ConcurrentMap<String, ScmMetadataSnapshot>> SNAPSHOTS = CacheBuilder.newBuilder()
+    .weakKeys().build();
+  /** Host in a scp-like git url, {@code git@host:owner/repo.git} */
+  private static final Pattern SCP_HOST = Pattern.compile("^[^@/]+@([^:/]+):");
+
+  private final String repository;
+  /** Loaded outside of any lock shared with other keys, as fetching means waiting for the SCM api */
+  private final Cache<String, Object> values = CacheBuilder.newBuilder().build();
+
+  private ScmMetadataSnapshot(String repository) {
+    this.repository = repository;
+  }
+
+  /** The snapshot for the repository in the scan, created if needed */
+  public static ScmMetadataSnapshot of(MiscContext ctx, ScmCoordinates scm) {
+    return of(ctx, repository(String.valueOf(scm.getKind()), scm.getUrl(), scm.getOwner(), scm.getRepo()));
+  }
+
+  /** The repository as {@code kind:host/owner/repo}, or {@code kind:owner/repo} when the url has no host */
+  static String repository(String kind, String url, String owner, String repo) {
+    String host = host(url);
+    return kind + ":" + (host != null ? host + "/" : "") + owner + "/" + repo;
+  }
+
+  private static String host(String url) {
+    if(url == null) return null;
+    HttpUrl http = HttpUrl.parse(url);
+    if(http != null) return http.port() == HttpUrl.defaultPort(http.scheme()) ? http.host() : http.host() + ":" + http.port();
+    Matcher scp = SCP_HOST.matcher(url);
+    return scp.find() ? scp.group(1).toLowerCase() : null;
+  }
+
+  static ScmMetadataSnapshot of(Object ctx, String repository) {
+    try {
+      return SNAPSHOTS.get(ctx, ConcurrentHashMap::new).computeIfAbsent(repository, ScmMetadataSnapshot::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /** The repository, as {@code kind:host/owner/repo} */
+  public String getRepository() { return repository; }
+
+  /**
+   * The value for the key, from fetcher on the first call. The key must name the data and every option
+   * that changes it, so that detectors with different options do not share it. The fetcher must not return null.
+   * Concurrent callers for the same key wait for the first fetch; errors from the fetcher are thrown as they are.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String key, Supplier<? extends T> fetcher) {
+    try {
+      return (T) values.get(key, fetcher::get);
+    } catch (UncheckedExecutionException | ExecutionError e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause()); // the fetcher throws no checked exceptions
+    }
+  }
+
+  /** True if the value for the key was already fetched */
+  public boolean contains(String key) {
+    return values.getIfPresent(key) != null;
+  }
+
+  /** The default and release branches with their protection, as given by the provider (unmodifiable) */
+  public Map<String, BranchProtectionInfo> protections(BranchesProvider provider) {
+    return get("protections:" + provider.key(), () -> Collections.unmodifiableMap(provider.getProtectionsForMainReleaseBranches()));
+  }
+}
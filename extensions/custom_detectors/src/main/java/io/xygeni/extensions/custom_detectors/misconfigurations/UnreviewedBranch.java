@@ -2,21 +2,16 @@ package io.xygeni.extensions.custom_detectors.misconfigurations;
 
 import com.depsdoctor.core.model.common.Location;
 import com.depsdoctor.core.model.scm.ScmCoordinates;
-import com.depsdoctor.core.model.scm.github.GitHubApi;
-import com.depsdoctor.core.model.scm.github.GitHubCoordinates;
-import com.depsdoctor.core.model.scm.gitlab.GitLabApi;
-import com.depsdoctor.core.model.scm.gitlab.GitLabCoordinates;
-import com.depsdoctor.depsscanner.services.gitlab.model.GitLabProtectedBranch;
 import com.depsdoctor.misc.scanner.config.MiscConfig;
 import com.depsdoctor.misc.scanner.config.MiscDetectorConfig;
 import com.depsdoctor.misc.scanner.detector.AbstractMiscScmDetector;
 import com.depsdoctor.misc.scanner.engine.MiscContext;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RepositoryBatch;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.ScmHttp;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * UnreviewedBranch - Example of a misconfiguration rule.
@@ -36,18 +31,34 @@ public class UnreviewedBranch extends AbstractMiscScmDetector {
   private boolean enforceAdmins;
   private int minReviews;
   private String releaseBranchesPattern;
+  private int concurrency;
+  private boolean githubGraphql;
+  private String githubGraphqlUrl;
+  private boolean gitlabFiltered;
+  private String gitlabApiUrl;
 
   @Override
   public void configure(MiscDetectorConfig cc, MiscConfig miscConfig) {
-    var props = cc.getProperties();
+    configure(cc.getProperties());
+  }
+
+  /** Configures the detector from the properties in its YAML */
+  void configure(Map<String, Object> props) {
     this.enforceAdmins = (boolean)props.getOrDefault("enforceAdmins", false);
     this.minReviews = (int)props.getOrDefault("minReviews", 1);
     this.releaseBranchesPattern = (String)props.getOrDefault("releaseBranchesPattern", "^release/.+$");
+    this.concurrency = (int)props.getOrDefault("concurrency", RepositoryBatch.DEFAULT_CONCURRENCY);
+    this.githubGraphql = "graphql".equals(props.getOrDefault("githubApi", "rest"));
+    this.githubGraphqlUrl = (String)props.getOrDefault("githubGraphqlUrl", GithubGraphqlBranchesProvider.DEFAULT_URL);
+    this.gitlabFiltered = "filtered".equals(props.getOrDefault("gitlabApi", "default"));
+    this.gitlabApiUrl = (String)props.get("gitlabApiUrl"); // if empty, the server of each repository
+    ScmHttp.configure(props); // conditional requests cache, shared by all the detectors
   }
 
   @Override
   public void preprocess(ScmCoordinates scmCoordinates, MiscContext ctx) {
-    // if your detector needs to do setup something before the analysis, do it here
+    // fetched once, and shared with other detectors using the same branches in this scan
+    protections(scmCoordinates, ctx);
   }
 
   /**
@@ -59,9 +70,59 @@ public class UnreviewedBranch extends AbstractMiscScmDetector {
   @Override
   public void execute(ScmCoordinates scm, MiscContext ctx) {
     // Fetching protection rules for the default branch and release branches is abstracted here
-    BranchesProvider branches = new BranchesProvider(scm, releaseBranchesPattern);
-    var protections = branches.getProtectionsForMainReleaseBranches();
+    // (already fetched in preprocess)
+    var protections = protections(scm, ctx);
+    check(scm, protections, ctx);
+  }
+
+  /**
+   * Batch mode, for scanning all the repositories in an organization: protections are fetched for up to
+   * {@code concurrency} repositories at a time per call (a property in the detector configuration), then checked
+   * and reported per repository, in the given order, from the calling thread.
+   * <p>
+   * This is an embedding API: the scanner does not call it, it runs {@link #preprocess} and {@link #execute}
+   * once per repository. Tools embedding the detector to scan many repositories call it instead of {@code execute}.
+   * <p>
+   * A repository whose protections could not be fetched is not reported. The results are returned,
+   * so the caller may log or retry the failed ones.
+   */
+  public List<RepositoryBatch.Result<ScmCoordinates, Map<String, BranchProtectionInfo>>> executeAll(
+    List<? extends ScmCoordinates> scms, MiscContext ctx
+  ) {
+    var results = new RepositoryBatch(concurrency).<ScmCoordinates, Map<String, BranchProtectionInfo>>fetch(
+      scms, scm -> protections(scm, ctx)
+    );
+    for(var r : results) {
+      if(r.isOk()) check(r.getRepository(), r.getValue(), ctx);
+    }
+    return results;
+  }
+
+  /** Protections for the default and release branches, from the snapshot for the repository in the scan */
+  private Map<String, BranchProtectionInfo> protections(ScmCoordinates scm, MiscContext ctx) {
+    return ScmMetadataSnapshot.of(ctx, scm).protections(branchesProvider(scm));
+  }
 
+  /** The provider for the repository */
+  protected BranchesProvider branchesProvider(ScmCoordinates scm) {
+    switch (scm.getKind()) {
+      case github: {
+        if(githubGraphql) return new GithubGraphqlBranchesProvider(scm, releaseBranchesPattern, githubGraphqlUrl);
+        break;
+      }
+      case gitlab:
+      case gitlab_enterprise: {
+        if(gitlabFiltered) return new GitlabRestBranchesProvider(scm, releaseBranchesPattern, gitlabApiUrl);
+        break;
+      }
+      default: {
+        // the default provider
+      }
+    }
+    return new BranchesProvider(scm, releaseBranchesPattern);
+  }
+
+  private void check(ScmCoordinates scm, Map<String, BranchProtectionInfo> protections, MiscContext ctx) {
     Location repo = location(scm); // misconfiguration at repository
 
     // This creates a misconfiguration for each branch not matching the requested protection
@@ -98,101 +159,6 @@ public class UnreviewedBranch extends AbstractMiscScmDetector {
     }
   }
 
-  /** Provides information about branches and their protection rule */
-  private static class BranchesProvider {
-    private final ScmCoordinates scm;
-    private final Pattern relaseBranchesPattern;
-
-    public BranchesProvider(ScmCoordinates scm, String releaseBranchesPattern) {
-      this.scm = scm;
-      this.relaseBranchesPattern = Pattern.compile(releaseBranchesPattern);
-    }
-
-    public Map<String, BranchProtectionInfo> getProtectionsForMainReleaseBranches() {
-      Map<String, BranchProtectionInfo> result = new TreeMap<>();
-
-      switch (scm.getKind()) {
-        case gitlab:
-        case gitlab_enterprise: {
-          processBranchProtectionGitlab(result);
-          break;
-        }
-        case github: {
-          processBranchProtectionGithub(result);
-          break;
-        }
-        default: {
-          // other scm systems are unsupported
-        }
-      }
-
-      return result;
-    }
-
-    /** Uses the GitLab API to get the list of target branches and their protection */
-    private void processBranchProtectionGitlab(Map<String, BranchProtectionInfo> result) {
-      GitLabApi api = GitLabApi.with((GitLabCoordinates) scm);
-      try (var branchesApi = api.branches()) {
-        // endpoint /projects/{owner}/{repo}/repository/branches
-        var branches = branchesApi.getBranches(); // branches for current repository
-        // endpoint /projects/{owner}/{repo}/protected_branches
-        var protectedBranches = branchesApi.getProtectedBranches();
-        // map keyed by branch name
-        Map<String, GitLabProtectedBranch> branchInfo = protectedBranches.stream()
-          .collect(Collectors.toMap(GitLabProtectedBranch::getName, bp -> bp));
-
-        for (var branch : branches) {
-          // is this the repository default branch, or release branch?
-          boolean isDefaultOrRelease =
-            branch.isDefaultBranch() ||
-            relaseBranchesPattern.matcher(branch.getName()).matches();
-
-          if (isDefaultOrRelease) {
-            GitLabProtectedBranch bp = branchInfo.get(branch.getName()); // is protected?
-            var pi = new BranchProtectionInfo(); // unprotected
-            if(bp != null) {
-              pi.isProtected = true;
-              pi.minReviews = bp.getApprovalsRequired();
-              pi.enforceAdmins = true; // in fact, this is the default
-            }
-            result.put(branch.getName(), pi);
-          }
-        }
-      }
-    }
-
-    /**
-     * Uses the GitHub API to get the list of target branches and their protection
-     *
-     */
-    private void processBranchProtectionGithub(Map<String, BranchProtectionInfo> result) {
-      GitHubApi api = GitHubApi.with((GitHubCoordinates) scm);
-      try (var branchesApi = api.branches(); var repoApi = api.repository(scm.getOwner(), scm.getRepo())) {
-        var branches = branchesApi.getBranches(null); // all branches
-        String defaultBranch = repoApi.getDefaultBranch();
-
-        for (var branch : branches) {
-          // is this the repository default branch, or release branch?
-          boolean isDefaultOrRelease =
-            defaultBranch.equals(branch.getName()) ||
-            relaseBranchesPattern.matcher(branch.getName()).matches();
-
-          if (isDefaultOrRelease) {
-            var pi = new BranchProtectionInfo();  // unprotected
-            pi.isProtected = branch.isProtected();
-            var bp = branch.getProtection();
-            if(bp != null) {
-              var requiredReviews = bp.getRequiredPullRequestReviews();
-              pi.minReviews = requiredReviews != null ? requiredReviews.getRequiredApprovingReviewCount() : 0;
-              pi.enforceAdmins = bp.getEnforceAdmins() != null && bp.getEnforceAdmins().isEnabled();
-            }
-            result.put(branch.getName(), pi);
-          }
-        }
-      }
-    }
-  }
-
   /** Bean with info about protection rule for a branch */
   public static class BranchProtectionInfo {
     public boolean isProtected; // if false, no protection rule, which is a misconfiguration
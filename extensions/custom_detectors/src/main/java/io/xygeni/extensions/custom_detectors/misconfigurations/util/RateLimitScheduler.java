@@ -0,0 +1,219 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import com.google.common.hash.Hashing;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * RateLimitScheduler - Paces the SCM api requests sent with {@link ScmHttp}, according to the rate limit
+ * reported by the server, so that large scans pause instead of failing.
+ * <p>
+ * GitHub and GitLab count the requests per token (or per client address, without one), so the quota is tracked per
+ * host and credential, the {@code Authorization} or {@code PRIVATE-TOKEN} header of the request.
+ * After each response the scheduler reads the remaining quota and its reset time:
+ * {@code X-RateLimit-Remaining} / {@code X-RateLimit-Reset} (GitHub), {@code RateLimit-Remaining} /
+ * {@code RateLimit-Reset} (GitLab) and {@code Retry-After}. When the remaining quota drops to the reserve,
+ * new requests to that host with that credential wait until the reset. A request rejected with 403 or 429 because of a
+ * (primary or secondary) rate limit is retried after the wait the server asks for, so the work in progress is not lost.
+ * So is a GraphQL query answered with 200 and a {@code RATE_LIMITED} error, as GitHub reports an exhausted quota
+ * for its GraphQL api.
+ * Waits longer than {@code maxWait} are not done: the rejected response is returned to the caller.
+ * Requests waiting for the same quota go in order of arrival.
+ * <p>
+ * {@link #stats()} gives the time spent waiting for the rate limit and the time spent in requests.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class RateLimitScheduler implements Interceptor {
+  public static final int DEFAULT_RESERVE = 10;
+  public static final long DEFAULT_MAX_WAIT_SECONDS = 15 * 60;
+  /** Wait for a secondary rate limit without Retry-After, as GitHub recommends */
+  static final long SECONDARY_WAIT_MILLIS = 60_000;
+  static final int MAX_RETRIES = 3;
+  private static final Pattern GRAPHQL_LIMIT = Pattern.compile("\"type\"\\s*:\\s*\"RATE_LIMITED\"");
+
+  private volatile int reserve = DEFAULT_RESERVE;
+  private volatile long maxWaitMillis = TimeUnit.SECONDS.toMillis(DEFAULT_MAX_WAIT_SECONDS);
+
+  private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong pauses = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong workNanos = new AtomicLong();
+
+  /**
+   * @param reserve requests left unused in each rate limit window, for other clients with the same token
+   * @param maxWaitSeconds longest pause for a rate limit; longer ones fail the request
+   */
+  public void configure(int reserve, long maxWaitSeconds) {
+    this.reserve = Math.max(0, reserve);
+    this.maxWaitMillis = TimeUnit.SECONDS.toMillis(maxWaitSeconds);
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request req = chain.request();
+    Host host = hosts.computeIfAbsent(key(req.url().host(), credential(req)), h -> new Host());
+
+    for(int attempt = 0; ; attempt++) {
+      // if the pause is longer than allowed, the request goes on and the server answers
+      host.acquire();
+
+      long start = System.nanoTime();
+      Response res;
+      try {
+        res = chain.proceed(req);
+      } finally {
+        workNanos.addAndGet(System.nanoTime() - start);
+        requests.incrementAndGet();
+      }
+
+      // cached responses have stale headers
+      if(res.networkResponse() == null) return res;
+      long retryAt = host.update(res, System.currentTimeMillis());
+      if(retryAt < 0 || attempt >= MAX_RETRIES || retryAt - System.currentTimeMillis() > maxWaitMillis) return res;
+
+      res.close();
+      retries.incrementAndGet();
+    }
+  }
+
+  /** The token sent with the request, or null if anonymous */
+  private static String credential(Request req) {
+    String auth = req.header("Authorization");
+    return auth != null ? auth : req.header("PRIVATE-TOKEN");
+  }
+
+  /** Key for the quota of the host and credential, without keeping the credential itself */
+  private static String key(String host, String credential) {
+    if(credential == null) return host;
+    return host + '#' + Hashing.sha256().hashString(credential, StandardCharsets.UTF_8).toString().substring(0, 16);
+  }
+
+  /** Rate limit state of a host, for a credential */
+  private final class Host {
+    private final Deque<Object> waiting = new ArrayDeque<>();
+    private long pausedUntil;
+    private long remaining = -1; // unknown
+
+    /**
+     * Waits for the turn of a request, that is, until the host is not paused and there is no earlier request waiting.
+     * False if the pause is longer than maxWait, and the request goes on without waiting.
+     */
+    synchronized boolean acquire() throws InterruptedIOException {
+      Object ticket = new Object();
+      waiting.add(ticket);
+      long start = System.nanoTime();
+      boolean paused = false;
+      try {
+        while(true) {
+          long wait = pausedUntil - System.currentTimeMillis();
+          if(wait > maxWaitMillis) return false;
+          if(wait <= 0 && waiting.peek() == ticket) return true;
+          if(wait > 0 && !paused) {
+            paused = true;
+            pauses.incrementAndGet();
+          }
+          wait(wait > 0 ? wait : 0);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while waiting for the rate limit");
+      } finally {
+        waiting.remove(ticket);
+        waitNanos.addAndGet(System.nanoTime() - start);
+        notifyAll();
+      }
+    }
+
+    /** Reads the rate limit headers. The time to retry the request at, or -1 if it needs no retry */
+    synchronized long update(Response res, long now) throws IOException {
+      Long retryAfter = number(res, "Retry-After");
+      Long rem = first(number(res, "X-RateLimit-Remaining"), number(res, "RateLimit-Remaining"));
+      Long reset = first(number(res, "X-RateLimit-Reset"), number(res, "RateLimit-Reset"));
+      long resetAt = reset != null ? TimeUnit.SECONDS.toMillis(reset) : -1;
+      if(rem != null) remaining = rem;
+
+      long until = -1;
+      if(retryAfter != null) until = now + TimeUnit.SECONDS.toMillis(retryAfter);
+      else if(rem != null && rem <= reserve && resetAt > now) until = resetAt;
+      if(until > pausedUntil) {
+        pausedUntil = until;
+        notifyAll();
+      }
+
+      int code = res.code();
+      boolean limited;
+      if(code == 429 || code == 403) {
+        limited = code == 429 || retryAfter != null || (rem != null && rem == 0) || isSecondaryLimit(res);
+      } else {
+        limited = code == 200 && isGraphqlLimit(res);
+      }
+      if(!limited) return -1; // 403 for permissions
+      if(pausedUntil <= now) pausedUntil = now + SECONDARY_WAIT_MILLIS;
+      return pausedUntil;
+    }
+  }
+
+  private static Long number(Response res, String header) {
+    String v = res.header(header);
+    if(v == null) return null;
+    try {
+      return Long.parseLong(v.trim());
+    } catch (NumberFormatException e) {
+      return null; // Retry-After as a date is not used by GitHub or GitLab
+    }
+  }
+
+  /** GitHub secondary rate limits may come as a 403 with no rate limit headers */
+  private static boolean isSecondaryLimit(Response res) throws IOException {
+    return res.peekBody(4096).string().toLowerCase().contains("secondary rate limit");
+  }
+
+  /** GitHub GraphQL answers an exhausted quota with 200 and an error of type RATE_LIMITED */
+  private static boolean isGraphqlLimit(Response res) throws IOException {
+    if(!"POST".equals(res.request().method())) return false;
+    return GRAPHQL_LIMIT.matcher(res.peekBody(4096).string()).find();
+  }
+
+  private static Long first(Long a, Long b) {
+    return a != null ? a : b;
+  }
+
+  /**
+   * Remaining requests for the host and credential (the value of the {@code Authorization} or {@code PRIVATE-TOKEN}
+   * header, null if anonymous) in the current window, or -1 if unknown
+   */
+  public long remaining(String host, String credential) {
+    Host h = hosts.get(key(host, credential));
+    if(h == null) return -1;
+    synchronized(h) { return h.remaining; }
+  }
+
+  public long getRequests() { return requests.get(); }
+  public long getRetries() { return retries.get(); }
+  public long getPauses() { return pauses.get(); }
+  /** Time spent by requests waiting for their turn, in milliseconds (summed over threads) */
+  public long getWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.get()); }
+  /** Time spent in requests, in milliseconds (summed over threads) */
+  public long getWorkMillis() { return TimeUnit.NANOSECONDS.toMillis(workNanos.get()); }
+
+  public String stats() {
+    return String.format("requests=%d, retries=%d, pauses=%d, wait=%dms, work=%dms",
+      getRequests(), getRetries(), getPauses(), getWaitMillis(), getWorkMillis());
+  }
+}
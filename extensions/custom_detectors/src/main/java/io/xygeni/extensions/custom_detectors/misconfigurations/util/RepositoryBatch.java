@@ -0,0 +1,147 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * RepositoryBatch - Runs a blocking SCM API call (like fetching branch protections) for many repositories
+ * concurrently, with at most {@code concurrency} calls in flight per batch.
+ * <p>
+ * Such calls spend nearly all their time waiting for the network, so scanning an organization one repository
+ * at a time is bound by latency. With N calls in flight the total time drops about N times, until the SCM
+ * rate limit becomes the bound.
+ * <p>
+ * All the batches run on a single pool of platform threads per process, with {@link #MAX_CONCURRENCY} threads:
+ * batches running at the same time share them, so their calls in flight add up to that many at most, whatever
+ * their {@code concurrency}. A batch waits for a free thread when the pool is busy. Idle threads end after a while.
+ * <p>
+ * A failed call does not stop the batch: its {@link Result} holds the error, and the caller decides what to report.
+ * Results are returned in the order of the repositories, so reporting does not depend on thread scheduling
+ * and may be done from the calling thread, without synchronizing the scan context.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class RepositoryBatch {
+  public static final int DEFAULT_CONCURRENCY = 8;
+  /** Calls in flight for all the batches in the process */
+  public static final int MAX_CONCURRENCY = 64;
+
+  private static final ThreadPoolExecutor POOL = pool();
+
+  private final int concurrency;
+
+  public RepositoryBatch(int concurrency) {
+    if(concurrency < 1) throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+    this.concurrency = concurrency;
+  }
+
+  /** A call that may fail */
+  @FunctionalInterface
+  public interface Fetcher<K, V> {
+    V fetch(K repository) throws Exception;
+  }
+
+  /** The value fetched for a repository, or the error */
+  public static final class Result<K, V> {
+    private final K repository;
+    private final V value;
+    private final Throwable error;
+
+    private Result(K repository, V value, Throwable error) {
+      this.repository = repository;
+      this.value = value;
+      this.error = error;
+    }
+
+    public K getRepository() { return repository; }
+    public V getValue() { return value; }
+    public Throwable getError() { return error; }
+    public boolean isOk() { return error == null; }
+  }
+
+  public int getConcurrency() { return concurrency; }
+
+  /**
+   * Calls fetcher for each repository, and waits for all the calls.
+   * If the calling thread is interrupted, pending calls are cancelled and get a {@link CancellationException}.
+   */
+  public <K, V> List<Result<K, V>> fetch(List<? extends K> repositories, Fetcher<? super K, ? extends V> fetcher) {
+    if(repositories.isEmpty()) return Collections.emptyList();
+
+    // concurrency workers, each one taking the next repository until none is left
+    final int n = repositories.size();
+    var results = new AtomicReferenceArray<Result<K, V>>(n);
+    var next = new AtomicInteger();
+    var cancelled = new AtomicBoolean();
+    Runnable worker = () -> {
+      for(int i; !cancelled.get() && (i = next.getAndIncrement()) < n; ) {
+        K repo = repositories.get(i);
+        Result<K, V> result;
+        try {
+          result = new Result<>(repo, fetcher.fetch(repo), null);
+        } catch (Throwable e) {
+          result = new Result<>(repo, null, e);
+        }
+        // when cancelled, the call gets a CancellationException instead
+        if(!cancelled.get()) results.compareAndSet(i, null, result);
+      }
+    };
+
+    var workers = new ArrayList<Future<?>>();
+    for(int w = Math.min(concurrency, n); w > 0; w--) workers.add(POOL.submit(worker));
+
+    boolean interrupted = false;
+    for(Future<?> f : workers) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        interrupted = true;
+        break;
+      } catch (ExecutionException | CancellationException e) {
+        // errors are kept in the results
+      }
+    }
+    if(interrupted) {
+      cancelled.set(true);
+      for(Future<?> f : workers) f.cancel(true);
+      Thread.currentThread().interrupt();
+    }
+
+    var list = new ArrayList<Result<K, V>>(n);
+    for(int i = 0; i < n; i++) {
+      // calls not done when interrupted
+      results.compareAndSet(i, null, new Result<>(repositories.get(i), null, new CancellationException("interrupted")));
+      list.add(results.get(i));
+    }
+    return list;
+  }
+
+  private static ThreadPoolExecutor pool() {
+    var pool = new ThreadPoolExecutor(
+      MAX_CONCURRENCY, MAX_CONCURRENCY, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threads()
+    );
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private static ThreadFactory threads() {
+    var count = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, "scm-batch-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
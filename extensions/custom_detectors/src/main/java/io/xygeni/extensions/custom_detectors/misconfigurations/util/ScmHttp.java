@@ -0,0 +1,126 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import com.depsdoctor.commons.os.OS;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ScmHttp - The HTTP client shared by the custom SCM detectors, with an optional disk cache for conditional requests.
+ * <p>
+ * With a cache directory, GET responses carrying an {@code ETag} or {@code Last-Modified} header are stored on disk,
+ * and the next request for the same url is sent with {@code If-None-Match} / {@code If-Modified-Since}. When the
+ * resource did not change the server answers {@code 304 Not Modified} with no body, and the cached body is returned.
+ * Branch protections rarely change, so repeated scans of an organization transfer a fraction of the first one.
+ * Responses are cached as the server allows ({@code Cache-Control}, {@code Vary}). Providers send their token in the
+ * {@code Authorization} header, so with {@code Vary: Authorization} a response for one token is not served for
+ * another, and with {@code must-revalidate} (as GitLab answers) every cached response is revalidated with the token
+ * of the request.
+ * <p>
+ * Only the requests sent with this client are cached, that is, those of the GitLab 'filtered' provider
+ * ({@link io.xygeni.extensions.custom_detectors.misconfigurations.GitlabRestBranchesProvider}). Nothing is cached
+ * for GitHub: GraphQL queries are POST requests, which are never cached, and the default providers go through
+ * the platform SCM clients. All the clients share a connection pool and dispatcher, whether the cache is enabled
+ * or not, and go through the same {@link RateLimitScheduler}.
+ * <p>
+ * A client handed out stays usable after the cache is reconfigured: the cache it uses is kept open until
+ * {@link #close()}. The detectors do not call it, as there is no end of scan for them: the cache writes each entry
+ * as it completes, so the files may stay open until the process exits. Tools embedding the detectors may call it
+ * between scans.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class ScmHttp {
+  /** Environment variable or system property with the cache directory, when not set in the detector configuration */
+  public static final String DIR_PROPERTY = "SCM_HTTP_CACHE";
+  public static final long DEFAULT_MAX_MB = 50;
+
+  private static final RateLimitScheduler SCHEDULER = new RateLimitScheduler();
+  private static final OkHttpClient BASE = new OkHttpClient.Builder().addInterceptor(SCHEDULER).build();
+  private static OkHttpClient client = BASE;
+  private static Cache cache;
+  /** The clients with a cache handed out, by cache directory, kept open until close() */
+  private static final Map<File, OkHttpClient> CACHED = new HashMap<>();
+
+  private ScmHttp() {}
+
+  /** The shared client */
+  public static synchronized OkHttpClient client() {
+    return client;
+  }
+
+  /** The scheduler pacing the requests of all the clients */
+  public static RateLimitScheduler scheduler() {
+    return SCHEDULER;
+  }
+
+  /** The disk cache, or null if not enabled */
+  public static synchronized Cache cache() {
+    return cache;
+  }
+
+  /**
+   * Enables the disk cache in dir, up to maxMb megabytes, or disables it if dir is null.
+   * Nothing changes when called again with the same settings, so every detector may call this from its
+   * {@code configure()}. Clients returned before keep working with their cache, which is not closed here:
+   * when a directory was used before, its cache is reused, with the size it was opened with.
+   */
+  public static synchronized OkHttpClient configure(File dir, long maxMb) {
+    if(dir == null) {
+      cache = null;
+      client = BASE;
+    } else {
+      client = CACHED.computeIfAbsent(dir, d -> BASE.newBuilder().cache(new Cache(d, maxMb * 1024 * 1024)).build());
+      cache = client.cache();
+    }
+    return client;
+  }
+
+  /**
+   * Configures the cache from the detector properties {@code httpCacheDir} (default: the {@code SCM_HTTP_CACHE}
+   * environment variable or system property; no cache if empty) and {@code httpCacheMaxMb}, and the scheduler from
+   * {@code rateLimitReserve} and {@code rateLimitMaxWaitSeconds}.
+   */
+  public static OkHttpClient configure(Map<String, Object> props) {
+    SCHEDULER.configure(
+      ((Number)props.getOrDefault("rateLimitReserve", RateLimitScheduler.DEFAULT_RESERVE)).intValue(),
+      ((Number)props.getOrDefault("rateLimitMaxWaitSeconds", RateLimitScheduler.DEFAULT_MAX_WAIT_SECONDS)).longValue()
+    );
+
+    String dir = (String)props.getOrDefault("httpCacheDir", "");
+    if(dir == null || dir.isBlank()) dir = OS.getProperty(DIR_PROPERTY, "");
+    long maxMb = ((Number)props.getOrDefault("httpCacheMaxMb", DEFAULT_MAX_MB)).longValue();
+    return configure(dir.isBlank() ? null : new File(dir), maxMb);
+  }
+
+  /** Requests, hits from the cache (including those revalidated with a 304) and requests that reached the network */
+  public static synchronized String stats() {
+    if(cache == null) return "no cache";
+    return String.format("requests=%d, hits=%d, network=%d", cache.requestCount(), cache.hitCount(), cache.networkCount());
+  }
+
+  /**
+   * Disables the cache, closing the files of every cache opened (the entries stay on disk).
+   * Call when no request is running, as the clients with a cache returned before can no longer be used.
+   */
+  public static synchronized void close() {
+    IOException error = null;
+    for(OkHttpClient c : CACHED.values()) {
+      try {
+        c.cache().close();
+      } catch (IOException e) {
+        if(error == null) error = e;
+      }
+    }
+    CACHED.clear();
+    cache = null;
+    client = BASE;
+    if(error != null) throw new UncheckedIOException(error);
+  }
+}
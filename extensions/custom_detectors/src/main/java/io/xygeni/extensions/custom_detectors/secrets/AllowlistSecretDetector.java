@@ -0,0 +1,28 @@
+package io.xygeni.extensions.custom_detectors.secrets;
+
+import com.depsdoctor.secrets.scanner.detector.impl.GenericSecretDetector;
+import io.xygeni.extensions.custom_detectors.secrets.util.SecretAllowlist;
+
+/**
+ * AllowlistSecretDetector: the generic, declarative detector, but secrets in the shared {@link SecretAllowlist}
+ * (fake tokens in test fixtures, already triaged findings) are dropped, so they are neither verified nor reported.
+ * <p/>
+ * Use it as the {@code classname} of declarative detectors. Only the secret matched in the entry is checked,
+ * after the match and before verification, so an allowlisted word elsewhere in the entry does not hide a real secret.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class AllowlistSecretDetector extends GenericSecretDetector {
+
+  /** Called by the generic detector on each secret matched, before verification */
+  @Override protected boolean isValidToken(String secret) {
+    if(isAllowlisted(secret)) return false;
+    return super.isValidToken(secret);
+  }
+
+  /** True if the matched secret is in the shared allowlist */
+  static boolean isAllowlisted(CharSequence secret) {
+    return SecretAllowlist.shared().contains(secret);
+  }
+}
@@ -0,0 +1,57 @@
+package io.xygeni.extensions.custom_detectors.secrets;
+
+import com.depsdoctor.commons.file.FileType;
+import com.depsdoctor.secrets.scanner.detector.DetectorException;
+import com.depsdoctor.secrets.scanner.detector.DetectorInitException;
+import com.depsdoctor.secrets.scanner.engine.SecretsContext;
+import com.depsdoctor.secrets.scanner.parser.Entry;
+import io.xygeni.extensions.custom_detectors.secrets.util.DockerConfigScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DockercfgDetector: Detects hardcoded credentials in docker configuration files ({@code .docker/config.json}, {@code .dockercfg}).
+ * <p/>
+ * The declarative checks in custom_dockercfg.yml are kept, but two fast paths avoid the generic key/value flow
+ * for most of the content of these files:
+ * <ul>
+ *   <li>{@link #accept(String, FileType)} walks the JSON token stream, and rejects the files with no inline
+ *   {@code auths.*.auth} credential (like those using only {@code credsStore} or {@code credHelpers}).
+ *   The walk stops at the first credential; the files accepted are then parsed into entries by the engine.</li>
+ *   <li>{@link #detect(Entry, SecretsContext)} compares the key with {@code auth} before handing the entry to the
+ *   generic detector, which decodes the value (and drops allowlisted credentials).</li>
+ * </ul>
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class DockercfgDetector extends AllowlistSecretDetector {
+  /** Paths given to accept() are relative to the scanned directory */
+  private volatile Path root;
+
+  @Override public void initialize(SecretsContext ctx) throws DetectorInitException {
+    super.initialize(ctx);
+    File dir = ctx.getDirectory();
+    this.root = dir != null ? dir.toPath() : null;
+  }
+
+  @Override public boolean accept(String path, FileType type) {
+    if(!super.accept(path, type)) return false;
+    Path file = root != null ? root.resolve(path) : Path.of(path);
+    if(!Files.isRegularFile(file)) return true; // not resolvable here (like a layer in a container image), entries will decide
+    try {
+      return DockerConfigScanner.hasCredentials(file);
+    } catch (IOException | RuntimeException e) {
+      return true; // malformed JSON: fall back to the generic flow
+    }
+  }
+
+  @Override public void detect(Entry e, SecretsContext ctx) throws DetectorException {
+    // exact key match, with no regular expression
+    if(!DockerConfigScanner.AUTH.equals(e.getKey())) return;
+    super.detect(e, ctx);
+  }
+}
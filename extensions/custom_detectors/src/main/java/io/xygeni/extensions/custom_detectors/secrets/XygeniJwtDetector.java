@@ -1,7 +1,11 @@
 package io.xygeni.extensions.custom_detectors.secrets;
 
 import com.depsdoctor.core.utils.jwt.JWT;
+import com.depsdoctor.secrets.scanner.config.DetectorConfig;
+import com.depsdoctor.secrets.scanner.config.SecretsConfig;
 import com.depsdoctor.secrets.scanner.detector.impl.JwtDetector;
+import io.xygeni.extensions.custom_detectors.secrets.util.Entropy;
+import io.xygeni.extensions.custom_detectors.secrets.util.SecretAllowlist;
 import org.json.JSONObject;
 
 import static com.depsdoctor.commons.Strings.hasText;
@@ -17,6 +21,20 @@ import static com.depsdoctor.commons.config.ApiConfig.APIKEY_PREFIX;
  * @version 01-Jan-1980 (john.doe)
  */
 public class XygeniJwtDetector extends JwtDetector {
+  /** Minimum entropy (bits per char) of a real token, when 'minEntropy' is not given in the detector configuration */
+  static final double DEFAULT_MIN_ENTROPY = 3.0;
+
+  private double minEntropy = DEFAULT_MIN_ENTROPY;
+
+  /** The early entropy check uses the 'minEntropy' of the value conditions in the detector configuration */
+  @Override
+  public void configure(DetectorConfig detectorConfig, SecretsConfig secretsConfig) {
+    super.configure(detectorConfig, secretsConfig);
+    var value = detectorConfig.getValue();
+    if(value != null && value.getMinEntropy() > 0) this.minEntropy = value.getMinEntropy();
+  }
+
+  double getMinEntropy() { return minEntropy; }
 
   /**
    * The Xygeni token has a "xya_" prefix, captured by the regular expression. The JWT token
@@ -27,6 +45,10 @@ public class XygeniJwtDetector extends JwtDetector {
   protected boolean isValidToken(String jwt) {
     // APIKEY_PREFIX is "xya_", prefix for Xygeni api tokens
     if(jwt == null || !jwt.startsWith(APIKEY_PREFIX)) return false;
+    // cheap rejection of low-entropy candidates, on the match itself, before allocating and parsing the JWT
+    if(!Entropy.hasMinEntropy(jwt, APIKEY_PREFIX.length(), jwt.length(), minEntropy)) return false;
+    // known fake or already triaged tokens are dropped, before parsing and verification
+    if(SecretAllowlist.shared().contains(jwt)) return false;
     // remove prefix so JWT token could be validated
     return super.isValidToken(jwt.substring(APIKEY_PREFIX.length()));
   }
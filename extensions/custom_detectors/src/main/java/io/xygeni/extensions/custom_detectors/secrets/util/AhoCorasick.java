@@ -0,0 +1,144 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * AhoCorasick - Multi-pattern literal matcher, scanning the input once whatever the number of patterns.
+ * <p>
+ * The automaton is compiled into a dense transition table for ASCII characters. Matching is case-insensitive
+ * (ASCII letters are folded to lowercase); callers needing exact case should confirm the hit.
+ * Any non-ASCII input character resets the automaton, so patterns must be ASCII-only.
+ * <p>
+ * Instances are immutable once built and can be shared between threads.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class AhoCorasick {
+  private static final int ALPHABET = 128;
+  private static final int[] NONE = new int[0];
+
+  /** delta[state * ALPHABET + c] = next state */
+  private final int[] delta;
+  /** Patterns matched when reaching each state (following failure links) */
+  private final int[][] outputs;
+  private final int patternCount;
+
+  private AhoCorasick(int[] delta, int[][] outputs, int patternCount) {
+    this.delta = delta;
+    this.outputs = outputs;
+    this.patternCount = patternCount;
+  }
+
+  /** Builds the automaton for the given (non-empty, ASCII) patterns. Pattern index is the position in the list. */
+  public static AhoCorasick build(List<String> patterns) {
+    // 1. trie
+    List<int[]> gotos = new ArrayList<>();
+    List<BitSet> out = new ArrayList<>();
+    gotos.add(newRow()); out.add(new BitSet());
+
+    for(int p = 0; p < patterns.size(); p++) {
+      String pattern = patterns.get(p);
+      if(!isAscii(pattern) || pattern.isEmpty()) {
+        throw new IllegalArgumentException("Pattern must be non-empty ASCII: " + pattern);
+      }
+      int state = 0;
+      for(int i = 0; i < pattern.length(); i++) {
+        int c = fold(pattern.charAt(i));
+        int next = gotos.get(state)[c];
+        if(next < 0) {
+          next = gotos.size();
+          gotos.get(state)[c] = next;
+          gotos.add(newRow()); out.add(new BitSet());
+        }
+        state = next;
+      }
+      out.get(state).set(p);
+    }
+
+    // 2. failure links (BFS), converting the trie into a full DFA
+    final int states = gotos.size();
+    int[] fail = new int[states];
+    var queue = new ArrayDeque<Integer>();
+    int[] root = gotos.get(0);
+    for(int c = 0; c < ALPHABET; c++) {
+      if(root[c] < 0) root[c] = 0;
+      else { fail[root[c]] = 0; queue.add(root[c]); }
+    }
+    while(!queue.isEmpty()) {
+      int s = queue.poll();
+      int[] row = gotos.get(s);
+      out.get(s).or(out.get(fail[s]));
+      for(int c = 0; c < ALPHABET; c++) {
+        int t = row[c];
+        if(t < 0) {
+          row[c] = gotos.get(fail[s])[c];
+        } else {
+          fail[t] = gotos.get(fail[s])[c];
+          queue.add(t);
+        }
+      }
+    }
+
+    int[] delta = new int[states * ALPHABET];
+    int[][] outputs = new int[states][];
+    for(int s = 0; s < states; s++) {
+      System.arraycopy(gotos.get(s), 0, delta, s * ALPHABET, ALPHABET);
+      BitSet o = out.get(s);
+      outputs[s] = o.isEmpty() ? NONE : o.stream().toArray();
+    }
+    return new AhoCorasick(delta, outputs, patterns.size());
+  }
+
+  public int getPatternCount() { return patternCount; }
+
+  /** Marks in {@code hits} the index of each pattern occurring in text. Returns true if any pattern was found. */
+  public boolean scan(CharSequence text, BitSet hits) {
+    if(text == null) return false;
+    boolean found = false;
+    int state = 0;
+    for(int i = 0, n = text.length(); i < n; i++) {
+      char c = text.charAt(i);
+      if(c >= ALPHABET) { state = 0; continue; }
+      state = delta[state * ALPHABET + fold(c)];
+      int[] o = outputs[state];
+      if(o.length > 0) {
+        for(int p : o) hits.set(p);
+        found = true;
+      }
+    }
+    return found;
+  }
+
+  /** Returns true if any of the patterns occurs in text */
+  public boolean containsAny(CharSequence text) {
+    if(text == null) return false;
+    int state = 0;
+    for(int i = 0, n = text.length(); i < n; i++) {
+      char c = text.charAt(i);
+      if(c >= ALPHABET) { state = 0; continue; }
+      state = delta[state * ALPHABET + fold(c)];
+      if(outputs[state].length > 0) return true;
+    }
+    return false;
+  }
+
+  private static int[] newRow() {
+    int[] row = new int[ALPHABET];
+    Arrays.fill(row, -1);
+    return row;
+  }
+
+  private static int fold(char c) {
+    return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+  }
+
+  private static boolean isAscii(String s) {
+    for(int i = 0; i < s.length(); i++) if(s.charAt(i) >= ALPHABET) return false;
+    return true;
+  }
+}
@@ -0,0 +1,225 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BlobScanIndex - Local index of files already scanned for secrets with no findings, for incremental scans.
+ * <p>
+ * Entries are the file path (relative to the root of the repository, as git shows it, see {@link #repoPath}) with its
+ * git blob SHA-1 (the same id that
+ * {@code git hash-object} computes), so files unchanged since the last scan are not scanned again.
+ * The path is part of the key because detectors select files by path (file types, {@code fileRegex}): the same content
+ * that was clean at one path may hold a secret for the detectors that look at another path.
+ * The index is bound to a <em>detector set version</em>, a digest of the detector configurations and implementation
+ * classes: when any detector changes, the whole index is discarded.
+ * <p>
+ * Only files without findings are recorded. Files with findings are always rescanned, so secrets are
+ * reported (and verified) again with fresh context; in a typical repository they are a tiny fraction of the files.
+ * <p>
+ * Index format is a text file, with the detector set version in the first line, then a blob SHA and a path per line.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class BlobScanIndex {
+  private static final String HEADER = "version ";
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final Path indexFile;
+  private final String detectorSetVersion;
+  private final Set<String> clean = ConcurrentHashMap.newKeySet();
+
+  private BlobScanIndex(Path indexFile, String detectorSetVersion) {
+    this.indexFile = indexFile;
+    this.detectorSetVersion = detectorSetVersion;
+  }
+
+  /**
+   * Opens the index in the given file. If the file does not exist, or was written for a different detector set version,
+   * the index starts empty.
+   */
+  public static BlobScanIndex open(File indexFile, String detectorSetVersion) {
+    var index = new BlobScanIndex(indexFile.toPath(), detectorSetVersion);
+    if(!indexFile.isFile()) return index;
+
+    try {
+      List<String> lines = Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8);
+      if(!lines.isEmpty() && lines.get(0).equals(HEADER + detectorSetVersion)) {
+        for(int i = 1; i < lines.size(); i++) {
+          String entry = lines.get(i);
+          if(entry.indexOf(' ') > 0) index.clean.add(entry); // sha, space, path
+        }
+      }
+      return index;
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public String getDetectorSetVersion() { return detectorSetVersion; }
+
+  /** True if the file, with that blob, was scanned before by the same detector set with no findings */
+  public boolean isClean(String path, String blobSha) {
+    return clean.contains(entry(path, blobSha));
+  }
+
+  /** Records that the file, with that blob, was scanned with no findings */
+  public void markClean(String path, String blobSha) {
+    if(path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0) return; // would split the line in the index file
+    clean.add(entry(path, blobSha));
+  }
+
+  /** Records that the file, with that blob, has findings, so it must be scanned again */
+  public void markDirty(String path, String blobSha) {
+    clean.remove(entry(path, blobSha));
+  }
+
+  /** Paths use '/' as separator, so an index may be shared between platforms */
+  private static String entry(String path, String blobSha) {
+    return blobSha + ' ' + path.replace('\\', '/');
+  }
+
+  /**
+   * The root of the git work tree holding dir: the closest directory, from dir up, with a {@code .git} entry.
+   * dir itself when not in a git work tree.
+   */
+  public static Path repoRoot(Path dir) {
+    Path abs = dir.toAbsolutePath().normalize();
+    for(Path p = abs; p != null; p = p.getParent()) {
+      if(Files.exists(p.resolve(".git"))) return p;
+    }
+    return abs;
+  }
+
+  /**
+   * The path of the file relative to the repository root, with '/' as separator, as in {@code git ls-files}.
+   * A relative file is taken from base (the scanned directory, that detectors may report paths relative to).
+   * Both the files walked and the files reported with findings go through here, so they give the same entries.
+   */
+  public static String repoPath(Path root, Path base, String file) {
+    Path p = Path.of(file.replace('\\', '/'));
+    Path abs = (p.isAbsolute() ? p : base.toAbsolutePath().resolve(p)).normalize();
+    return root.toAbsolutePath().normalize().relativize(abs).toString().replace('\\', '/');
+  }
+
+  public int size() { return clean.size(); }
+
+  /** Writes the index (atomically, via a temporary file in the same directory) */
+  public void save() {
+    try {
+      Path dir = indexFile.toAbsolutePath().getParent();
+      if(dir != null) Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+      try(BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        w.write(HEADER); w.write(detectorSetVersion); w.newLine();
+        for(String entry : clean) { w.write(entry); w.newLine(); }
+      }
+      Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Computes the git blob SHA-1 for the file: {@code sha1("blob " + size + "\0" + content)} */
+  public static String blobSha(Path file) throws IOException {
+    MessageDigest md = sha1();
+    long size = Files.size(file);
+    md.update(("blob " + size + "\0").getBytes(StandardCharsets.US_ASCII));
+    byte[] buf = new byte[64 * 1024];
+    try(InputStream is = Files.newInputStream(file)) {
+      int n;
+      while((n = is.read(buf)) > 0) md.update(buf, 0, n);
+    }
+    return hex(md.digest());
+  }
+
+  /**
+   * The detector set version: a digest of the detector configuration files, plus the implementation classes
+   * (detector {@code classname} and verifier {@code className}) referenced from them, as found by the classLoader.
+   * Additional salt (like the scanner version) may be given.
+   */
+  public static String detectorSetVersion(Collection<File> configFiles, ClassLoader classLoader, String... salt) {
+    MessageDigest md = sha1();
+    var files = new ArrayList<>(configFiles);
+    files.sort(Comparator.comparing(File::getName));
+    var classes = new HashSet<String>();
+
+    try {
+      for(File f : files) {
+        md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+        md.update(Files.readAllBytes(f.toPath()));
+        try(Reader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+          for(Object doc : new Yaml(new SafeConstructor(new LoaderOptions())).loadAll(r)) {
+            if(doc instanceof Map) collectClassnames((Map<?, ?>) doc, classes);
+          }
+        }
+      }
+
+      var sorted = new ArrayList<>(classes);
+      sorted.sort(null);
+      for(String classname : sorted) {
+        String resource = classname.replace('.', '/') + ".class";
+        try(InputStream is = classLoader == null ? null : classLoader.getResourceAsStream(resource)) {
+          if(is != null) md.update(is.readAllBytes());
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    for(String s : salt) if(s != null) md.update(s.getBytes(StandardCharsets.UTF_8));
+    return hex(md.digest());
+  }
+
+  private static void collectClassnames(Map<?, ?> detector, Set<String> classes) {
+    Object classname = detector.get("classname");
+    if(classname != null) classes.add(classname.toString());
+    Object verifier = detector.get("verifier");
+    if(verifier instanceof Map) {
+      Object vclass = ((Map<?, ?>) verifier).get("className");
+      if(vclass != null) classes.add(vclass.toString());
+    }
+  }
+
+  private static MessageDigest sha1() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM must support SHA-1
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    char[] out = new char[bytes.length * 2];
+    for(int i = 0; i < bytes.length; i++) {
+      out[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      out[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(out);
+  }
+}
@@ -0,0 +1,182 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import java.io.CharArrayReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ChunkedTextSource - Reads text through a bounded sliding window, for scanning files too large to be loaded as a String.
+ * <p>
+ * The text is delivered in chunks. Each chunk <em>owns</em> a region of at most {@code chunkSize} chars: owned regions
+ * do not overlap, and together they cover the whole text. Around its owned region, a chunk also exposes up to
+ * {@code overlap} chars of context before it, and up to {@code overlap} chars of lookahead after it.
+ * So a match of at most {@code overlap} chars is always contained in the chunk that owns its start:
+ * reporting only the matches that start in the owned region (see {@link Chunk#owns(int)}) finds each match exactly once,
+ * even when it straddles a chunk boundary.
+ * <p>
+ * When possible, owned regions end at a line break, so that line-oriented parsers see complete lines and need no lookahead.
+ * Only a line longer than the chunk size is split ({@link Chunk#isSplitLine()}).
+ * <p>
+ * Memory is constant: a single {@code char[]} of {@code chunkSize + 2 * overlap} chars is reused for every chunk.
+ * A chunk is valid only until the next call to {@link #next()}. Not thread-safe.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class ChunkedTextSource implements Iterator<ChunkedTextSource.Chunk>, Closeable {
+  /** 1M chars */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+  /** Longer than any secret pattern, including PEM private keys */
+  public static final int DEFAULT_OVERLAP = 8 * 1024;
+
+  private final Reader reader;
+  private final int chunkSize;
+  private final int overlap;
+  private final char[] buf;
+  /** Valid chars in buf */
+  private int len;
+  /** Position in the text of buf[0] */
+  private long bufOffset;
+  /** Start of the next owned region, in buf */
+  private int ownFrom;
+  /** Line number at ownFrom (1-based) */
+  private long line = 1;
+  private boolean eof;
+  private Chunk current;
+
+  public ChunkedTextSource(Reader reader, int chunkSize, int overlap) {
+    if(chunkSize <= 0 || overlap < 0) throw new IllegalArgumentException("chunkSize must be positive, overlap non-negative");
+    this.reader = reader;
+    this.chunkSize = chunkSize;
+    this.overlap = overlap;
+    this.buf = new char[chunkSize + 2 * overlap];
+  }
+
+  public ChunkedTextSource(Reader reader) {
+    this(reader, DEFAULT_CHUNK_SIZE, DEFAULT_OVERLAP);
+  }
+
+  /** Source for the file, read as UTF-8 */
+  public static ChunkedTextSource of(Path file, int chunkSize, int overlap) throws IOException {
+    return new ChunkedTextSource(Files.newBufferedReader(file, StandardCharsets.UTF_8), chunkSize, overlap);
+  }
+
+  public int getChunkSize() { return chunkSize; }
+  public int getOverlap() { return overlap; }
+  /** Size of the window buffer, in chars */
+  public int getCapacity() { return buf.length; }
+
+  @Override public boolean hasNext() {
+    if(current != null) advance();
+    fill();
+    return ownFrom < len;
+  }
+
+  @Override public Chunk next() {
+    if(!hasNext()) throw new NoSuchElementException();
+
+    int limit = ownFrom + chunkSize;
+    int ownTo;
+    boolean split = false;
+    if(eof && len <= limit) {
+      ownTo = len; // last chunk
+    } else {
+      ownTo = lastLineBreak(ownFrom, Math.min(limit, len));
+      if(ownTo < 0) {
+        ownTo = Math.min(limit, len);
+        split = true;
+      }
+    }
+
+    int start = Math.max(0, ownFrom - overlap);
+    int end = Math.min(len, ownTo + overlap);
+    current = new Chunk(start, ownFrom, ownTo, end, bufOffset + ownFrom, line, split);
+    return current;
+  }
+
+  /** Moves past the current chunk: counts its lines, and keeps its last overlap chars as context for the next one */
+  private void advance() {
+    for(int i = current.ownFrom; i < current.ownTo; i++) if(buf[i] == '\n') line++;
+    int keepFrom = Math.max(0, current.ownTo - overlap);
+    System.arraycopy(buf, keepFrom, buf, 0, len - keepFrom);
+    len -= keepFrom;
+    bufOffset += keepFrom;
+    ownFrom = current.ownTo - keepFrom;
+    current = null;
+  }
+
+  private void fill() {
+    try {
+      while(!eof && len < buf.length) {
+        int n = reader.read(buf, len, buf.length - len);
+        if(n < 0) eof = true; else len += n;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Index after the last '\n' in buf[from, to), or -1 */
+  private int lastLineBreak(int from, int to) {
+    for(int i = to - 1; i >= from; i--) if(buf[i] == '\n') return i + 1;
+    return -1;
+  }
+
+  @Override public void close() throws IOException {
+    reader.close();
+  }
+
+  /**
+   * A window over the text. Indexes are relative to the start of the window (including the context before the owned region).
+   */
+  public class Chunk {
+    private final int start;
+    private final int ownFrom;
+    private final int ownTo;
+    private final int end;
+    private final long offset;
+    private final long firstLine;
+    private final boolean splitLine;
+
+    private Chunk(int start, int ownFrom, int ownTo, int end, long offset, long firstLine, boolean splitLine) {
+      this.start = start;
+      this.ownFrom = ownFrom;
+      this.ownTo = ownTo;
+      this.end = end;
+      this.offset = offset;
+      this.firstLine = firstLine;
+      this.splitLine = splitLine;
+    }
+
+    /** The window text: context, owned region and lookahead. A view on the shared buffer, no copy is made. */
+    public CharSequence getText() {
+      return CharBuffer.wrap(buf, start, end - start);
+    }
+
+    public int length() { return end - start; }
+    public int getOwnedFrom() { return ownFrom - start; }
+    public int getOwnedTo() { return ownTo - start; }
+    /** Position in the text of the owned region start */
+    public long getOffset() { return offset; }
+    /** Line number (1-based) of the owned region start */
+    public long getFirstLine() { return firstLine; }
+    /** True if the owned region ends in the middle of a line, longer than the chunk size */
+    public boolean isSplitLine() { return splitLine; }
+    /** True if the match starting at index (relative to this window) must be reported by this chunk */
+    public boolean owns(int index) { return index >= getOwnedFrom() && index < getOwnedTo(); }
+
+    /** Reader for window[from, to), with no copy */
+    public Reader reader(int from, int to) {
+      if(from < 0 || to > length() || from > to) throw new IndexOutOfBoundsException(from + ".." + to);
+      return new CharArrayReader(buf, start + from, to - from);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * DockerConfigScanner - Tells if a docker configuration file has inline credentials, walking the JSON token stream.
+ * <p>
+ * Both formats are supported: {@code .docker/config.json}, with the registries under {@code auths},
+ * and the legacy {@code .dockercfg}, with the registries at the root. A file with {@code auths} is never read as legacy,
+ * so other top-level objects (like {@code proxies}) are not taken for registries.
+ * Only {@code <registries>.*.auth} values are looked at; anything else (like {@code credHelpers} or large {@code auths}
+ * entries without inline credentials) is skipped without being materialized.
+ * <p>
+ * This is only a filter: an {@code auth} with a base64 value is enough. Decoding the value is left to the detector.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class DockerConfigScanner {
+  public static final String AUTHS = "auths";
+  public static final String AUTH = "auth";
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private DockerConfigScanner() {}
+
+  /** True if the file has at least one inline credential. Stops at the first one found under {@code auths}. */
+  public static boolean hasCredentials(Path file) throws IOException {
+    try(Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return hasCredentials(r);
+    }
+  }
+
+  /** True if the docker configuration read has at least one inline credential */
+  public static boolean hasCredentials(Reader reader) throws IOException {
+    try(JsonParser p = JSON.createParser(reader)) {
+      if(p.nextToken() != JsonToken.START_OBJECT) return false;
+      boolean auths = false;
+      // legacy .dockercfg: { "registry": { "auth": "...", "email": "..." } }, valid only if there is no 'auths'
+      boolean legacy = false;
+      while(p.nextToken() == JsonToken.FIELD_NAME) {
+        String name = p.getCurrentName();
+        JsonToken value = p.nextToken();
+        if(AUTHS.equals(name) && value == JsonToken.START_OBJECT) {
+          auths = true;
+          if(registries(p)) return true;
+        } else if(!auths && !legacy && value == JsonToken.START_OBJECT) {
+          legacy = registry(p);
+        } else {
+          p.skipChildren();
+        }
+      }
+      return !auths && legacy;
+    }
+  }
+
+  /** Scans the registries object, positioned at its START_OBJECT. Stops at the first registry with a credential. */
+  private static boolean registries(JsonParser p) throws IOException {
+    while(p.nextToken() == JsonToken.FIELD_NAME) {
+      if(p.nextToken() == JsonToken.START_OBJECT) {
+        if(registry(p)) return true;
+      } else {
+        p.skipChildren();
+      }
+    }
+    return false;
+  }
+
+  /** Scans a registry object, positioned at its START_OBJECT, up to its END_OBJECT */
+  private static boolean registry(JsonParser p) throws IOException {
+    boolean found = false;
+    while(p.nextToken() == JsonToken.FIELD_NAME) {
+      boolean auth = AUTH.equals(p.getCurrentName());
+      JsonToken value = p.nextToken();
+      if(auth && value == JsonToken.VALUE_STRING && !found) {
+        // view on the parser buffer, the value is not materialized as a String
+        var text = CharBuffer.wrap(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+        found = Entropy.isBase64(text, 0, text.length());
+      } else {
+        p.skipChildren();
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,171 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Entropy - Allocation-free Shannon entropy and character class checks over a {@link CharSequence} window.
+ * <p>
+ * Candidate secrets are checked on the region matched in the input, with no substring needed.
+ * {@link #hasMinEntropy(CharSequence, int, int, double)} processes the window char by char and stops as soon
+ * as the threshold is provably unreachable: for a window of length {@code n}, after counting the first chars,
+ * the final entropy is at most {@code log2(n) - S/n}, where {@code S = sum(c * log2(c))} for the current counts
+ * {@code c} (best case is that every remaining char is a new, distinct symbol, which adds nothing to S).
+ * As S only grows, low-entropy candidates like {@code aaaaaaaa...} or {@code 0000-0000-...} are rejected early.
+ * <p>
+ * Entropy is measured in bits per char, which is the same as bits per byte for ASCII text.
+ * Chars above U+00FF, rare in secrets, are handled in a slower path.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class Entropy {
+  private static final int SYMBOLS = 256;
+  private static final double LN2 = Math.log(2);
+  /** c * log2(c) for small counts */
+  private static final double[] C_LOG_C = new double[1024];
+  static {
+    for(int c = 1; c < C_LOG_C.length; c++) C_LOG_C[c] = c * Math.log(c) / LN2;
+  }
+
+  private static final ThreadLocal<int[]> COUNTS = ThreadLocal.withInitial(() -> new int[SYMBOLS]);
+
+  // Character classes, as returned by charClasses()
+  public static final int LOWER = 1;
+  public static final int UPPER = 1 << 1;
+  public static final int DIGIT = 1 << 2;
+  /** '+' or '/' (standard base64) */
+  public static final int BASE64_STD = 1 << 3;
+  /** '-' or '_' (url-safe base64) */
+  public static final int BASE64_URL = 1 << 4;
+  /** '=' (base64 padding) */
+  public static final int PADDING = 1 << 5;
+  /** Other printable ASCII char (including space), not in the classes above */
+  public static final int OTHER_PRINTABLE = 1 << 6;
+  /** Control (including tabs and line breaks) or non-ASCII char */
+  public static final int NON_PRINTABLE = 1 << 7;
+
+  private Entropy() {}
+
+  /** Shannon entropy of the chars in text[from, to), in bits per char */
+  public static double shannon(CharSequence text, int from, int to) {
+    final int n = to - from;
+    if(n <= 0) return 0;
+    int[] counts = COUNTS.get();
+    try {
+      double s = 0; // sum c*log2(c)
+      for(int i = from; i < to; i++) {
+        char ch = text.charAt(i);
+        if(ch >= SYMBOLS) return shannonSlow(text, from, to);
+        s += delta(counts[ch]++);
+      }
+      return log2(n) - s / n;
+
+    } finally {
+      Arrays.fill(counts, 0);
+    }
+  }
+
+  public static double shannon(CharSequence text) {
+    return shannon(text, 0, text.length());
+  }
+
+  /**
+   * True if the Shannon entropy of text[from, to) is at least {@code min} bits per char.
+   * Stops as soon as the threshold cannot be reached.
+   */
+  public static boolean hasMinEntropy(CharSequence text, int from, int to, double min) {
+    if(min <= 0) return true;
+    final int n = to - from;
+    if(n <= 0) return false;
+    final double maxEntropy = log2(n);
+    if(maxEntropy < min) return false; // too short: n distinct chars give log2(n) at most
+
+    // the upper bound log2(n) - s/n < min  <=>  s > (log2(n) - min) * n
+    final double limit = (maxEntropy - min) * n;
+    int[] counts = COUNTS.get();
+    try {
+      double s = 0;
+      for(int i = from; i < to; i++) {
+        char ch = text.charAt(i);
+        if(ch >= SYMBOLS) return shannonSlow(text, from, to) >= min;
+        s += delta(counts[ch]++);
+        if(s > limit) return false; // unreachable
+      }
+      return true; // final s <= limit, so entropy >= min
+
+    } finally {
+      Arrays.fill(counts, 0);
+    }
+  }
+
+  public static boolean hasMinEntropy(CharSequence text, double min) {
+    return hasMinEntropy(text, 0, text.length(), min);
+  }
+
+  /** Bitmask with the character classes present in text[from, to) */
+  public static int charClasses(CharSequence text, int from, int to) {
+    int classes = 0;
+    for(int i = from; i < to; i++) classes |= charClass(text.charAt(i));
+    return classes;
+  }
+
+  /** True if every char in text[from, to) is in the allowed classes. Stops at the first char not allowed. */
+  public static boolean onlyClasses(CharSequence text, int from, int to, int allowed) {
+    for(int i = from; i < to; i++) {
+      if((charClass(text.charAt(i)) & ~allowed) != 0) return false;
+    }
+    return true;
+  }
+
+  /** True if text[from, to) is non-empty printable ASCII */
+  public static boolean isPrintableAscii(CharSequence text, int from, int to) {
+    return to > from && onlyClasses(text, from, to, LOWER | UPPER | DIGIT | BASE64_STD | BASE64_URL | PADDING | OTHER_PRINTABLE);
+  }
+
+  /**
+   * True if text[from, to) looks like base64 (standard or url-safe alphabet), with proper length when padded.
+   */
+  public static boolean isBase64(CharSequence text, int from, int to) {
+    final int n = to - from;
+    if(n <= 0) return false;
+    int pad = 0;
+    while(pad < 2 && pad < n && text.charAt(to - 1 - pad) == '=') pad++;
+    if(pad > 0 && n % 4 != 0) return false;
+    return onlyClasses(text, from, to - pad, LOWER | UPPER | DIGIT | BASE64_STD | BASE64_URL);
+  }
+
+  public static int charClass(char c) {
+    if(c >= 'a' && c <= 'z') return LOWER;
+    if(c >= 'A' && c <= 'Z') return UPPER;
+    if(c >= '0' && c <= '9') return DIGIT;
+    switch (c) {
+      case '+': case '/': return BASE64_STD;
+      case '-': case '_': return BASE64_URL;
+      case '=': return PADDING;
+      default: return c >= ' ' && c < 127 ? OTHER_PRINTABLE : NON_PRINTABLE;
+    }
+  }
+
+  /** Increment in sum(c*log2(c)) when a count goes from c to c+1 */
+  private static double delta(int c) {
+    return cLogC(c + 1) - cLogC(c);
+  }
+
+  private static double cLogC(int c) {
+    return c < C_LOG_C.length ? C_LOG_C[c] : c * Math.log(c) / LN2;
+  }
+
+  private static double log2(int n) {
+    return Math.log(n) / LN2;
+  }
+
+  private static double shannonSlow(CharSequence text, int from, int to) {
+    var counts = new HashMap<Character, Integer>();
+    for(int i = from; i < to; i++) counts.merge(text.charAt(i), 1, Integer::sum);
+    final int n = to - from;
+    double s = 0;
+    for(int c : counts.values()) s += cLogC(c);
+    return log2(n) - s / n;
+  }
+}
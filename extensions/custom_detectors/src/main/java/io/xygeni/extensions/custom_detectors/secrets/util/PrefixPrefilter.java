@@ -0,0 +1,178 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import io.xygeni.extensions.custom_detectors.util.RegexLiterals;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * PrefixPrefilter - Decides which secret detectors could match an entry, scanning the entry text only once.
+ * <p>
+ * For each detector, the literals that any match must contain are taken from its {@code quickFilters}, or
+ * extracted from the literal prefix of its {@code value} (or {@code key}) regular expression. All literals
+ * are compiled into a single {@link AhoCorasick} automaton, so the cost of the prefilter does not grow
+ * with the number of detectors. Only the detectors with a literal hit (plus the detectors without any usable literal)
+ * need to run their full patterns on the entry.
+ * <p>
+ * Matching is case-insensitive, so the prefilter never discards an entry that the detector would match.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class PrefixPrefilter {
+  /** Literals shorter than this are too common to filter anything */
+  public static final int MIN_LITERAL_LENGTH = 3;
+
+  private final List<String> detectors;
+  /** Detectors that must always run */
+  private final BitSet unfiltered;
+  /** For each automaton pattern, the detector index */
+  private final int[] patternToDetector;
+  private final AhoCorasick automaton;
+
+  private PrefixPrefilter(List<String> detectors, BitSet unfiltered, int[] patternToDetector, AhoCorasick automaton) {
+    this.detectors = detectors;
+    this.unfiltered = unfiltered;
+    this.patternToDetector = patternToDetector;
+    this.automaton = automaton;
+  }
+
+  /**
+   * Builds the prefilter from the required literals for each detector.
+   * An empty list of literals means that the detector is not filtered.
+   */
+  public static PrefixPrefilter of(Map<String, ? extends Collection<String>> literalsByDetector) {
+    var detectors = new ArrayList<String>();
+    var unfiltered = new BitSet();
+    var patterns = new ArrayList<String>();
+    var owners = new ArrayList<Integer>();
+
+    for(var e : literalsByDetector.entrySet()) {
+      int idx = detectors.size();
+      detectors.add(e.getKey());
+      var literals = e.getValue();
+      if(literals == null || literals.isEmpty() || literals.stream().anyMatch(l -> !isUsable(l))) {
+        unfiltered.set(idx);
+        continue;
+      }
+      for(String literal : literals) {
+        patterns.add(literal);
+        owners.add(idx);
+      }
+    }
+
+    int[] patternToDetector = owners.stream().mapToInt(Integer::intValue).toArray();
+    var automaton = patterns.isEmpty() ? null : AhoCorasick.build(patterns);
+    return new PrefixPrefilter(Collections.unmodifiableList(detectors), unfiltered, patternToDetector, automaton);
+  }
+
+  /** Builds the prefilter for all detectors in the given detector configuration (.yml) files */
+  public static PrefixPrefilter fromConfigFiles(Collection<File> configFiles) {
+    var literals = new LinkedHashMap<String, List<String>>();
+    for(File f : configFiles) {
+      try(Reader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+        var yaml = new Yaml(new SafeConstructor(new LoaderOptions()));
+        for(Object doc : yaml.loadAll(r)) {
+          if(doc instanceof Map) {
+            Map<?, ?> detector = (Map<?, ?>) doc;
+            Object id = detector.get("id");
+            if(id != null) literals.put(id.toString(), requiredLiterals(detector));
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return of(literals);
+  }
+
+  /**
+   * The literals, one of which must be present for the detector configuration to match.
+   * Empty if the detector cannot be prefiltered.
+   */
+  public static List<String> requiredLiterals(Map<?, ?> detector) {
+    Object quickFilters = detector.get("quickFilters");
+    if(quickFilters instanceof Collection && !((Collection<?>) quickFilters).isEmpty()) {
+      var result = new ArrayList<String>();
+      for(Object qf : (Collection<?>) quickFilters) result.add(String.valueOf(qf));
+      return result;
+    }
+
+    Set<String> result = new LinkedHashSet<>();
+    // the root block, and each additional pattern
+    var blocks = new ArrayList<Map<?, ?>>();
+    if(detector.get("key") != null || detector.get("value") != null) blocks.add(detector);
+    Object patterns = detector.get("patterns");
+    if(patterns instanceof Collection) {
+      for(Object p : (Collection<?>) patterns) {
+        if(p instanceof Map && !Boolean.FALSE.equals(((Map<?, ?>) p).get("enabled"))) blocks.add((Map<?, ?>) p);
+      }
+    }
+    if(blocks.isEmpty()) return List.of();
+
+    for(var block : blocks) {
+      String literal = literalPrefix(block.get("value"));
+      if(!isUsable(literal)) literal = literalPrefix(block.get("key"));
+      if(!isUsable(literal)) return List.of(); // one block without literal: no prefiltering possible
+      result.add(literal);
+    }
+    return new ArrayList<>(result);
+  }
+
+  private static String literalPrefix(Object condition) {
+    if(!(condition instanceof Map)) return "";
+    Object regex = ((Map<?, ?>) condition).get("regex");
+    if(!(regex instanceof Map)) return "";
+    Object pattern = ((Map<?, ?>) regex).get("pattern");
+    return pattern == null ? "" : RegexLiterals.literalPrefix(pattern.toString());
+  }
+
+  private static boolean isUsable(String literal) {
+    if(literal == null || literal.length() < MIN_LITERAL_LENGTH) return false;
+    for(int i = 0; i < literal.length(); i++) if(literal.charAt(i) >= 128) return false;
+    return true;
+  }
+
+  public List<String> getDetectors() { return detectors; }
+
+  /** True if the detector is subject to prefiltering (has usable literals) */
+  public boolean isFiltered(String detectorId) {
+    int idx = detectors.indexOf(detectorId);
+    return idx >= 0 && !unfiltered.get(idx);
+  }
+
+  /**
+   * Returns the ids of the detectors that could match an entry with the given text parts (typically key and value).
+   * Detectors not known by this prefilter are not included, the caller should run them always.
+   */
+  public Set<String> candidates(CharSequence... parts) {
+    BitSet selected = (BitSet) unfiltered.clone();
+    if(automaton != null) {
+      var hits = new BitSet(automaton.getPatternCount());
+      for(CharSequence part : parts) automaton.scan(part, hits);
+      for(int p = hits.nextSetBit(0); p >= 0; p = hits.nextSetBit(p + 1)) {
+        selected.set(patternToDetector[p]);
+      }
+    }
+
+    var result = new LinkedHashSet<String>();
+    for(int d = selected.nextSetBit(0); d >= 0; d = selected.nextSetBit(d + 1)) result.add(detectors.get(d));
+    return result;
+  }
+}
@@ -0,0 +1,170 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import com.depsdoctor.commons.os.OS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * SecretAllowlist - Known-benign secrets (fake tokens in test fixtures, already triaged findings) to be dropped
+ * by the detectors, so they are neither verified nor reported.
+ * <p>
+ * Only SHA-256 hashes of the secrets are kept, so the allowlist file does not leak anything.
+ * Each line in the file is either {@code sha256:<hex>:<length>} (see {@link #hash(CharSequence)}), or the secret itself;
+ * empty lines and lines starting with {@code #} are ignored. The {@code :<length>} suffix is optional.
+ * <p>
+ * A lookup first checks the length of the candidate against the lengths of the secrets in the allowlist, so most
+ * candidates are rejected with no hashing. Only candidates with a listed length are hashed (with a per-thread digest)
+ * and looked up in the hash set; an entry with no length makes every candidate go to the hash set.
+ * Nothing is computed when the allowlist is empty, the usual case.
+ * <p>
+ * The {@link #shared()} allowlist is loaded once from the file given by the {@code SECRETS_ALLOWLIST} environment variable
+ * or system property, and is used by all the custom detectors. Instances are immutable and thread-safe.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class SecretAllowlist {
+  /** Environment variable or system property with the path to the shared allowlist file */
+  public static final String PROPERTY = "SECRETS_ALLOWLIST";
+  public static final String HASH_PREFIX = "sha256:";
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final SecretAllowlist EMPTY = new SecretAllowlist(Set.of(), new BitSet(), false);
+  private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every JVM must support SHA-256
+    }
+  });
+
+  private static volatile Shared shared;
+
+  /** SHA-256 of the secrets (ByteBuffer has content equality) */
+  private final Set<ByteBuffer> hashes;
+  /** Lengths (in chars) of the secrets, the cheap probe in front of the hash set */
+  private final BitSet lengths;
+  /** True if some entry has no length: the probe is skipped */
+  private final boolean anyLength;
+
+  private SecretAllowlist(Set<ByteBuffer> hashes, BitSet lengths, boolean anyLength) {
+    this.hashes = hashes;
+    this.lengths = lengths;
+    this.anyLength = anyLength;
+  }
+
+  /** Allowlist with the given entries (secrets, or {@code sha256:<hex>} hashes) */
+  public static SecretAllowlist of(Collection<String> entries) {
+    Set<ByteBuffer> hashes = new HashSet<>();
+    BitSet lengths = new BitSet();
+    boolean anyLength = false;
+    for(String entry : entries) {
+      String e = entry.trim();
+      if(e.isEmpty() || e.startsWith("#")) continue;
+      if(e.startsWith(HASH_PREFIX)) {
+        String hash = e.substring(HASH_PREFIX.length());
+        int colon = hash.indexOf(':');
+        hashes.add(ByteBuffer.wrap(unhex(colon < 0 ? hash : hash.substring(0, colon))));
+        if(colon < 0) anyLength = true;
+        else lengths.set(length(hash.substring(colon + 1), e));
+      } else {
+        hashes.add(ByteBuffer.wrap(sha256(e)));
+        lengths.set(e.length());
+      }
+    }
+    return new SecretAllowlist(Set.copyOf(hashes), lengths, anyLength);
+  }
+
+  public static SecretAllowlist load(Path file) {
+    try {
+      return of(Files.readAllLines(file, StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static SecretAllowlist empty() { return EMPTY; }
+
+  /**
+   * The process-wide allowlist, from the file in the {@code SECRETS_ALLOWLIST} environment variable or system property.
+   * Empty when not configured. Loaded again only if the configured path changes.
+   */
+  public static SecretAllowlist shared() {
+    String path = OS.getProperty(PROPERTY, "");
+    Shared s = shared;
+    if(s != null && s.path.equals(path)) return s.allowlist;
+
+    synchronized (SecretAllowlist.class) {
+      s = shared;
+      if(s == null || !s.path.equals(path)) {
+        s = new Shared(path, path.isBlank() ? EMPTY : load(Path.of(path)));
+        shared = s;
+      }
+      return s.allowlist;
+    }
+  }
+
+  /** True if the secret is in the allowlist */
+  public boolean contains(CharSequence secret) {
+    if(hashes.isEmpty() || secret == null) return false;
+    if(!anyLength && !lengths.get(secret.length())) return false;
+    return hashes.contains(ByteBuffer.wrap(sha256(secret)));
+  }
+
+  public boolean isEmpty() { return hashes.isEmpty(); }
+
+  public int size() { return hashes.size(); }
+
+  /** The allowlist entry for the secret: {@code sha256:<hex>:<length>} */
+  public static String hash(CharSequence secret) {
+    byte[] h = sha256(secret);
+    var sb = new StringBuilder(HASH_PREFIX.length() + 2 * h.length + 6).append(HASH_PREFIX);
+    for(byte b : h) sb.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+    return sb.append(':').append(secret.length()).toString();
+  }
+
+  private static byte[] sha256(CharSequence secret) {
+    return SHA256.get().digest(secret.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static int length(String length, String entry) {
+    try {
+      int n = Integer.parseInt(length);
+      if(n >= 0) return n;
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Not a secret length: " + entry);
+  }
+
+  private static byte[] unhex(String hex) {
+    if(hex.length() != 64) throw new IllegalArgumentException("Not a SHA-256 hash: " + hex);
+    byte[] b = new byte[32];
+    for(int i = 0; i < 32; i++) {
+      int hi = Character.digit(hex.charAt(2 * i), 16), lo = Character.digit(hex.charAt(2 * i + 1), 16);
+      if(hi < 0 || lo < 0) throw new IllegalArgumentException("Not a SHA-256 hash: " + hex);
+      b[i] = (byte) (hi << 4 | lo);
+    }
+    return b;
+  }
+
+  private static final class Shared {
+    private final String path;
+    private final SecretAllowlist allowlist;
+
+    Shared(String path, SecretAllowlist allowlist) {
+      this.path = path;
+      this.allowlist = allowlist;
+    }
+  }
+}
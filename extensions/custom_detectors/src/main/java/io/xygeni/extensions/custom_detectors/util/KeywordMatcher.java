@@ -0,0 +1,189 @@
+package io.xygeni.extensions.custom_detectors.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * KeywordMatcher - Immutable set of keywords (allowed or forbidden values in a detector configuration) compiled for
+ * fast membership tests, typically in {@code configure()}.
+ * <p>
+ * A lookup first checks the value length against a bitmask of the keyword lengths, which rejects most non-matching
+ * values with a single bit test. Then a perfect hash gives the only slot the value could be in, and the value is compared
+ * with that keyword only. The perfect hash is built with hash and displace (CHD): a first hash splits the keywords in
+ * buckets of about {@value #BUCKET_SIZE}, and each bucket gets a displacement, found at build time, sending its keywords
+ * to free slots of a table with a quarter more slots than keywords. Biggest buckets are placed first, while the table is
+ * mostly empty. So the table and the displacements grow linearly with the keywords.
+ * <p>
+ * Both hashes are mixed from {@link String#hashCode()}, which is cached for {@code String} values, so repeated lookups of
+ * the same attribute value do not even hash it again.
+ * <p>
+ * {@link #indexOf(CharSequence)} gives the keyword ordinal, so callers can switch on ints instead of comparing strings.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class KeywordMatcher {
+  private static final KeywordMatcher EMPTY = new KeywordMatcher(List.of());
+  /** Average keywords per bucket */
+  static final int BUCKET_SIZE = 4;
+  private static final int MAX_DISPLACEMENT = 1 << 16;
+
+  private final String[] keywords;
+  /** Bit i set if there is a keyword with length i (bit 63: length 63 or more) */
+  private final long lengths;
+  /** bucket -> displacement */
+  private final int[] displacements;
+  /** slot -> keyword ordinal, or -1; the length is a power of two */
+  private final int[] table;
+  /** Only when two keywords have the same hash code, and there is no perfect hash */
+  private final Map<String, Integer> fallback;
+
+  private KeywordMatcher(List<String> keywords) {
+    this.keywords = keywords.toArray(new String[0]);
+    long l = 0;
+    for(String k : keywords) l |= bit(k.length());
+    this.lengths = l;
+
+    Set<Integer> hashes = new HashSet<>();
+    for(String k : keywords) hashes.add(k.hashCode());
+    if(hashes.size() < keywords.size()) {
+      Map<String, Integer> m = new HashMap<>();
+      for(int i = 0; i < this.keywords.length; i++) m.put(this.keywords[i], i);
+      this.fallback = m;
+      this.table = null;
+      this.displacements = null;
+
+    } else {
+      this.fallback = null;
+      int n = this.keywords.length;
+      this.displacements = new int[Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+      // the next power of two >= 1.25 * keywords, doubled in the (unlikely) case a bucket cannot be placed
+      int size = Integer.highestOneBit(Math.max(1, n + n / 4 - 1)) << 1;
+      int[] t = null;
+      while(t == null) {
+        t = tryBuild(this.keywords, displacements, size);
+        size <<= 1;
+      }
+      this.table = t;
+    }
+  }
+
+  /** Slots for the keywords in a table of the given size, filling the displacements, or null if a bucket cannot be placed */
+  private static int[] tryBuild(String[] keywords, int[] displacements, int size) {
+    List<List<Integer>> buckets = new ArrayList<>(displacements.length);
+    for(int b = 0; b < displacements.length; b++) buckets.add(new ArrayList<>(BUCKET_SIZE));
+    for(int i = 0; i < keywords.length; i++) buckets.get(bucket(keywords[i].hashCode(), displacements.length)).add(i);
+
+    Integer[] order = new Integer[displacements.length];
+    for(int b = 0; b < order.length; b++) order[b] = b;
+    Arrays.sort(order, (a, b) -> buckets.get(b).size() - buckets.get(a).size());
+
+    int[] t = new int[size];
+    Arrays.fill(t, -1);
+    Arrays.fill(displacements, 0);
+    for(int b : order) {
+      var bucket = buckets.get(b);
+      if(bucket.isEmpty()) break;
+      int d = 0;
+      while(!place(t, keywords, bucket, d)) {
+        if(++d == MAX_DISPLACEMENT) return null;
+      }
+      displacements[b] = d;
+    }
+    return t;
+  }
+
+  /** Puts the keywords of the bucket in their slots for displacement d, if all are free; else leaves t unchanged */
+  private static boolean place(int[] t, String[] keywords, List<Integer> bucket, int d) {
+    for(int j = 0; j < bucket.size(); j++) {
+      int slot = slot(keywords[bucket.get(j)].hashCode(), d, t.length);
+      if(t[slot] >= 0) {
+        // undo the keywords already placed
+        for(int k = 0; k < j; k++) t[slot(keywords[bucket.get(k)].hashCode(), d, t.length)] = -1;
+        return false;
+      }
+      t[slot] = bucket.get(j);
+    }
+    return true;
+  }
+
+  private static int bucket(int h, int buckets) {
+    return Integer.remainderUnsigned(mix(h), buckets);
+  }
+
+  private static int slot(int h, int displacement, int size) {
+    return mix(h ^ (displacement * 0x9E3779B9 + 0x7F4A7C15)) & (size - 1);
+  }
+
+  /** Murmur3 finalizer */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    return h ^ (h >>> 16);
+  }
+
+  /** Compiles the keywords (duplicates ignored; nulls not allowed) */
+  public static KeywordMatcher of(Collection<String> keywords) {
+    if(keywords == null || keywords.isEmpty()) return EMPTY;
+    return new KeywordMatcher(new ArrayList<>(new LinkedHashSet<>(keywords)));
+  }
+
+  public static KeywordMatcher of(String... keywords) {
+    return of(List.of(keywords));
+  }
+
+  /** True if value is one of the keywords */
+  public boolean contains(CharSequence value) {
+    return indexOf(value) >= 0;
+  }
+
+  /** The ordinal of the keyword equal to value (in the order given when built), or -1 */
+  public int indexOf(CharSequence value) {
+    if(value == null || (lengths & bit(value.length())) == 0) return -1;
+    if(fallback != null) return fallback.getOrDefault(value.toString(), -1);
+
+    int h = value instanceof String ? value.hashCode() : hash(value);
+    int i = table[slot(h, displacements[bucket(h, displacements.length)], table.length)];
+    return i >= 0 && contentEquals(keywords[i], value) ? i : -1;
+  }
+
+  /** The keyword with the given ordinal */
+  public String keyword(int ordinal) { return keywords[ordinal]; }
+
+  public int size() { return keywords.length; }
+
+  public boolean isEmpty() { return keywords.length == 0; }
+
+  /** Slots in the perfect hash table (0 with no perfect hash) */
+  int tableSize() { return table == null ? 0 : table.length; }
+
+  /** The keywords, in ordinal order */
+  public List<String> keywords() { return Collections.unmodifiableList(Arrays.asList(keywords)); }
+
+  @Override public String toString() { return keywords().toString(); }
+
+  private static long bit(int length) {
+    return 1L << Math.min(length, 63);
+  }
+
+  /** Same as {@link String#hashCode()} */
+  private static int hash(CharSequence s) {
+    int h = 0;
+    for(int i = 0, n = s.length(); i < n; i++) h = 31 * h + s.charAt(i);
+    return h;
+  }
+
+  private static boolean contentEquals(String keyword, CharSequence value) {
+    return keyword == value || keyword.contentEquals(value);
+  }
+}
@@ -0,0 +1,207 @@
+package io.xygeni.extensions.custom_detectors.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * PatternCache - Process-wide cache of compiled regular expressions, keyed by (pattern, flags).
+ * <p>
+ * Detectors are instantiated again for each scan, and a long-running scan server would otherwise
+ * recompile the same patterns over and over. Compiled {@link Pattern} objects are immutable and thread-safe,
+ * so they can be shared by all detector instances.
+ * <p>
+ * Case-insensitive matching in {@code java.util.regex} folds case on every character comparison.
+ * When possible, a {@link Pattern#CASE_INSENSITIVE} pattern is rewritten into an equivalent case-sensitive one,
+ * where each ASCII letter outside character classes becomes an explicit class (e.g. {@code xya_} becomes
+ * {@code [xX][yY][aA]_}). The rewrite is done only when it is provably equivalent: it is skipped for patterns
+ * with inline flags, back-references, quoting, Unicode case folding, or character classes that are not closed under case.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class PatternCache {
+  /** Maximum number of compiled patterns kept */
+  private static final int MAX_PATTERNS = 10_000;
+
+  private static final LoadingCache<Key, Pattern> CACHE = CacheBuilder.newBuilder()
+    .maximumSize(MAX_PATTERNS)
+    .build(CacheLoader.from(PatternCache::doCompile));
+
+  private PatternCache() {}
+
+  /** Returns the compiled pattern for regex, with {@code flags} as in {@link Pattern#compile(String, int)} */
+  public static Pattern compile(String regex, int flags) {
+    Objects.requireNonNull(regex, "regex");
+    try {
+      return CACHE.getUnchecked(new Key(regex, flags));
+    } catch (RuntimeException e) {
+      // keep the exception thrown by Pattern.compile for invalid patterns
+      if(e.getCause() instanceof PatternSyntaxException) throw (PatternSyntaxException) e.getCause();
+      throw e;
+    }
+  }
+
+  public static Pattern compile(String regex, boolean ignoreCase) {
+    return compile(regex, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+  }
+
+  public static Pattern compile(String regex) {
+    return compile(regex, 0);
+  }
+
+  /** Number of compiled patterns currently cached */
+  public static long size() {
+    return CACHE.size();
+  }
+
+  private static Pattern doCompile(Key key) {
+    int flags = key.flags;
+    if(isRewritable(flags)) {
+      String rewritten = toCaseSensitive(key.regex);
+      if(rewritten != null) return Pattern.compile(rewritten, flags & ~Pattern.CASE_INSENSITIVE);
+    }
+    return Pattern.compile(key.regex, flags);
+  }
+
+  private static boolean isRewritable(int flags) {
+    return (flags & Pattern.CASE_INSENSITIVE) != 0 &&
+      (flags & (Pattern.UNICODE_CASE | Pattern.LITERAL | Pattern.COMMENTS | Pattern.CANON_EQ)) == 0;
+  }
+
+  /**
+   * Rewrites a regular expression to be matched with {@link Pattern#CASE_INSENSITIVE} into an equivalent
+   * case-sensitive one. Returns null when the equivalence cannot be ensured.
+   */
+  public static String toCaseSensitive(String regex) {
+    var sb = new StringBuilder(regex.length() * 2);
+    final int n = regex.length();
+    int i = 0;
+
+    while(i < n) {
+      char c = regex.charAt(i);
+
+      if(c == '\\') {
+        if(i + 1 >= n) return null;
+        char e = regex.charAt(i + 1);
+        // escapes that may denote letters, depend on case folding, or need further parsing
+        if("QEpPxuc0123456789kNXb".indexOf(e) >= 0) {
+          if(e == 'b' && (i + 2 >= n || regex.charAt(i + 2) != '{')) {
+            sb.append("\\b"); i += 2; continue; // word boundary
+          }
+          return null;
+        }
+        sb.append(c).append(e);
+        i += 2;
+
+      } else if(c == '[') {
+        int end = classEnd(regex, i);
+        if(end < 0) return null;
+        String cls = regex.substring(i, end + 1);
+        if(!isClosedUnderCase(cls)) return null;
+        sb.append(cls);
+        i = end + 1;
+
+      } else if(c == '{') {
+        // quantifier: digits and commas only
+        int end = regex.indexOf('}', i);
+        if(end < 0) return null;
+        sb.append(regex, i, end + 1);
+        i = end + 1;
+
+      } else if(c == '(' && i + 1 < n && regex.charAt(i + 1) == '?') {
+        int end = groupPrefixEnd(regex, i);
+        if(end < 0) return null; // inline flags or unknown construct
+        sb.append(regex, i, end);
+        i = end;
+
+      } else if(isAsciiLetter(c)) {
+        sb.append('[').append(Character.toLowerCase(c)).append(Character.toUpperCase(c)).append(']');
+        i++;
+
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Index of the ']' closing the character class starting at {@code start}, or -1 */
+  private static int classEnd(String regex, int start) {
+    int depth = 0;
+    for(int i = start, n = regex.length(); i < n; i++) {
+      char c = regex.charAt(i);
+      if(c == '\\') { i++; continue; }
+      if(c == '[') depth++;
+      else if(c == ']' && i > start + 1 && !(i == start + 2 && regex.charAt(start + 1) == '^')) {
+        if(--depth == 0) return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * For group constructs starting with {@code (?}, the index after the construct prefix
+   * (non-capturing, lookaround, atomic, named groups), or -1 for inline flags.
+   */
+  private static int groupPrefixEnd(String regex, int start) {
+    int i = start + 2;
+    if(i >= regex.length()) return -1;
+    char c = regex.charAt(i);
+    if(c == ':' || c == '=' || c == '!' || c == '>') return i + 1;
+    if(c == '<') {
+      if(i + 1 >= regex.length()) return -1;
+      char d = regex.charAt(i + 1);
+      if(d == '=' || d == '!') return i + 2;
+      int end = regex.indexOf('>', i);
+      return end < 0 ? -1 : end + 1; // named group, name kept verbatim
+    }
+    return -1;
+  }
+
+  /** True if the (ASCII) characters matched by the character class do not depend on case */
+  private static boolean isClosedUnderCase(String cls) {
+    Pattern p;
+    try {
+      p = Pattern.compile(cls);
+    } catch (PatternSyntaxException e) {
+      return false;
+    }
+    for(char c = 'a'; c <= 'z'; c++) {
+      boolean lower = p.matcher(String.valueOf(c)).matches();
+      boolean upper = p.matcher(String.valueOf(Character.toUpperCase(c))).matches();
+      if(lower != upper) return false;
+    }
+    return true;
+  }
+
+  private static boolean isAsciiLetter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static final class Key {
+    private final String regex;
+    private final int flags;
+
+    Key(String regex, int flags) {
+      this.regex = regex;
+      this.flags = flags;
+    }
+
+    @Override public boolean equals(Object o) {
+      if(this == o) return true;
+      if(!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return flags == k.flags && regex.equals(k.regex);
+    }
+
+    @Override public int hashCode() {
+      return 31 * regex.hashCode() + flags;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package io.xygeni.extensions.custom_detectors.util;
+
+/**
+ * RegexLiterals - Extracts the literal text that every match of a regular expression must start with.
+ * <p>
+ * Many detector patterns start with a fixed prefix, like {@code \bglpat-[0-9a-zA-Z\-=_]{20,22}\b} ('glpat-')
+ * or {@code ^release/.+$} ('release/'). Such prefix can be searched for cheaply (with a multi-pattern automaton,
+ * or pushed down to a server-side filter) before running the full regular expression.
+ * <p>
+ * The analysis is conservative: when in doubt (alternation at top level, groups, character classes, inline flags...)
+ * the literal prefix ends there, so that any text matching the pattern always contains the returned prefix.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class RegexLiterals {
+  private static final String META = "\\^$.|?*+()[]{}";
+
+  private RegexLiterals() {}
+
+  /**
+   * Returns the literal prefix that every match for the regular expression must start with,
+   * or an empty string if there is no such prefix. Leading anchors ({@code ^}, {@code \b}, {@code \A}, {@code \G})
+   * are skipped, as they do not consume input.
+   */
+  public static String literalPrefix(String regex) {
+    if(regex == null || regex.isEmpty() || hasTopLevelAlternation(regex)) return "";
+
+    int i = skipAnchors(regex, 0);
+    var sb = new StringBuilder();
+    final int n = regex.length();
+
+    while(i < n) {
+      char c = regex.charAt(i);
+      int next; // index after the current literal character
+      char literal;
+
+      if(c == '\\') {
+        if(i + 1 >= n) break;
+        char e = regex.charAt(i + 1);
+        if(e == 'Q') {
+          // quoted section, up to \E (or end of pattern)
+          int end = regex.indexOf("\\E", i + 2);
+          String quoted = end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end);
+          int after = end < 0 ? n : end + 2;
+          if(quoted.isEmpty()) { i = after; continue; }
+          // the last quoted char could be affected by a quantifier
+          if(isOptionalQuantifier(regex, after)) {
+            sb.append(quoted, 0, quoted.length() - 1);
+            break;
+          }
+          sb.append(quoted);
+          if(isQuantifier(regex, after)) break;
+          i = after;
+          continue;
+        }
+        if(!isEscapedLiteral(e)) break; // \d, \w, \s, backreferences, etc.
+        literal = e;
+        next = i + 2;
+
+      } else if(META.indexOf(c) >= 0) {
+        break;
+
+      } else {
+        literal = c;
+        next = i + 1;
+      }
+
+      if(isOptionalQuantifier(regex, next)) break; // x?, x*, x{0,...} : literal not mandatory
+      sb.append(literal);
+      if(isQuantifier(regex, next)) break; // x+, x{n,m} : mandatory, but what follows is not fixed
+      i = next;
+    }
+
+    return sb.toString();
+  }
+
+  /** True if the regular expression has an alternation ({@code |}) outside any group or character class */
+  public static boolean hasTopLevelAlternation(String regex) {
+    int depth = 0;
+    boolean inClass = false;
+    for(int i = 0, n = regex.length(); i < n; i++) {
+      char c = regex.charAt(i);
+      if(c == '\\') {
+        if(i + 1 < n && regex.charAt(i + 1) == 'Q') {
+          int end = regex.indexOf("\\E", i + 2);
+          if(end < 0) return false;
+          i = end + 1;
+        } else {
+          i++; // skip escaped char
+        }
+      }
+      else if(inClass) { if(c == ']') inClass = false; }
+      else if(c == '[') inClass = true;
+      else if(c == '(') depth++;
+      else if(c == ')') depth--;
+      else if(c == '|' && depth == 0) return true;
+    }
+    return false;
+  }
+
+  private static int skipAnchors(String regex, int i) {
+    final int n = regex.length();
+    while(i < n) {
+      char c = regex.charAt(i);
+      if(c == '^') { i++; continue; }
+      if(c == '\\' && i + 1 < n && "bAG".indexOf(regex.charAt(i + 1)) >= 0) { i += 2; continue; }
+      break;
+    }
+    return i;
+  }
+
+  /** Escaped chars that stand for themselves: punctuation escapes, like {@code \.} or {@code \-} */
+  private static boolean isEscapedLiteral(char e) {
+    return !Character.isLetterOrDigit(e);
+  }
+
+  private static boolean isQuantifier(String regex, int i) {
+    if(i >= regex.length()) return false;
+    char c = regex.charAt(i);
+    return c == '?' || c == '*' || c == '+' || c == '{';
+  }
+
+  /** Quantifiers that allow zero occurrences of the preceding atom */
+  private static boolean isOptionalQuantifier(String regex, int i) {
+    if(i >= regex.length()) return false;
+    char c = regex.charAt(i);
+    if(c == '?' || c == '*') return true;
+    if(c == '{') {
+      int j = i + 1;
+      while(j < regex.length() && regex.charAt(j) == '0') j++;
+      // {0}, {0,n}, {00,...}: zero repetitions allowed
+      return j > i + 1 && j < regex.length() && !Character.isDigit(regex.charAt(j));
+    }
+    return false;
+  }
+}
@@ -0,0 +1,20 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import org.junit.jupiter.api.Test;
+
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.assertResult;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.runTerraform;
+
+/** The XYPOL detector, loaded from its YAML definition */
+class AlbProtectedByWafTest {
+  private static final String ID = "custom_alb_protected_by_waf";
+  private static final String PATH = ID;
+
+  @Test public void test() {
+    IacContext ctx = runTerraform(ID, null, PATH);
+    //System.out.println(ctx.flaws());
+    assertResult(ctx, PATH);
+  }
+
+}
@@ -4,6 +4,7 @@ import com.depsdoctor.commons.Resources;
 import com.depsdoctor.commons.file.FileType;
 import com.depsdoctor.commons.io.Files;
 import com.depsdoctor.commons.io.IO;
+import com.depsdoctor.commons.json.JsonSerializer;
 import com.depsdoctor.commons.yml.YmlUtils;
 import com.depsdoctor.core.model.files.FileTypeHelper;
 import com.depsdoctor.core.model.iac.IacFlaw;
@@ -35,8 +36,12 @@ import com.depsdoctor.stan.scanner.parser.iac.parser.helm.HelmParser;
 import com.depsdoctor.stan.scanner.parser.iac.parser.kubernetes.KubernetesParser;
 import com.depsdoctor.stan.scanner.parser.iac.parser.terraform.TerraformParser;
 import com.google.common.collect.Lists;
+import io.xygeni.extensions.custom_detectors.iac.util.TemplateCache;
+import io.xygeni.extensions.custom_detectors.iac.util.TerraformGraph;
+import io.xygeni.extensions.custom_detectors.iac.util.TerraformReferences;
+import io.xygeni.extensions.custom_detectors.iac.util.XypolPolicies;
+import io.xygeni.extensions.custom_detectors.util.PatternCache;
 import io.xygeni.sankxy.xypol.ast.Policy;
-import io.xygeni.sankxy.xypol.parser.XypolParser;
 import lombok.Data;
 import org.assertj.core.api.Assertions;
 import org.yaml.snakeyaml.Yaml;
@@ -44,15 +49,26 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -69,6 +85,13 @@ import static org.assertj.core.api.Assertions.fail;
  */
 public class IacRuleTestHelper {
   private static final File TEST_DIR = new File(getTestResourcesDir(), "iac");
+  /**
+   * Parsed templates for {@link #runParallel} and {@link #runTerraformIncremental} only; other tests parse their own.
+   * Kept frozen, so each run gets a copy of its own.
+   */
+  private static final TemplateCache<byte[]> TEMPLATES = TemplateCache.fromProperties(TemplateCache.DEFAULT_MAX_ENTRIES);
+  /** Local module sources, like {@code source = "../modules/x"} */
+  private static final Pattern MODULE_SOURCE = Pattern.compile("(?m)^\\s*source\\s*=\\s*\"(\\.{1,2}/[^\"]*)\"");
 
   public static IacContext runTerraform(String detectorId, IacFlawDetector rule, String path) {
     return runTerraform(detectorId, rule, path, dc -> {});
@@ -79,6 +102,135 @@ public class IacRuleTestHelper {
     return run(detectorId, rule, IacFramework.terraform, path, conf, onConfig);
   }
 
+  /**
+   * Incremental variant of {@link #runTerraform(String, IacFlawDetector, String, Consumer)}: the module is compared with
+   * the one in the previous run of the detector recorded in state (see {@link TerraformGraph}), and the detector
+   * runs only on the resources affected by the changes. The flaws from the previous run on the other resources
+   * are carried forward. State is updated with the results.
+   */
+  public static IacContext runTerraformIncremental(
+    String detectorId, IacFlawDetector rule, String path, Consumer<DetectorConfig> onConfig, IncrementalState state
+  ) {
+    return runTerraformIncremental(detectorId, rule, path, path, onConfig, state);
+  }
+
+  /**
+   * As {@link #runTerraformIncremental(String, IacFlawDetector, String, Consumer, IncrementalState)}, for path holding
+   * a version of the given module. The previous run is the last one with the same module, detector and detector
+   * configuration: runs on other modules, or with other properties or resource filters, do not share results.
+   */
+  public static IacContext runTerraformIncremental(
+    String detectorId, IacFlawDetector rule, String path, String module, Consumer<DetectorConfig> onConfig,
+    IncrementalState state
+  ) {
+    File moduleDir = file(path, FileType.terraform).getParentFile();
+    return runTerraformIncremental(
+      detectorId, rule, moduleDir, module, () -> (Configuration) parseCached(terraformTarget(path)).get(0), onConfig, state
+    );
+  }
+
+  /**
+   * As {@link #runTerraformIncremental(String, IacFlawDetector, String, String, Consumer, IncrementalState)}, for a
+   * module in any directory, like one written by the test. The module is parsed on each run.
+   */
+  public static IacContext runTerraformIncremental(
+    String detectorId, IacFlawDetector rule, File moduleDir, String module, Consumer<DetectorConfig> onConfig,
+    IncrementalState state
+  ) {
+    return runTerraformIncremental(detectorId, rule, moduleDir, module, () -> parseTerraform(moduleDir), onConfig, state);
+  }
+
+  private static IacContext runTerraformIncremental(
+    String detectorId, IacFlawDetector rule, File moduleDir, String module, Supplier<Configuration> parser,
+    Consumer<DetectorConfig> onConfig, IncrementalState state
+  ) {
+    TerraformGraph graph = TerraformGraph.scan(moduleDir.toPath());
+    String stateKey = module + '\0' + detectorId + '\0' + configKey(detectorId, onConfig);
+    Snapshot previous = state.snapshots.get(stateKey);
+
+    var conf = parser.get();
+
+    IacContext ctx;
+    Set<String> affected = incremental(graph, previous) ? graph.affected(previous.graph) : graph.resources();
+    if(affected.equals(graph.resources())) {
+      ctx = run(detectorId, rule, IacFramework.terraform, moduleDir, conf, onConfig);
+
+    } else {
+      if(affected.isEmpty()) {
+        // nothing to run, an empty resourcesToCheck would mean all resources
+        ctx = context(moduleDir);
+      } else {
+        ctx = run(detectorId, rule, IacFramework.terraform, moduleDir, conf, dc -> {
+          onConfig.accept(dc);
+          dc.setResourcesToCheck(resourcesToCheck(dc, graph, affected));
+        });
+      }
+      // resources not affected are in the same file and lines, so their flaws are still right
+      for(IacFlaw flaw : previous.flaws) {
+        String key = TerraformReferences.key(flaw.getResource());
+        if(key == null || affected.contains(key)) continue;
+        if(flaw.getResource().equals(graph.qualifiedResource(key))) ctx.addFlaw(flaw, null);
+      }
+    }
+
+    state.snapshots.put(stateKey, new Snapshot(graph, List.copyOf(ctx.flaws().getFlaws())));
+    return ctx;
+  }
+
+  /**
+   * False when the graph cannot tell the affected resources, and the module is scanned in full: on the first run,
+   * with local child modules (their resources, and changes, are not in the graph), or when a previous flaw is not
+   * on a resource of the graph (it could not be carried forward).
+   */
+  private static boolean incremental(TerraformGraph graph, Snapshot previous) {
+    if(previous == null || !graph.localModules().isEmpty()) return false;
+    for(IacFlaw flaw : previous.flaws) {
+      String key = TerraformReferences.key(flaw.getResource());
+      if(key == null || !flaw.getResource().equals(previous.graph.qualifiedResource(key))) return false;
+    }
+    return true;
+  }
+
+  /** The detector configuration after onConfig, as text */
+  private static String configKey(String detectorId, Consumer<DetectorConfig> onConfig) {
+    var dc = load(detectorId, IacFramework.terraform);
+    dc.setEnabled(true);
+    onConfig.accept(dc);
+    return JsonSerializer.dump(dc, false);
+  }
+
+  /** Exact patterns for the affected resources, keeping only those matching the resourcesToCheck already configured */
+  private static String[] resourcesToCheck(DetectorConfig dc, TerraformGraph graph, Set<String> affected) {
+    String[] configured = dc.getResourcesToCheck();
+    List<String> patterns = Lists.newArrayList();
+    for(String key : affected) {
+      int dot = key.indexOf('.');
+      String type = key.substring(0, dot), name = key.substring(dot + 1);
+      String qualified = graph.qualifiedResource(key);
+      boolean checked = configured == null || configured.length == 0 ||
+        Arrays.stream(configured).anyMatch(re -> PatternCache.compile(re).matcher(qualified).find());
+      if(checked) patterns.add("^.*:" + Pattern.quote(type) + ':' + Pattern.quote(name) + '$');
+    }
+    // no pattern left must still check nothing
+    if(patterns.isEmpty()) patterns.add("^$");
+    return patterns.toArray(new String[0]);
+  }
+
+  /** The module graph and flaws of the last incremental run, per module, detector and detector configuration */
+  public static class IncrementalState {
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+  }
+
+  private static final class Snapshot {
+    private final TerraformGraph graph;
+    private final List<IacFlaw> flaws;
+
+    Snapshot(TerraformGraph graph, List<IacFlaw> flaws) {
+      this.graph = graph;
+      this.flaws = flaws;
+    }
+  }
+
   public static IacContext runDockerfile(String detectorId, IacFlawDetector rule, String path) {
     return runDockerfile(detectorId, rule, path, dc -> {});
   }
@@ -195,11 +347,183 @@ public class IacRuleTestHelper {
     return ctx;
   }
 
+  /**
+   * Scans all the IaC templates under the directory (relative to resources/iac), whatever their framework,
+   * with the given detectors, on a work-stealing pool. See {@link #runParallel(String, List, Function, Consumer, int)}.
+   */
+  public static IacContext runParallel(String path, List<String> detectorIds, Consumer<DetectorConfig> onConfig) {
+    return runParallel(path, detectorIds, id -> null, onConfig, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Scans all the IaC templates under the directory (relative to resources/iac) with the given detectors.
+   * <p>
+   * Templates are found with {@link #templates(String)} and parsed concurrently, or taken from the template cache
+   * (see {@link #parseCached(TemplateTarget)}). Then each detector is run on each
+   * template of its framework, also concurrently, with a new rule instance, context and copy of the template per run,
+   * so a detector modifying the template does not change what other runs see. The flaws are
+   * merged into a single context, sorted by resource and line (then by template and detector), so the result does not
+   * depend on scheduling.
+   *
+   * @param rules the rule instance for a detector id, or null to load the rule from the detector configuration.
+   *              Called once per run, so rules need not be thread-safe.
+   * @param parallelism the pool parallelism
+   */
+  public static IacContext runParallel(
+    String path, List<String> detectorIds, Function<String, IacFlawDetector> rules,
+    Consumer<DetectorConfig> onConfig, int parallelism
+  ) {
+    var pool = new ForkJoinPool(parallelism);
+    try {
+      // parse each template (file or module) on its own, into the cache
+      var targets = templates(path);
+      List<Callable<Integer>> parsing = Lists.newArrayList();
+      for(var t : targets) parsing.add(() -> parseCached(t).size());
+      var parsed = invokeAll(pool, parsing);
+
+      // then a run per (template, detector) on the template framework, each on its own copy
+      List<Callable<IacContext>> runs = Lists.newArrayList();
+      for(int i = 0; i < targets.size(); i++) {
+        var target = targets.get(i);
+        for(int j = 0; j < parsed.get(i); j++) {
+          final int template = j;
+          for(String id : detectorIds) {
+            var dc = load(id, target.getFramework());
+            if(dc == null || !target.getFramework().equals(dc.getFramework())) continue;
+            runs.add(() -> run(
+              id, rules.apply(id), target.getFramework(), target.getPath(), parseCached(target).get(template), onConfig
+            ));
+          }
+        }
+      }
+
+      List<IacFlaw> flaws = Lists.newArrayList();
+      for(var runCtx : invokeAll(pool, runs)) flaws.addAll(runCtx.getReport().getFlaws());
+      // stable sort, ties keep the (template, detector) order
+      flaws.sort(FLAW_ORDER);
+
+      IacContext ctx = context(path);
+      flaws.forEach(flaw -> ctx.addFlaw(flaw, null));
+      return ctx;
+
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static final Comparator<IacFlaw> FLAW_ORDER = Comparator
+    .comparing(IacFlaw::getResource, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+    .thenComparingInt(IacFlaw::getBeginLine);
+
+  private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) {
+    List<T> results = Lists.newArrayList();
+    for(var future : pool.invokeAll(tasks)) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+    return results;
+  }
+
+  /** An IaC template (file, Terraform module or Helm chart) found under a directory, with its framework */
+  @Data
+  public static class TemplateTarget {
+    private final IacFramework framework;
+    /** Relative to resources/iac */
+    private final String path;
+    private final Callable<List<IacTemplate>> parser;
+
+    public List<IacTemplate> parse() throws Exception { return parser.call(); }
+  }
+
+  /**
+   * The IaC templates under the directory (relative to resources/iac), in path order:
+   * <ul>
+   *   <li>a Terraform module for each directory with a {@code main.tf}, or each {@code .tf} file elsewhere,</li>
+   *   <li>a Helm chart for each directory with a {@code Chart.yaml}; its files are not considered again,</li>
+   *   <li>each {@code Dockerfile},</li>
+   *   <li>each JSON or YAML file that looks like a CloudFormation, ARM, Kubernetes or Ansible template.</li>
+   * </ul>
+   */
+  public static List<TemplateTarget> templates(String path) {
+    File dir = new File(TEST_DIR, path);
+    List<TemplateTarget> targets = Lists.newArrayList();
+    collect(dir.isFile() ? dir.getParentFile() : dir, dir.isFile() ? new File[] { dir } : null, targets);
+    return targets;
+  }
+
+  private static void collect(File dir, File[] only, List<TemplateTarget> targets) {
+    File[] files = only != null ? only : dir.listFiles();
+    if(files == null) return;
+    Arrays.sort(files);
+
+    if(only == null && new File(dir, "Chart.yaml").isFile()) {
+      String rel = Files.relativize(dir, TEST_DIR);
+      targets.add(new TemplateTarget(IacFramework.kubernetes, rel, () -> List.copyOf(parseHelm(rel))));
+      return;
+    }
+    boolean module = only == null && new File(dir, "main.tf").isFile();
+    if(module) targets.add(terraformTarget(Files.relativize(dir, TEST_DIR)));
+
+    for(File f : files) {
+      if(f.isDirectory()) { collect(f, null, targets); continue; }
+      String rel = Files.relativize(f, TEST_DIR);
+      String name = f.getName();
+
+      if(name.endsWith(".tf")) {
+        if(!module) targets.add(terraformTarget(rel));
+      } else if(name.equals("Dockerfile") || name.endsWith(".dockerfile")) {
+        targets.add(new TemplateTarget(IacFramework.dockerfile, rel, () -> List.of(parseDockerfile(rel))));
+      } else if(name.endsWith(".json") || name.endsWith(".yaml") || name.endsWith(".yml")) {
+        var target = sniff(f, rel);
+        if(target != null) targets.add(target);
+      }
+    }
+  }
+
+  /** Guess the framework from the first bytes of a JSON or YAML file */
+  private static TemplateTarget sniff(File f, String rel) {
+    String head;
+    try(var is = IO.openInputStream(f)) {
+      head = new String(is.readNBytes(4096), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return null;
+    }
+    if(head.contains("AWSTemplateFormatVersion")) {
+      return new TemplateTarget(IacFramework.aws_cloudformation, rel, () -> List.of(parseCf(rel)));
+    }
+    if(head.contains("deploymentTemplate.json")) {
+      return new TemplateTarget(IacFramework.arm, rel, () -> List.of(parseArm(rel)));
+    }
+    if(f.getName().endsWith(".json")) return null;
+    if(head.contains("apiVersion:") && head.contains("kind:")) {
+      return new TemplateTarget(IacFramework.kubernetes, rel, () -> List.copyOf(parseKubernetes(rel)));
+    }
+    if(head.contains("hosts:") || head.contains("tasks:")) {
+      return new TemplateTarget(IacFramework.ansible, rel, () -> List.copyOf(parseAnsible(rel)));
+    }
+    return null;
+  }
+
   public static IacContext run(
     String detectorId, IacFlawDetector rule, IacFramework framework, String path, IacTemplate template,
     Consumer<DetectorConfig> onConfig
   ) {
-    IacContext ctx = IacRuleTestHelper.context(path);
+    return run(detectorId, rule, framework, new File(TEST_DIR, path), template, onConfig);
+  }
+
+  /** Runs the detector on a template in any directory, like a generated one */
+  public static IacContext run(
+    String detectorId, IacFlawDetector rule, IacFramework framework, File dir, IacTemplate template,
+    Consumer<DetectorConfig> onConfig
+  ) {
+    IacContext ctx = IacRuleTestHelper.context(dir);
     ctx.getConfiguration().setTimeout(0);
 
     var dc = load(detectorId, framework);
@@ -329,6 +653,12 @@ public class IacRuleTestHelper {
     return (Configuration)parseTemplate(tfile, FileType.terraform, TerraformParser.class);
   }
 
+  /** Returns parsed Terraform configuration for the module in the directory, anywhere */
+  public static Configuration parseTerraform(File moduleDir) throws ParseException {
+    File main = new File(moduleDir, FileTypeHelper.filename(FileType.terraform));
+    return (Configuration)parser(TerraformParser.class).parse(main, moduleDir.getName(), FileType.terraform, moduleDir);
+  }
+
   public static DockerfileTemplate parseDockerfile(String tfile) throws ParseException {
     return (DockerfileTemplate)parseTemplate(tfile, FileType.dockerfile, DockerfileParser.class);
   }
@@ -426,22 +756,77 @@ public class IacRuleTestHelper {
       String tfile, FileType fileType, Class<T> parserClazz, File basedir
   ) throws ParseException {
     File f = file(tfile, fileType);
-    if(basedir == null) basedir = f.getParentFile();
+    return parser(parserClazz).parse(f, tfile, fileType, basedir == null ? f.getParentFile() : basedir);
+  }
 
-    try {
-      BaseParser p = parserClazz.getDeclaredConstructor().newInstance();
-      return p.parse(f, tfile, fileType, basedir);
+  public static <T extends BaseParser> IacTemplate parseDir(File dir, FileType fileType, Class<T> parserClazz)
+      throws ParseException {
+    return parser(parserClazz).parse(dir, dir.getPath(), fileType, dir);
+  }
 
-    } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-      throw new ParseException("Illegal parser class", e);
+  /** The Terraform module in the directory (or the file) relative to resources/iac */
+  private static TemplateTarget terraformTarget(String path) {
+    return new TemplateTarget(IacFramework.terraform, path, () -> List.of(parseTerraform(path)));
+  }
+
+  /**
+   * The templates of the target, taken from the {@link #templateCache() template cache} if its input files did not
+   * change since they were parsed. The inputs of a Terraform module are its directory and the local modules it uses,
+   * transitively; those of a Helm chart, the chart directory.
+   * <p>
+   * The cache keeps the templates {@link TemplateCache#freeze(Object) frozen}, and each call returns a copy of its own,
+   * so callers may modify them. Templates that cannot be frozen are not cached, and are parsed on each call.
+   */
+  public static List<IacTemplate> parseCached(TemplateTarget target) {
+    File f = new File(TEST_DIR, target.getPath());
+    List<Path> inputs = Lists.newArrayList();
+    switch (target.getFramework()) {
+      case terraform: moduleInputs(f.isFile() ? f.getParentFile() : f, inputs); break;
+      default: inputs.add(f.toPath());
+    }
+    String key = TemplateCache.key(target.getFramework() + ":" + target.getPath(), inputs);
+    var parsed = new AtomicReference<List<IacTemplate>>();
+    byte[] frozen = TEMPLATES.get(key, () -> {
+      try {
+        var templates = target.parse();
+        parsed.set(templates);
+        return TemplateCache.freeze(templates);
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    // parsed by this call (cached or not), so nobody else has it
+    if(parsed.get() != null) return parsed.get();
+    return TemplateCache.thaw(frozen);
+  }
+
+  /** The module directory, and the directories of the local modules it uses, transitively */
+  private static void moduleInputs(File dir, List<Path> inputs) {
+    Path moduleDir = dir.toPath().normalize();
+    if(inputs.contains(moduleDir) || !dir.isDirectory()) return;
+    inputs.add(moduleDir);
+
+    File[] tfs = dir.listFiles(f -> f.isFile() && f.getName().endsWith(".tf"));
+    if(tfs == null) return;
+    Arrays.sort(tfs);
+    for(File tf : tfs) {
+      try {
+        var m = MODULE_SOURCE.matcher(java.nio.file.Files.readString(tf.toPath(), StandardCharsets.UTF_8));
+        while(m.find()) moduleInputs(new File(dir, m.group(1)), inputs);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
     }
   }
 
-  public static <T extends BaseParser> IacTemplate parseDir(File dir, FileType fileType, Class<T> parserClazz)
-      throws ParseException {
+  /** Frozen templates for the parallel and incremental runs, with the disk cache given by {@code IAC_TEMPLATE_CACHE}, if set */
+  public static TemplateCache<byte[]> templateCache() { return TEMPLATES; }
+
+  private static BaseParser parser(Class<? extends BaseParser> parserClazz) throws ParseException {
     try {
-      BaseParser p = parserClazz.getDeclaredConstructor().newInstance();
-      return p.parse(dir, dir.getPath(), fileType, dir);
+      return parserClazz.getDeclaredConstructor().newInstance();
 
     } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
       throw new ParseException("Illegal parser class", e);
@@ -455,8 +840,9 @@ public class IacRuleTestHelper {
     return tfile;
   }
 
+  /** The parsed policy, shared with other tests using an equivalent policy text */
   public static Policy policy(String xypol) {
-    return new XypolParser(new StringReader(xypol)).Policy();
+    return XypolPolicies.compile(xypol);
   }
 
   public static IacContext context(String dir) {
@@ -500,7 +886,7 @@ public class IacRuleTestHelper {
     return f;
   }
 
-  private static IacFlawDetector loadRule(String detectorId, IacFramework framework, IacContext ctx) {
+  public static IacFlawDetector loadRule(String detectorId, IacFramework framework, IacContext ctx) {
     var detectors = new IacFlawDetectorLoader().loadDetectors(
       ctx.getConfiguration(),
       d -> detectorId.equals(d.getId()) && (framework == null || d.getFramework().equals(framework)),
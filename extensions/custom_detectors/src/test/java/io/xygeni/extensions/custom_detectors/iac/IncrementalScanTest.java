@@ -0,0 +1,102 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.core.model.iac.IacFlaw;
+import com.depsdoctor.core.model.iac.IacFramework;
+import com.depsdoctor.iac.scanner.config.DetectorConfig;
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.assertResult;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.parseTerraform;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.runTerraformIncremental;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Incremental runs of S3PublicACLRead over two versions of the same module */
+class IncrementalScanTest {
+  private static final String ID = "custom_s3_bucket_acl_read_to_all";
+  private static final String V1 = ID;
+  private static final String V2 = "incremental/" + ID + "_v2";
+  private static final Consumer<DetectorConfig> FORBIDDEN = dc ->
+    dc.addProperty("forbidden", Set.of("public-read", "public-read-write", "website", "authenticated-read"));
+
+  @Test public void test() {
+    var state = new IacRuleTestHelper.IncrementalState();
+
+    IacContext ctx1 = run(V1, state);
+    assertResult(ctx1, V1);
+    IacFlaw bad0 = flaw(ctx1, "main.tf:aws_s3_bucket:bad_0");
+
+    // website_acl fixed: only website and its acl are checked again, bad_0 is carried forward
+    IacContext ctx2 = run(V2, state);
+    assertResult(ctx2, V2);
+    assertThat(flaw(ctx2, "main.tf:aws_s3_bucket:bad_0")).isSameAs(bad0);
+
+    // no changes, nothing to run
+    IacContext ctx3 = run(V2, state);
+    assertResult(ctx3, V2);
+    assertThat(flaw(ctx3, "main.tf:aws_s3_bucket:bad_0")).isSameAs(bad0);
+
+    // and back
+    assertResult(run(V1, state), V1);
+  }
+
+  @Test public void state_per_module_and_config() {
+    var state = new IacRuleTestHelper.IncrementalState();
+    IacFlaw bad0 = flaw(run(V1, state), "main.tf:aws_s3_bucket:bad_0");
+
+    // another configuration runs on all the resources
+    IacContext allowed = runTerraformIncremental(ID, new S3PublicACLRead(), V2, ID, dc -> {
+      dc.addProperty("forbidden", Set.of("public-read", "public-read-write", "authenticated-read"));
+    }, state);
+    assertResult(allowed, Set.of("main.tf:aws_s3_bucket:bad_0"));
+    assertThat(flaw(allowed, "main.tf:aws_s3_bucket:bad_0")).isNotSameAs(bad0);
+
+    // and so does another module
+    IacContext other = runTerraformIncremental(ID, new S3PublicACLRead(), V2, V2, FORBIDDEN, state);
+    assertThat(flaw(other, "main.tf:aws_s3_bucket:bad_0")).isNotSameAs(bad0);
+  }
+
+  /** The resources of a child module are not in the graph: an edit there is seen, and its flaws are kept */
+  @Test public void child_module_changed(@TempDir Path tmp) throws IOException {
+    Path buckets = Files.createDirectories(tmp.resolve("buckets"));
+    Files.writeString(tmp.resolve("main.tf"),
+      "resource \"aws_s3_bucket\" \"bad_0\" {\n  bucket = \"bad_0\"\n  acl    = \"public-read-write\"\n}\n\n" +
+      "module \"buckets\" {\n  source = \"./buckets\"\n}\n"
+    );
+    String child = "resource \"aws_s3_bucket\" \"child\" {\n  bucket = \"child\"\n}\n\n" +
+      "resource \"aws_s3_bucket_acl\" \"child_acl\" {\n  bucket = aws_s3_bucket.child.id\n  acl    = \"%s\"\n}\n";
+    var state = new IacRuleTestHelper.IncrementalState();
+
+    for(String acl : new String[] { "private", "website", "website", "private" }) {
+      Files.writeString(buckets.resolve("main.tf"), String.format(child, acl));
+      IacContext incremental = runTerraformIncremental(ID, new S3PublicACLRead(), tmp.toFile(), "child", FORBIDDEN, state);
+      // same result as a full run on the current version
+      IacContext full = IacRuleTestHelper.run(
+        ID, new S3PublicACLRead(), IacFramework.terraform, tmp.toFile(), parseTerraform(tmp.toFile()), FORBIDDEN
+      );
+      assertThat(resources(incremental)).isEqualTo(resources(full)).contains("main.tf:aws_s3_bucket:bad_0");
+    }
+  }
+
+  private static List<String> resources(IacContext ctx) {
+    return ctx.flaws().stream().map(IacFlaw::getResource).sorted().collect(Collectors.toList());
+  }
+
+  /** V1 and V2 are versions of the same module */
+  private static IacContext run(String path, IacRuleTestHelper.IncrementalState state) {
+    return runTerraformIncremental(ID, new S3PublicACLRead(), path, ID, FORBIDDEN, state);
+  }
+
+  private static IacFlaw flaw(IacContext ctx, String resource) {
+    return ctx.flaws().stream().filter(f -> resource.equals(f.getResource())).findFirst().orElseThrow();
+  }
+}
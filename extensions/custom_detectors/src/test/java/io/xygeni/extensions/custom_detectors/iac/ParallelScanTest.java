@@ -0,0 +1,55 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.core.model.iac.IacFlaw;
+import com.depsdoctor.core.model.iac.IacFramework;
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.parseCached;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.runParallel;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.templates;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Java and XYPOL detectors on all the templates under resources/iac at once */
+class ParallelScanTest {
+  private static final String S3 = "custom_s3_bucket_acl_read_to_all";
+  private static final String ALB = "custom_alb_protected_by_waf";
+
+  @Test public void templates_found() {
+    var targets = templates("");
+    assertThat(targets).extracting(IacRuleTestHelper.TemplateTarget::getPath).contains(S3, ALB);
+    assertThat(targets).extracting(IacRuleTestHelper.TemplateTarget::getFramework).contains(IacFramework.terraform);
+  }
+
+  @Test public void templates_not_shared_between_runs() {
+    var target = templates(S3).get(0);
+    var first = parseCached(target);
+    // a copy per call, whether the template was cached or parsed again
+    assertThat(parseCached(target).get(0)).isNotSameAs(first.get(0));
+  }
+
+  @Test public void test() {
+    List<String> previous = null;
+    for(int parallelism : new int[] { 1, 4 }) {
+      IacContext ctx = runParallel(
+        "", List.of(S3, ALB), id -> S3.equals(id) ? new S3PublicACLRead() : null,
+        dc -> dc.addProperty("forbidden", Set.of("public-read", "public-read-write", "website", "authenticated-read")),
+        parallelism
+      );
+      var resources = ctx.flaws().stream().map(IacFlaw::getResource).collect(Collectors.toList());
+      assertThat(resources).containsExactlyInAnyOrder(
+        "main.tf:aws_s3_bucket:bad_0", "main.tf:aws_s3_bucket:website",
+        "main.tf:aws_lb:public", "main.tf:aws_alb:public_alb",
+        "main.tf:aws_s3_bucket:bad_0" // incremental/custom_s3_bucket_acl_read_to_all_v2
+      );
+      // same merge order whatever the scheduling
+      if(previous != null) assertThat(resources).isEqualTo(previous);
+      previous = resources;
+    }
+  }
+
+}
@@ -1,12 +1,19 @@
 package io.xygeni.extensions.custom_detectors.iac;
 
+import com.depsdoctor.core.model.iac.IacFramework;
 import com.depsdoctor.iac.scanner.engine.IacContext;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
 import org.junit.jupiter.api.Test;
 
 import java.util.Set;
 
 import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.assertResult;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.context;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.parseTerraform;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.run;
 import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.runTerraform;
+import static org.assertj.core.api.Assertions.assertThat;
 
 class S3PublicACLReadTest {
   private static final String ID = "custom_s3_bucket_acl_read_to_all";
@@ -39,4 +46,43 @@ class S3PublicACLReadTest {
     assertResult(ctx, Set.of("main.tf:aws_s3_bucket:bad_0"));
   }
 
-}
\ No newline at end of file
+  @Test public void test_index_in_context() {
+    // the bucket_acl -> bucket edges are kept in the context of the run
+    var conf = parseTerraform(PATH);
+    IacContext ctx = run(ID, new S3PublicACLRead(), IacFramework.terraform, PATH, conf, dc -> {
+      dc.addProperty("forbidden", Set.of("public-read", "public-read-write", "website", "authenticated-read"));
+    });
+    assertResult(ctx, PATH);
+    var index = TerraformIndex.of(ctx, conf);
+    assertThat(index.size()).isEqualTo(1);
+
+    // resolved by the index, with no fallback to the engine
+    var detector = new S3PublicACLRead();
+    var acls = index.referencing(bucket(conf, ctx, "website"), "bucket", "aws_s3_bucket_acl", t -> detector.resources(conf, ctx, t));
+    assertThat(acls).isNotNull();
+    assertThat(acls).extracting(r -> r.qualifiedResource()).containsExactly("main.tf:aws_s3_bucket_acl:website_acl");
+    assertThat(index.referencing(bucket(conf, ctx, "bad_0"), "bucket", "aws_s3_bucket_acl", t -> detector.resources(conf, ctx, t)))
+      .isEmpty();
+  }
+
+  @Test public void test_index_unresolved_reference() {
+    // aws_s3_bucket_acl.bucket is a variable: the index cannot tell the bucket, and defers to the engine
+    String path = ID + "_unresolved";
+    var conf = parseTerraform(path);
+    IacContext ctx = context(path);
+    var detector = new S3PublicACLRead();
+    var website = bucket(conf, ctx, "website");
+
+    assertThat(TerraformIndex.of(ctx, conf).referencing(website, "bucket", "aws_s3_bucket_acl", t -> detector.resources(conf, ctx, t)))
+      .isNull();
+    // the detector falls back to incoming()
+    assertThat(detector.referencing(website, "bucket", conf, ctx, "aws_s3_bucket_acl")).isNotNull();
+  }
+
+  private static Resource bucket(Configuration conf, IacContext ctx, String name) {
+    return new S3PublicACLRead().resources(conf, ctx, "aws_s3_bucket").stream()
+      .filter(r -> r.qualifiedResource().endsWith(":aws_s3_bucket:" + name))
+      .findFirst().orElseThrow();
+  }
+
+}
@@ -0,0 +1,91 @@
+package io.xygeni.extensions.custom_detectors.iac;
+
+import com.depsdoctor.core.model.iac.IacFramework;
+import com.depsdoctor.iac.scanner.config.IacScanConfig;
+import com.depsdoctor.iac.scanner.engine.IacContext;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Configuration;
+import com.depsdoctor.stan.scanner.parser.iac.model.terraform.Resource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.context;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.load;
+import static io.xygeni.extensions.custom_detectors.iac.IacRuleTestHelper.parseTerraform;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TerraformIndexTest {
+  private static final String PATH = "custom_s3_bucket_acl_read_to_all";
+
+  @Test public void resources_loaded_once_per_type() {
+    Configuration conf = parseTerraform(PATH); // parsed for this test only
+    IacContext ctx = context(PATH);
+    var detector = new S3PublicACLRead();
+    var loads = new AtomicInteger();
+
+    // loaded by the detector, through the index
+    List<Resource> buckets = detector.resources(conf, ctx, "aws_s3_bucket");
+    // a second detector on the same configuration gets the same list, without filtering again
+    List<Resource> again = TerraformIndex.of(ctx, conf).resources("aws_s3_bucket", t -> {
+      loads.incrementAndGet();
+      return List.of();
+    });
+
+    assertThat(loads).hasValue(0); // second loader never called
+    assertThat(again).isSameAs(buckets);
+    assertThat(names(buckets)).containsExactlyInAnyOrder(
+      "main.tf:aws_s3_bucket:good_0", "main.tf:aws_s3_bucket:good_1",
+      "main.tf:aws_s3_bucket:bad_0", "main.tf:aws_s3_bucket:website"
+    );
+    assertThatThrownBy(() -> buckets.add(buckets.get(0))).isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test public void filtered_detectors_not_shared() {
+    Configuration conf = parseTerraform(PATH);
+    IacContext ctx = context(PATH);
+    var all = detector(new String[0]);
+    var filtered = detector(new String[] {":website$"});
+
+    // in any order, each detector sees its own resources
+    assertThat(names(filtered.resources(conf, ctx, "aws_s3_bucket"))).doesNotContain("main.tf:aws_s3_bucket:website");
+    assertThat(names(all.resources(conf, ctx, "aws_s3_bucket"))).contains("main.tf:aws_s3_bucket:website");
+    assertThat(names(filtered.resources(conf, ctx, "aws_s3_bucket"))).doesNotContain("main.tf:aws_s3_bucket:website");
+  }
+
+  @Test public void index_kept_in_context() {
+    Configuration conf = parseTerraform(PATH);
+    IacContext ctx = context(PATH);
+    assertThat(TerraformIndex.of(ctx, conf)).isSameAs(TerraformIndex.of(ctx, conf));
+    // a new scan does not see the indexes of the previous one
+    assertThat(TerraformIndex.of(context(PATH), conf)).isNotSameAs(TerraformIndex.of(ctx, conf));
+  }
+
+  @Test public void referencing_uses_indexed_resources() {
+    Configuration conf = parseTerraform(PATH);
+    IacContext ctx = context(PATH);
+    var detector = new S3PublicACLRead();
+    var website = detector.resources(conf, ctx, "aws_s3_bucket").stream()
+      .filter(r -> r.qualifiedResource().endsWith(":website"))
+      .findFirst().orElseThrow();
+
+    var acls = detector.referencing(website, "bucket", conf, ctx, "aws_s3_bucket_acl");
+    assertThat(acls).hasSize(1);
+    assertThat(acls.get(0).qualifiedResource()).isEqualTo("main.tf:aws_s3_bucket_acl:website_acl");
+    assertThat(TerraformIndex.of(ctx, conf).types()).isEqualTo(2);
+  }
+
+  private static S3PublicACLRead detector(String[] resourcesToIgnore) {
+    var dc = load(PATH, IacFramework.terraform);
+    dc.setResourcesToIgnore(resourcesToIgnore);
+    var detector = new S3PublicACLRead();
+    detector.configure(dc, new IacScanConfig());
+    return detector;
+  }
+
+  private static List<String> names(List<Resource> resources) {
+    return resources.stream().map(Resource::qualifiedResource).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,106 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TemplateCacheTest {
+
+  @Test void key_depends_on_content_and_namespace(@TempDir Path tmp) throws IOException {
+    Path module = Files.createDirectories(tmp.resolve("module"));
+    Path main = Files.writeString(module.resolve("main.tf"), "resource \"aws_s3_bucket\" \"b\" {}\n");
+    Files.writeString(module.resolve("variables.tf"), "variable \"x\" {}\n");
+
+    String k1 = TemplateCache.key("terraform", List.of(module));
+    assertThat(k1).startsWith("sha256:").isEqualTo(TemplateCache.key("terraform", List.of(module)));
+    assertThat(TemplateCache.key("helm", List.of(module))).isNotEqualTo(k1);
+    assertThat(TemplateCache.key("terraform", List.of(main))).isNotEqualTo(k1);
+
+    Files.writeString(module.resolve("variables.tf"), "variable \"y\" {}\n");
+    assertThat(TemplateCache.key("terraform", List.of(module))).isNotEqualTo(k1);
+  }
+
+  @Test void parsed_once() {
+    var cache = new TemplateCache<List<String>>(10, null);
+    var parses = new AtomicInteger();
+    for(int i = 0; i < 3; i++) {
+      var t = cache.get("k", () -> { parses.incrementAndGet(); return List.of("parsed"); });
+      assertThat(t).containsExactly("parsed");
+    }
+    assertThat(parses).hasValue(1);
+    assertThat(cache.hits()).isEqualTo(2);
+  }
+
+  @Test void least_recently_used_evicted() {
+    var cache = new TemplateCache<String>(2, null);
+    cache.get("a", () -> "a");
+    cache.get("b", () -> "b");
+    cache.get("a", () -> "a");
+    cache.get("c", () -> "c");
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("b", () -> "b2")).isEqualTo("b2");
+  }
+
+  @Test void parse_errors_not_cached() {
+    var cache = new TemplateCache<String>(10, null);
+    assertThatThrownBy(() -> cache.get("k", () -> { throw new IllegalArgumentException("bad template"); }))
+      .hasMessage("bad template");
+    assertThat(cache.get("k", () -> "ok")).isEqualTo("ok");
+  }
+
+  @Test void serializable_templates_on_disk(@TempDir Path tmp) throws IOException {
+    var first = new TemplateCache<ArrayList<String>>(10, tmp);
+    first.get("sha256:abc", () -> new ArrayList<>(List.of("parsed")));
+    assertThat(tmp.resolve("abc.ser")).isRegularFile();
+
+    // another process
+    var second = new TemplateCache<ArrayList<String>>(10, tmp);
+    assertThat(second.get("sha256:abc", () -> { throw new AssertionError("not parsed again"); })).containsExactly("parsed");
+
+    // unreadable entries are parsed again
+    Files.writeString(tmp.resolve("abc.ser"), "garbage");
+    var third = new TemplateCache<ArrayList<String>>(10, tmp);
+    assertThat(third.get("sha256:abc", () -> new ArrayList<>(List.of("again")))).containsExactly("again");
+  }
+
+  /** A detector modifying its copy of a frozen template does not change what a second run sees */
+  @Test void frozen_templates_copied_per_run() {
+    var cache = new TemplateCache<byte[]>(10, null);
+    var parses = new AtomicInteger();
+    Supplier<ArrayList<String>> run = () -> TemplateCache.thaw(cache.get("k", () -> {
+      parses.incrementAndGet();
+      return TemplateCache.freeze(new ArrayList<>(List.of("aws_s3_bucket.a", "aws_s3_bucket.b")));
+    }));
+
+    ArrayList<String> first = run.get();
+    first.remove(0); // the detector in the first run modifies the template
+    first.add("aws_s3_bucket.added");
+
+    ArrayList<String> second = run.get();
+    assertThat(second).isNotSameAs(first).containsExactly("aws_s3_bucket.a", "aws_s3_bucket.b");
+    assertThat(parses).hasValue(1);
+    // not serializable: nothing to cache
+    assertThat(TemplateCache.freeze(new Object())).isNull();
+    assertThat(TemplateCache.freeze(new ArrayList<>(List.of(new Object())))).isNull();
+  }
+
+  @Test void not_serializable_kept_in_memory(@TempDir Path tmp) throws IOException {
+    var cache = new TemplateCache<Object>(10, tmp);
+    var template = new Object();
+    assertThat(cache.get("sha256:def", () -> template)).isSameAs(template);
+    assertThat(cache.get("sha256:def", Object::new)).isSameAs(template);
+    try(var files = Files.list(tmp)) {
+      assertThat(files).isEmpty();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TerraformGraphTest {
+  private static final String MAIN =
+    "variable \"env\" { default = \"dev\" }\n" +
+    "\n" +
+    "resource \"aws_s3_bucket\" \"logs\" {\n" +
+    "  bucket = \"logs-${var.env}\" # not a { brace\n" +
+    "}\n" +
+    "\n" +
+    "resource \"aws_s3_bucket_acl\" \"logs\" {\n" +
+    "  bucket = aws_s3_bucket.logs.id\n" +
+    "  acl    = \"private\"\n" +
+    "}\n" +
+    "\n" +
+    "resource \"aws_s3_bucket\" \"site\" {\n" +
+    "  bucket = \"site\"\n" +
+    "  policy = <<EOF\n" +
+    "{ \"unbalanced\": {\n" +
+    "EOF\n" +
+    "}\n" +
+    "\n" +
+    "resource \"aws_s3_bucket_acl\" \"site\" {\n" +
+    "  bucket = aws_s3_bucket.site.id\n" +
+    "  acl    = \"public-read\"\n" +
+    "}\n" +
+    "\n" +
+    "resource \"aws_lb\" \"lb\" {\n" +
+    "  name = \"lb\"\n" +
+    "}\n";
+
+  @Test void resources_and_references() {
+    var g = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    assertThat(g.resources()).containsExactly(
+      "aws_s3_bucket.logs", "aws_s3_bucket_acl.logs", "aws_s3_bucket.site", "aws_s3_bucket_acl.site", "aws_lb.lb"
+    );
+    assertThat(g.node("aws_s3_bucket_acl.site").getReferences()).containsExactly("aws_s3_bucket.site");
+    assertThat(g.node("aws_s3_bucket.logs").getReferences()).isEmpty();
+    assertThat(g.node("aws_lb.lb").getFile()).isEqualTo("main.tf");
+    assertThat(g.node("aws_s3_bucket.logs").getLine()).isEqualTo(3);
+    assertThat(g.node("aws_lb.lb").getLine()).isEqualTo(24);
+    assertThat(g.qualifiedResource("aws_lb.lb")).isEqualTo("main.tf:aws_lb:lb");
+  }
+
+  @Test void nothing_affected_when_unchanged() {
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    var v2 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    assertThat(v2.affected(v1)).isEmpty();
+    assertThat(v2.affected(null)).hasSize(5);
+  }
+
+  @Test void change_propagates_through_references() {
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    var v2 = TerraformGraph.parse(Map.of("main.tf", MAIN.replace("\"public-read\"", "\"private\"")));
+    // the acl changed, so its bucket may change too; the other buckets and acls did not
+    assertThat(v2.affected(v1)).containsExactlyInAnyOrder("aws_s3_bucket_acl.site", "aws_s3_bucket.site");
+  }
+
+  @Test void removed_resource_affects_its_neighbours() {
+    String removed = MAIN.replaceAll("(?s)resource \"aws_s3_bucket_acl\" \"logs\" \\{.*?\\n}\\n", "");
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    var v2 = TerraformGraph.parse(Map.of("main.tf", removed));
+    assertThat(v2.resources()).doesNotContain("aws_s3_bucket_acl.logs");
+    // the bucket of the removed acl, and the resources below it, now at other lines
+    assertThat(v2.affected(v1)).containsExactlyInAnyOrder(
+      "aws_s3_bucket.logs", "aws_s3_bucket.site", "aws_s3_bucket_acl.site", "aws_lb.lb"
+    );
+  }
+
+  @Test void globals_change_affects_everything() {
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    var v2 = TerraformGraph.parse(Map.of("main.tf", MAIN.replace("\"dev\"", "\"prod\"")));
+    assertThat(v2.sameGlobals(v1)).isFalse();
+    assertThat(v2.affected(v1)).isEqualTo(v2.resources());
+  }
+
+  @Test void files_moved() {
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    int split = MAIN.indexOf("resource \"aws_lb\"");
+    var v2 = TerraformGraph.parse(Map.of("main.tf", MAIN.substring(0, split), "lb.tf", MAIN.substring(split)));
+    assertThat(v2.node("aws_lb.lb").getFile()).isEqualTo("lb.tf");
+    // flaws on the moved resource have the old file and lines
+    assertThat(v2.affected(v1)).containsExactly("aws_lb.lb");
+  }
+
+  @Test void local_modules() {
+    String modules = MAIN +
+      "module \"buckets\" {\n  source = \"./buckets\"\n  env    = var.env\n}\n" +
+      "module \"vpc\" {\n  source = \"terraform-aws-modules/vpc/aws\"\n}\n";
+    assertThat(TerraformGraph.parse(Map.of("main.tf", modules)).localModules()).containsExactly("./buckets");
+    assertThat(TerraformGraph.parse(Map.of("main.tf", MAIN)).localModules()).isEmpty();
+  }
+
+  @Test void lines_moved() {
+    var v1 = TerraformGraph.parse(Map.of("main.tf", MAIN));
+    var v2 = TerraformGraph.parse(Map.of("main.tf", MAIN.replace("resource \"aws_lb\"", "\n\nresource \"aws_lb\"")));
+    assertThat(v2.node("aws_lb.lb").getLine()).isEqualTo(26);
+    assertThat(v2.affected(v1)).containsExactly("aws_lb.lb");
+  }
+}
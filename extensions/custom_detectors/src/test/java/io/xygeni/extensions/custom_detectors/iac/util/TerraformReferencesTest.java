@@ -0,0 +1,36 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import org.junit.jupiter.api.Test;
+
+import static io.xygeni.extensions.custom_detectors.iac.util.TerraformReferences.key;
+import static io.xygeni.extensions.custom_detectors.iac.util.TerraformReferences.names;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TerraformReferencesTest {
+  private static final String BUCKET = "aws_s3_bucket";
+
+  @Test void references() {
+    assertThat(names("aws_s3_bucket.good_1.id", BUCKET)).containsExactly("good_1");
+    assertThat(names("${aws_s3_bucket.logs.id}", BUCKET)).containsExactly("logs");
+    assertThat(names("\"${aws_s3_bucket.b[0].id}-${aws_s3_bucket.c[\"k\"].arn}\"", BUCKET)).containsExactly("b", "c");
+    assertThat(names("aws_s3_bucket.my-bucket", BUCKET)).containsExactly("my-bucket");
+  }
+
+  @Test void not_references() {
+    assertThat(names("data.aws_s3_bucket.existing.id", BUCKET)).isEmpty();
+    assertThat(names("module.storage.aws_s3_bucket.id", BUCKET)).isEmpty();
+    // other resource types with the same prefix
+    assertThat(names("aws_s3_bucket_acl.b.id", BUCKET)).isEmpty();
+    assertThat(names("my_aws_s3_bucket.b.id", BUCKET)).isEmpty();
+    assertThat(names("var.bucket", BUCKET)).isEmpty();
+    assertThat(names("good_1", BUCKET)).isEmpty();
+    assertThat(names(null, BUCKET)).isEmpty();
+  }
+
+  @Test void keys() {
+    assertThat(key("main.tf:aws_s3_bucket:good_1")).isEqualTo("aws_s3_bucket.good_1");
+    assertThat(key("C:/tf/main.tf:aws_s3_bucket:good_1")).isEqualTo("aws_s3_bucket.good_1");
+    assertThat(key("aws_s3_bucket:good_1")).isEqualTo("aws_s3_bucket.good_1");
+    assertThat(key("nothing")).isNull();
+  }
+}
@@ -0,0 +1,50 @@
+package io.xygeni.extensions.custom_detectors.iac.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class XypolPoliciesTest {
+  private static final String ALB =
+    "ON lb FROM resource_type IN ['aws_lb', 'aws_alb']\n" +
+    "WHERE\n" +
+    "  lb.internal = true OR \n" +
+    "  lb.load_balancer_type IN ['network', 'gateway'] OR\n" +
+    "  lb CONNECTED_TO acl FROM resource_type IN ['aws_wafv2_web_acl_association', 'aws_wafregional_web_acl_association'];\n";
+
+  @Test void normalize_removes_comments_and_whitespace() {
+    String policy =
+      "# Public facing ALB not protected by WAF\n" +
+      "ON lb   FROM 'aws_lb' // the load balancers\n" +
+      "WHERE /* cheap check first */ lb.internal = true;\n";
+    assertThat(XypolPolicies.normalize(policy)).isEqualTo("ON lb FROM 'aws_lb' WHERE lb.internal = true;");
+  }
+
+  @Test void normalize_keeps_string_literals() {
+    String policy = "ON r FROM 'a  b # not a comment' WHERE r.name MATCHES \"x // \\\" y\";";
+    assertThat(XypolPolicies.normalize(policy)).isEqualTo(policy);
+    assertThat(XypolPolicies.key("ON r FROM 'a  b'")).isNotEqualTo(XypolPolicies.key("ON r FROM 'a b'"));
+  }
+
+  @Test void same_key_for_reformatted_policy() {
+    String reformatted = "  # reformatted\n" + ALB.replace("\n", "\n\n    ").replace(" OR", "  OR");
+    assertThat(XypolPolicies.key(reformatted)).isEqualTo(XypolPolicies.key(ALB)).startsWith("sha256:");
+    assertThat(XypolPolicies.key(ALB.replace("true", "false"))).isNotEqualTo(XypolPolicies.key(ALB));
+  }
+
+  @Test void compile_is_cached() {
+    var policy = XypolPolicies.compile(ALB);
+    long hits = XypolPolicies.stats().hitCount();
+
+    assertThat(XypolPolicies.compile(ALB)).isSameAs(policy);
+    assertThat(XypolPolicies.compile("// same policy\n" + ALB)).isSameAs(policy);
+    assertThat(XypolPolicies.stats().hitCount() - hits).isEqualTo(2);
+  }
+
+  @Test void parse_errors_are_not_cached() {
+    long size = XypolPolicies.size();
+    assertThatThrownBy(() -> XypolPolicies.compile("NOT A POLICY")).isInstanceOf(RuntimeException.class);
+    assertThat(XypolPolicies.size()).isEqualTo(size);
+  }
+}
@@ -0,0 +1,117 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RateLimitScheduler;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RepositoryBatch;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** The providers used by {@link UnreviewedBranch}, on a synthetic organization served by {@link MockScmServer} */
+class BranchesProvidersTest {
+  private final OkHttpClient client = new OkHttpClient();
+
+  private static Map<String, BranchProtectionInfo> github(MockScmServer server, OkHttpClient client, String repo) {
+    var provider = new GithubGraphqlBranchesProvider(null, MockScmServer.RELEASE_PATTERN, server.githubGraphqlUrl(), "t0ken", client);
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    provider.fetch(MockScmServer.ORG, repo, result);
+    return result;
+  }
+
+  private static Map<String, BranchProtectionInfo> gitlab(MockScmServer server, OkHttpClient client, String repo) {
+    var provider = new GitlabRestBranchesProvider(null, MockScmServer.RELEASE_PATTERN, server.gitlabApiUrl(), "t0ken", client);
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    provider.fetch(MockScmServer.ORG + "/" + repo, result);
+    return result;
+  }
+
+  @Test void github_graphql() throws Exception {
+    try(var server = new MockScmServer().repos(6).branches(500).releases(3).start()) {
+      for(int i = 0; i < 6; i++) {
+        String repo = MockScmServer.repo(i);
+        var found = github(server, client, repo);
+        assertThat(found).usingRecursiveComparison().isEqualTo(server.expected(i));
+        // a single query, whatever the number of branches
+        assertThat(server.getRequests(repo)).isEqualTo(1);
+      }
+    }
+  }
+
+  @Test void github_graphql_many_release_branches() throws Exception {
+    try(var server = new MockScmServer().repos(1).branches(400).releases(250).start()) {
+      assertThat(github(server, client, MockScmServer.repo(0))).hasSize(251);
+      assertThat(server.getRequests(MockScmServer.repo(0))).isEqualTo(3); // 100 per page
+    }
+  }
+
+  @Test void gitlab_rest() throws Exception {
+    try(var server = new MockScmServer().repos(6).branches(500).releases(3).start()) {
+      for(int i = 0; i < 6; i++) {
+        String repo = MockScmServer.repo(i);
+        var found = gitlab(server, client, repo);
+        var expected = server.expected(i);
+        assertThat(found).containsOnlyKeys(expected.keySet());
+        expected.forEach((branch, pi) -> {
+          assertThat(found.get(branch).isProtected).as(repo + " " + branch).isEqualTo(pi.isProtected);
+          assertThat(found.get(branch).minReviews).as(repo + " " + branch).isEqualTo(pi.minReviews);
+        });
+        // project, default branch, one page of release branches, protected branches
+        assertThat(server.getRequests(repo)).isLessThanOrEqualTo(4);
+      }
+    }
+  }
+
+  @Test void org_scan_overlaps_requests() throws Exception {
+    try(var server = new MockScmServer().repos(40).branches(50).latency(50).start()) {
+      var results = new RepositoryBatch(8).fetch(server.repositories(), repo -> github(server, client, repo));
+
+      assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+      assertThat(server.getRequests()).isEqualTo(40); // a query per repository
+      // the latency of several repositories overlaps, up to the batch concurrency
+      assertThat(server.getMaxConcurrentRequests()).isBetween(2, 8);
+    }
+  }
+
+  @Test void rate_limited_github_graphql_scan_completes() throws Exception {
+    var scheduler = new RateLimitScheduler();
+    scheduler.configure(0, 10);
+    var paced = new OkHttpClient.Builder().addInterceptor(scheduler).build();
+
+    try(var server = new MockScmServer().repos(8).branches(20).rateLimit(5, 1000).start()) {
+      // another client with the same token used the quota of the window: the scheduler does not know
+      for(int i = 0; i < 5; i++) github(server, client, MockScmServer.repo(i));
+      var results = new RepositoryBatch(4).fetch(server.repositories(), repo -> github(server, paced, repo));
+
+      assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+      for(int i = 0; i < 8; i++) {
+        assertThat(results.get(i).getValue()).usingRecursiveComparison().isEqualTo(server.expected(i));
+      }
+      // the queries answered with RATE_LIMITED are retried after the reset
+      assertThat(server.getRejected()).isPositive();
+      assertThat(scheduler.getRetries()).isEqualTo(server.getRejected());
+      assertThat(scheduler.getPauses()).isPositive();
+    }
+  }
+
+  @Test void rate_limited_org_scan_completes() throws Exception {
+    var scheduler = new RateLimitScheduler();
+    scheduler.configure(0, 10);
+    var paced = new OkHttpClient.Builder().addInterceptor(scheduler).build();
+
+    try(var server = new MockScmServer().repos(12).branches(20).rateLimit(20, 1000).start()) {
+      var results = new RepositoryBatch(4).fetch(server.repositories(), repo -> gitlab(server, paced, repo));
+
+      assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+      for(int i = 0; i < 12; i++) {
+        assertThat(results.get(i).getValue()).containsOnlyKeys(server.expected(i).keySet());
+      }
+      // about 4 requests per repository: at least two rate limit windows
+      assertThat(scheduler.getPauses()).isPositive();
+      assertThat(scheduler.getWaitMillis()).isPositive();
+    }
+  }
+}
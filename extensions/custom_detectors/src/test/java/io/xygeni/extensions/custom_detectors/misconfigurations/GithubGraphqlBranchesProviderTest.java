@@ -0,0 +1,154 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RateLimitScheduler;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GithubGraphqlBranchesProviderTest {
+  private static final String PROTECTED_2 =
+    "{\"isAdminEnforced\": true, \"requiresApprovingReviews\": true, \"requiredApprovingReviewCount\": 2}";
+  private static final String NO_REVIEWS =
+    "{\"isAdminEnforced\": false, \"requiresApprovingReviews\": false, \"requiredApprovingReviewCount\": 1}";
+
+  private MockWebServer server;
+
+  @BeforeEach void start() throws Exception {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @AfterEach void stop() throws Exception {
+    server.shutdown();
+  }
+
+  private GithubGraphqlBranchesProvider provider() {
+    return provider("t0ken");
+  }
+
+  private GithubGraphqlBranchesProvider provider(String token) {
+    return new GithubGraphqlBranchesProvider(null, "^release/.+$", server.url("/graphql").toString(), token, new OkHttpClient());
+  }
+
+  private static String page(String defaultBranch, boolean hasNext, String cursor, String... refs) {
+    return page(true, defaultBranch, hasNext, cursor, refs);
+  }
+
+  private static String page(boolean admin, String defaultBranch, boolean hasNext, String cursor, String... refs) {
+    return "{\"data\": {\"repository\": {\"viewerCanAdminister\": " + admin + ", " +
+      (defaultBranch == null ? "" : "\"defaultBranchRef\": " + defaultBranch + ", ") +
+      "\"refs\": {\"pageInfo\": {\"hasNextPage\": " + hasNext + ", \"endCursor\": " + (cursor == null ? "null" : "\"" + cursor + "\"") + "}, " +
+      "\"nodes\": [" + String.join(", ", refs) + "]}}}}";
+  }
+
+  private static String ref(String name, String rule) {
+    return "{\"name\": \"" + name + "\", \"branchProtectionRule\": " + rule + "}";
+  }
+
+  @Test void single_request() throws Exception {
+    server.enqueue(new MockResponse().setBody(page(
+      ref("main", PROTECTED_2), false, null,
+      ref("release/1.0", NO_REVIEWS), ref("release/2.0", "null"), ref("old-release/1.0", "null")
+    )));
+
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    assertThat(provider().fetch("acme", "app", result)).isTrue();
+
+    assertThat(result).containsOnlyKeys("main", "release/1.0", "release/2.0");
+    assertThat(result.get("main")).satisfies(p -> {
+      assertThat(p.isProtected).isTrue();
+      assertThat(p.minReviews).isEqualTo(2);
+      assertThat(p.enforceAdmins).isTrue();
+    });
+    assertThat(result.get("release/1.0").isProtected).isTrue();
+    assertThat(result.get("release/1.0").minReviews).isZero();
+    assertThat(result.get("release/2.0").isProtected).isFalse();
+
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    var req = server.takeRequest();
+    assertThat(req.getHeader("Authorization")).isEqualTo("Bearer t0ken");
+    var variables = new JSONObject(req.getBody().readUtf8()).getJSONObject("variables");
+    assertThat(variables.getString("owner")).isEqualTo("acme");
+    assertThat(variables.getString("name")).isEqualTo("app");
+    // only the release branches are asked for
+    assertThat(variables.getString("prefix")).isEqualTo("release/");
+  }
+
+  @Test void paginates_release_branches() throws Exception {
+    server.enqueue(new MockResponse().setBody(page(ref("main", "null"), true, "c1", ref("release/1", "null"))));
+    server.enqueue(new MockResponse().setBody(page(ref("main", "null"), false, null, ref("release/2", "null"))));
+
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    provider().fetch("acme", "app", result);
+
+    assertThat(result).containsOnlyKeys("main", "release/1", "release/2");
+    server.takeRequest();
+    var second = new JSONObject(server.takeRequest().getBody().readUtf8()).getJSONObject("variables");
+    assertThat(second.getString("cursor")).isEqualTo("c1");
+  }
+
+  @Test void rules_not_visible() {
+    // without admin access, a null rule may be a rule not visible: unknown, the REST api is used instead
+    server.enqueue(new MockResponse().setBody(page(false, ref("main", PROTECTED_2), false, null, ref("release/1.0", "null"))));
+    assertThat(provider().fetch("acme", "app", new TreeMap<>())).isFalse();
+
+    // unless every target branch has a rule
+    server.enqueue(new MockResponse().setBody(page(false, ref("main", PROTECTED_2), false, null, ref("release/1.0", NO_REVIEWS))));
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    assertThat(provider().fetch("acme", "app", result)).isTrue();
+    assertThat(result).containsOnlyKeys("main", "release/1.0");
+  }
+
+  @Test void token_required() {
+    assertThatThrownBy(() -> provider(null).fetch("acme", "app", new TreeMap<>()))
+      .isInstanceOf(IllegalStateException.class);
+    assertThat(server.getRequestCount()).isZero();
+  }
+
+  @Test void repository_not_found() {
+    server.enqueue(new MockResponse().setBody(
+      "{\"data\": {\"repository\": null}, \"errors\": [{\"type\": \"NOT_FOUND\", \"message\": \"Could not resolve\"}]}"
+    ));
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    assertThat(provider().fetch("acme", "gone", result)).isTrue();
+    assertThat(result).isEmpty();
+  }
+
+  @Test void errors() {
+    server.enqueue(new MockResponse().setResponseCode(401).setBody("{\"message\": \"Bad credentials\"}"));
+    assertThatThrownBy(() -> provider().fetch("acme", "app", new TreeMap<>()))
+      .isInstanceOf(UncheckedIOException.class).hasMessageContaining("401");
+
+    // without the scheduler, a rate limit is an error
+    server.enqueue(new MockResponse().setBody("{\"errors\": [{\"type\": \"RATE_LIMITED\", \"message\": \"API rate limit exceeded\"}]}"));
+    assertThatThrownBy(() -> provider().fetch("acme", "app", new TreeMap<>()))
+      .isInstanceOf(UncheckedIOException.class).hasMessageContaining("rate limit");
+  }
+
+  @Test void rate_limited_retried() {
+    var scheduler = new RateLimitScheduler();
+    var client = new OkHttpClient.Builder().addInterceptor(scheduler).build();
+    var provider = new GithubGraphqlBranchesProvider(null, "^release/.+$", server.url("/graphql").toString(), "t0ken", client);
+    server.enqueue(new MockResponse().setBody("{\"errors\": [{\"type\": \"RATE_LIMITED\", \"message\": \"API rate limit exceeded\"}]}")
+      .setHeader("X-RateLimit-Remaining", "0").setHeader("X-RateLimit-Reset", (System.currentTimeMillis() + 1000) / 1000));
+    server.enqueue(new MockResponse().setBody(page(ref("main", PROTECTED_2), false, null)));
+
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    provider.fetch("acme", "app", result);
+    assertThat(result).containsOnlyKeys("main");
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(scheduler.getRetries()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,109 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitlabRestBranchesProviderTest {
+  private static final String PROJECT = "/api/v4/projects/acme%2Fapps%2Fweb";
+
+  private MockWebServer server;
+  private final List<String> paths = new CopyOnWriteArrayList<>();
+  private String protectedBranches = "[]";
+
+  @BeforeEach void start() throws Exception {
+    server = new MockWebServer();
+    server.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest req) {
+        String path = req.getPath();
+        paths.add(path);
+        if(path.equals(PROJECT)) return json("{\"id\": 7, \"default_branch\": \"main\"}");
+        if(path.equals(PROJECT + "/repository/branches/main")) return json("{\"name\": \"main\", \"protected\": true}");
+        if(path.startsWith(PROJECT + "/repository/branches?")) {
+          // the server returns only the names starting with 'release/'
+          if(!"^release/".equals(req.getRequestUrl().queryParameter("search"))) return new MockResponse().setResponseCode(400);
+          if(req.getRequestUrl().queryParameter("page") == null) {
+            return json("[{\"name\": \"release/1.0\", \"protected\": true}, {\"name\": \"release/\", \"protected\": false}]")
+              .setHeader("X-Next-Page", "2");
+          }
+          return json("[{\"name\": \"release/2.0\", \"protected\": false}]").setHeader("X-Next-Page", "");
+        }
+        if(path.startsWith(PROJECT + "/protected_branches")) return json(protectedBranches);
+        return new MockResponse().setResponseCode(404).setBody("{\"message\": \"404 Project Not Found\"}");
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach void stop() throws Exception {
+    server.shutdown();
+  }
+
+  private static MockResponse json(String body) {
+    return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+  }
+
+  private Map<String, BranchProtectionInfo> fetch(String project) {
+    var provider = new GitlabRestBranchesProvider(null, "^release/.+$", server.url("/api/v4/").toString(), "t0ken", new OkHttpClient());
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    provider.fetch(project, result);
+    return result;
+  }
+
+  @Test void filtered_and_paginated() throws Exception {
+    protectedBranches = "[{\"name\": \"main\", \"approvals_required\": 2}," +
+      " {\"name\": \"release/*\", \"approvals_required\": 1}]";
+
+    var result = fetch("acme/apps/web");
+
+    assertThat(result).containsOnlyKeys("main", "release/1.0", "release/2.0");
+    assertThat(result.get("main").isProtected).isTrue();
+    assertThat(result.get("main").minReviews).isEqualTo(2);
+    assertThat(result.get("release/1.0").minReviews).isEqualTo(1);
+    assertThat(result.get("release/2.0").isProtected).isFalse();
+
+    assertThat(paths).hasSize(5); // project, default branch, 2 pages of branches, protected branches
+    assertThat(paths).noneMatch(p -> p.contains("/approval_rules")); // not in the free tier
+    assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Bearer t0ken");
+  }
+
+  @Test void project_not_found() {
+    assertThat(fetch("acme/gone")).isEmpty();
+    assertThat(paths).hasSize(1);
+  }
+
+  @Test void approvals_required() {
+    var protectedBranches = List.of(
+      new JSONObject("{\"name\": \"main\", \"approvals_required\": 3}"),
+      new JSONObject("{\"name\": \"hotfix/*\", \"approvals_required\": 4}"),
+      new JSONObject("{\"name\": \"*\", \"approvals_required\": 1}")
+    );
+    assertThat(GitlabRestBranchesProvider.approvalsRequired(protectedBranches, "main")).isEqualTo(3);
+    assertThat(GitlabRestBranchesProvider.approvalsRequired(protectedBranches, "hotfix/1")).isEqualTo(4);
+    assertThat(GitlabRestBranchesProvider.approvalsRequired(protectedBranches, "other")).isEqualTo(1);
+    assertThat(GitlabRestBranchesProvider.approvalsRequired(List.of(), "main")).isZero();
+  }
+
+  @Test void api_url() {
+    assertThat(GitlabRestBranchesProvider.apiUrl(null)).isEqualTo(GitlabRestBranchesProvider.DEFAULT_URL);
+    assertThat(GitlabRestBranchesProvider.apiUrl("https://gitlab.acme.com/apps/web.git", "apps", "web"))
+      .isEqualTo("https://gitlab.acme.com/api/v4");
+    assertThat(GitlabRestBranchesProvider.apiUrl("https://acme.com:8443/gitlab/apps/web", "apps", "web"))
+      .isEqualTo("https://acme.com:8443/gitlab/api/v4");
+    assertThat(GitlabRestBranchesProvider.apiUrl(null, "apps", "web")).isEqualTo(GitlabRestBranchesProvider.DEFAULT_URL);
+  }
+}
@@ -0,0 +1,302 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * MockScmServer - Local stand-in for the GitHub GraphQL api and the GitLab REST api, serving a synthetic organization,
+ * for testing and benchmarking the branches providers without reaching github.com or gitlab.com.
+ * <p>
+ * The organization {@value #ORG} has {@code repos} repositories named {@code repo-0000}, {@code repo-0001}...
+ * Each one has a {@code main} default branch, {@code releases} release branches ({@code release/N.0}) and feature
+ * branches up to {@code branches}. Protections vary with the repository and branch number, see {@link #expected(int)}.
+ * <p>
+ * Every response is delayed by {@code latency}, and the server records the most requests it served at the same time.
+ * With a rate limit, the server allows {@code limit} requests per window (for both apis together), and answers
+ * as the real apis when exceeded (GitHub GraphQL: 200 with a {@code RATE_LIMITED} error and
+ * {@code X-RateLimit-Remaining: 0}, GitLab: 429 with {@code Retry-After}). Requests are counted per repository.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+public class MockScmServer implements Closeable {
+  public static final String ORG = "acme";
+  public static final String RELEASE_PATTERN = "^release/.+$";
+
+  private static final Pattern GITLAB = Pattern.compile("^/api/v4/projects/([^/?]+)(/repository/branches(?:/([^?]+))?|/protected_branches)?(?:\\?.*)?$");
+
+  private final MockWebServer server = new MockWebServer();
+  private int repos = 10;
+  private int branches = 20;
+  private int releases = 3;
+  private long latencyMillis;
+  private int limit = Integer.MAX_VALUE;
+  private long windowMillis = 60_000;
+
+  private final Map<String, AtomicInteger> requestsByRepo = new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private long windowStart;
+  private int used;
+
+  /** Number of repositories in the organization */
+  public MockScmServer repos(int repos) { this.repos = repos; return this; }
+  /** Branches per repository, including main and the release branches */
+  public MockScmServer branches(int branches) { this.branches = branches; return this; }
+  /** Release branches per repository */
+  public MockScmServer releases(int releases) { this.releases = releases; return this; }
+  /** Delay for every response */
+  public MockScmServer latency(long millis) { this.latencyMillis = millis; return this; }
+  /** Requests allowed per window, for both apis together */
+  public MockScmServer rateLimit(int limit, long windowMillis) { this.limit = limit; this.windowMillis = windowMillis; return this; }
+
+  public MockScmServer start() {
+    server.setDispatcher(new Dispatcher() {
+      @Override public MockResponse dispatch(RecordedRequest req) throws InterruptedException {
+        // each connection has its own thread: the requests waiting here are those being served at the same time
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+          var res = MockScmServer.this.dispatch(req);
+          if(latencyMillis > 0) Thread.sleep(latencyMillis);
+          return res;
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      }
+    });
+    try {
+      server.start();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  @Override public void close() throws IOException {
+    server.shutdown();
+  }
+
+  /** GraphQL endpoint, for {@link GithubGraphqlBranchesProvider} */
+  public String githubGraphqlUrl() { return server.url("/graphql").toString(); }
+
+  /** REST api root, for {@link GitlabRestBranchesProvider} */
+  public String gitlabApiUrl() { return server.url("/api/v4").toString(); }
+
+  public List<String> repositories() {
+    var names = new ArrayList<String>(repos);
+    for(int i = 0; i < repos; i++) names.add(repo(i));
+    return names;
+  }
+
+  public static String repo(int i) { return String.format("repo-%04d", i); }
+
+  public long getRequests() { return requests.get(); }
+  public long getRejected() { return rejected.get(); }
+  /** The most requests served at the same time */
+  public int getMaxConcurrentRequests() { return maxInFlight.get(); }
+  public int getRequests(String repo) { var n = requestsByRepo.get(repo); return n == null ? 0 : n.get(); }
+
+  // -- the synthetic organization
+
+  private static boolean isProtected(int repo, int release) {
+    // release -1 is main
+    return release < 0 ? repo % 4 != 0 : (repo + release) % 2 == 0;
+  }
+
+  private static int reviews(int repo, int release) {
+    return release < 0 ? repo % 3 : 1;
+  }
+
+  private static boolean enforceAdmins(int repo) {
+    return repo % 2 == 0;
+  }
+
+  private List<String> branchNames() {
+    var names = new ArrayList<String>(branches);
+    names.add("main");
+    for(int r = 0; r < releases; r++) names.add("release/" + r + ".0");
+    for(int f = 0; names.size() < branches; f++) names.add("feature/" + f);
+    return names;
+  }
+
+  private static int release(String branch) {
+    return branch.startsWith("release/") ? Integer.parseInt(branch.substring(8, branch.indexOf('.'))) : -1;
+  }
+
+  /** The protections a provider should find for the repository (enforceAdmins as given by GitHub) */
+  public Map<String, BranchProtectionInfo> expected(int repo) {
+    Map<String, BranchProtectionInfo> result = new TreeMap<>();
+    for(String b : branchNames()) {
+      int r = release(b);
+      if(!b.equals("main") && r < 0) continue;
+      var pi = new BranchProtectionInfo();
+      if(isProtected(repo, r)) {
+        pi.isProtected = true;
+        pi.minReviews = reviews(repo, r);
+        pi.enforceAdmins = enforceAdmins(repo);
+      }
+      result.put(b, pi);
+    }
+    return result;
+  }
+
+  // -- the apis
+
+  private MockResponse dispatch(RecordedRequest req) {
+    requests.incrementAndGet();
+    String path = req.getPath();
+    boolean github = path.startsWith("/graphql");
+
+    MockResponse limited = rateLimit(github);
+    if(limited != null) return limited;
+
+    if(github && "POST".equals(req.getMethod())) return github(new JSONObject(req.getBody().readUtf8()));
+    Matcher m = GITLAB.matcher(path);
+    if(m.matches()) return gitlab(req.getRequestUrl(), URLDecoder.decode(m.group(1), StandardCharsets.UTF_8), m.group(2), m.group(3));
+    return json(404, new JSONObject().put("message", "404 Not Found"));
+  }
+
+  private synchronized MockResponse rateLimit(boolean github) {
+    long now = System.currentTimeMillis();
+    if(now - windowStart >= windowMillis) {
+      windowStart = now;
+      used = 0;
+    }
+    long resetSeconds = TimeUnit.MILLISECONDS.toSeconds(windowStart + windowMillis + 999);
+    if(used >= limit) {
+      rejected.incrementAndGet();
+      long retryAfter = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(windowStart + windowMillis - now + 999));
+      return github
+        ? json(200, new JSONObject().put("errors", new JSONArray().put(
+              new JSONObject().put("type", "RATE_LIMITED").put("message", "API rate limit exceeded for user ID 1."))))
+            .setHeader("X-RateLimit-Remaining", 0).setHeader("X-RateLimit-Reset", resetSeconds)
+        : json(429, new JSONObject().put("message", "Retry later"))
+            .setHeader("RateLimit-Remaining", 0).setHeader("RateLimit-Reset", resetSeconds).setHeader("Retry-After", retryAfter);
+    }
+    used++;
+    return null;
+  }
+
+  private int repoIndex(String name) {
+    if(!name.startsWith("repo-")) return -1;
+    requestsByRepo.computeIfAbsent(name, k -> new AtomicInteger()).incrementAndGet();
+    int i = Integer.parseInt(name.substring(5));
+    return i < repos ? i : -1;
+  }
+
+  private MockResponse github(JSONObject body) {
+    JSONObject v = body.getJSONObject("variables");
+    int repo = ORG.equals(v.getString("owner")) ? repoIndex(v.getString("name")) : -1;
+    if(repo < 0) {
+      return json(200, new JSONObject().put("data", new JSONObject().put("repository", JSONObject.NULL))
+        .put("errors", new JSONArray().put(new JSONObject().put("type", "NOT_FOUND").put("message", "Could not resolve to a Repository"))));
+    }
+    String query = v.optString("prefix", "");
+    int first = v.getInt("first");
+    int offset = v.isNull("cursor") ? 0 : Integer.parseInt(v.getString("cursor"));
+
+    List<String> matching = new ArrayList<>();
+    for(String b : branchNames()) if(b.contains(query)) matching.add(b);
+    var nodes = new JSONArray();
+    for(int i = offset; i < Math.min(matching.size(), offset + first); i++) nodes.put(githubRef(repo, matching.get(i)));
+    boolean hasNext = offset + first < matching.size();
+
+    var repository = new JSONObject()
+      .put("viewerCanAdminister", true)
+      .put("defaultBranchRef", githubRef(repo, "main"))
+      .put("refs", new JSONObject()
+        .put("pageInfo", new JSONObject().put("hasNextPage", hasNext).put("endCursor", hasNext ? String.valueOf(offset + first) : JSONObject.NULL))
+        .put("nodes", nodes));
+    return json(200, new JSONObject().put("data", new JSONObject().put("repository", repository)))
+      .setHeader("X-RateLimit-Remaining", remaining()).setHeader("X-RateLimit-Reset", reset());
+  }
+
+  private JSONObject githubRef(int repo, String branch) {
+    int r = release(branch);
+    Object rule = JSONObject.NULL;
+    if((branch.equals("main") || r >= 0) && isProtected(repo, r)) {
+      rule = new JSONObject().put("isAdminEnforced", enforceAdmins(repo))
+        .put("requiresApprovingReviews", reviews(repo, r) > 0).put("requiredApprovingReviewCount", reviews(repo, r));
+    }
+    return new JSONObject().put("name", branch).put("branchProtectionRule", rule);
+  }
+
+  private MockResponse gitlab(HttpUrl url, String project, String endpoint, String branch) {
+    int repo = project.startsWith(ORG + "/") ? repoIndex(project.substring(ORG.length() + 1)) : -1;
+    if(repo < 0) return json(404, new JSONObject().put("message", "404 Project Not Found"));
+
+    MockResponse res;
+    if(endpoint == null) {
+      res = json(200, new JSONObject().put("id", repo + 1).put("path_with_namespace", project).put("default_branch", "main"));
+    } else if(branch != null) {
+      String name = URLDecoder.decode(branch, StandardCharsets.UTF_8);
+      res = branchNames().contains(name)
+        ? json(200, gitlabBranch(repo, name))
+        : json(404, new JSONObject().put("message", "404 Branch Not Found"));
+    } else if(endpoint.equals("/protected_branches")) {
+      var items = new JSONArray();
+      for(String b : branchNames()) {
+        int r = release(b);
+        if((b.equals("main") || r >= 0) && isProtected(repo, r)) {
+          items.put(new JSONObject().put("name", b).put("approvals_required", reviews(repo, r)));
+        }
+      }
+      res = json(200, items);
+    } else {
+      String search = url.queryParameter("search");
+      int perPage = Integer.parseInt(url.queryParameter("per_page") != null ? url.queryParameter("per_page") : "20");
+      int page = Integer.parseInt(url.queryParameter("page") != null ? url.queryParameter("page") : "1");
+      List<String> matching = new ArrayList<>();
+      for(String b : branchNames()) {
+        if(search == null || (search.startsWith("^") ? b.startsWith(search.substring(1)) : b.contains(search))) matching.add(b);
+      }
+      var items = new JSONArray();
+      int from = (page - 1) * perPage;
+      for(int i = from; i < Math.min(matching.size(), from + perPage); i++) items.put(gitlabBranch(repo, matching.get(i)));
+      res = json(200, items).setHeader("X-Next-Page", from + perPage < matching.size() ? String.valueOf(page + 1) : "");
+    }
+    return res.setHeader("RateLimit-Remaining", remaining()).setHeader("RateLimit-Reset", reset());
+  }
+
+  private JSONObject gitlabBranch(int repo, String branch) {
+    int r = release(branch);
+    boolean prot = (branch.equals("main") || r >= 0) && isProtected(repo, r);
+    return new JSONObject().put("name", branch).put("default", branch.equals("main")).put("protected", prot);
+  }
+
+  private synchronized int remaining() {
+    return limit == Integer.MAX_VALUE ? 5000 : Math.max(0, limit - used);
+  }
+
+  private synchronized long reset() {
+    return TimeUnit.MILLISECONDS.toSeconds(windowStart + windowMillis + 999);
+  }
+
+  private static MockResponse json(int code, Object body) {
+    return new MockResponse().setResponseCode(code).setHeader("Content-Type", "application/json").setBody(body.toString());
+  }
+}
@@ -0,0 +1,138 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import io.xygeni.extensions.custom_detectors.misconfigurations.util.RepositoryBatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ScmMetadataSnapshotTest {
+
+  /** Counts the calls to the SCM */
+  private static class CountingProvider extends BranchesProvider {
+    private final AtomicInteger calls;
+
+    CountingProvider(String pattern, AtomicInteger calls) {
+      super(null, pattern);
+      this.calls = calls;
+    }
+
+    @Override public Map<String, BranchProtectionInfo> getProtectionsForMainReleaseBranches() {
+      calls.incrementAndGet();
+      Map<String, BranchProtectionInfo> result = new TreeMap<>();
+      result.put("main", new BranchProtectionInfo());
+      return result;
+    }
+  }
+
+  @Test void fetched_once_per_scan() {
+    var ctx = new Object();
+    var calls = new AtomicInteger();
+
+    // two detectors with the same provider and pattern, in preprocess and execute
+    var p1 = ScmMetadataSnapshot.of(ctx, "github:acme/app").protections(new CountingProvider("^release/.+$", calls));
+    var p2 = ScmMetadataSnapshot.of(ctx, "github:acme/app").protections(new CountingProvider("^release/.+$", calls));
+    assertThat(p2).isSameAs(p1).containsOnlyKeys("main");
+    assertThat(calls).hasValue(1);
+
+    // different pattern, other repository, other scan
+    ScmMetadataSnapshot.of(ctx, "github:acme/app").protections(new CountingProvider("^v\\d+$", calls));
+    ScmMetadataSnapshot.of(ctx, "github:acme/lib").protections(new CountingProvider("^release/.+$", calls));
+    ScmMetadataSnapshot.of(new Object(), "github:acme/app").protections(new CountingProvider("^release/.+$", calls));
+    assertThat(calls).hasValue(4);
+
+    assertThatThrownBy(() -> p1.put("x", new BranchProtectionInfo())).isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test void concurrent_callers() {
+    var ctx = new Object();
+    var calls = new AtomicInteger();
+    var results = new RepositoryBatch(8).fetch(Collections.nCopies(32, "gitlab:acme/app"), repo -> {
+      var snapshot = ScmMetadataSnapshot.of(ctx, repo);
+      return snapshot.get("branches", () -> {
+        calls.incrementAndGet();
+        sleep(20);
+        return List.of("main", "release/1.0");
+      });
+    });
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test void repository_per_host() {
+    assertThat(ScmMetadataSnapshot.repository("gitlab", "https://gitlab.com/acme/app.git", "acme", "app"))
+      .isEqualTo("gitlab:gitlab.com/acme/app");
+    assertThat(ScmMetadataSnapshot.repository("gitlab", "https://git.acme.io:8443/gitlab/acme/app", "acme", "app"))
+      .isEqualTo("gitlab:git.acme.io:8443/acme/app");
+    assertThat(ScmMetadataSnapshot.repository("github", "git@github.com:acme/app.git", "acme", "app"))
+      .isEqualTo("github:github.com/acme/app");
+    assertThat(ScmMetadataSnapshot.repository("github", null, "acme", "app")).isEqualTo("github:acme/app");
+
+    // same owner and name on two servers, two snapshots
+    var ctx = new Object();
+    var calls = new AtomicInteger();
+    ScmMetadataSnapshot.of(ctx, ScmMetadataSnapshot.repository("gitlab", "https://gitlab.com/acme/app", "acme", "app"))
+      .protections(new CountingProvider("^release/.+$", calls));
+    ScmMetadataSnapshot.of(ctx, ScmMetadataSnapshot.repository("gitlab", "https://git.acme.io/acme/app", "acme", "app"))
+      .protections(new CountingProvider("^release/.+$", calls));
+    assertThat(calls).hasValue(2);
+  }
+
+  @Test void slow_fetch_does_not_block_other_keys() throws Exception {
+    var snapshot = ScmMetadataSnapshot.of(new Object(), "github:acme/app");
+    var started = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    var slow = new Thread(() -> snapshot.get("slow", () -> {
+      started.countDown();
+      await(release);
+      return "slow";
+    }));
+    slow.start();
+    try {
+      assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+      // while the first fetch waits for the SCM, other keys are fetched and read
+      var other = CompletableFuture.supplyAsync(() -> snapshot.get("other", () -> "other"));
+      assertThat(other.get(10, TimeUnit.SECONDS)).isEqualTo("other");
+      assertThat(snapshot.contains("slow")).isFalse();
+    } finally {
+      release.countDown();
+      slow.join();
+    }
+    assertThat(snapshot.<String>get("slow", () -> "again")).isEqualTo("slow");
+  }
+
+  @Test void failed_fetch_is_retried() {
+    var snapshot = ScmMetadataSnapshot.of(new Object(), "github:acme/app");
+    assertThatThrownBy(() -> snapshot.get("branches", () -> { throw new IllegalStateException("502 Bad Gateway"); }))
+      .hasMessage("502 Bad Gateway");
+    assertThat(snapshot.contains("branches")).isFalse();
+    assertThat(snapshot.<List<String>>get("branches", () -> List.of("main"))).containsExactly("main");
+    assertThat(snapshot.contains("branches")).isTrue();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
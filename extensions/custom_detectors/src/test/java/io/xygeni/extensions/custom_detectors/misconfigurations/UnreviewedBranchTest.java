@@ -0,0 +1,166 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations;
+
+import com.depsdoctor.core.model.common.Location;
+import com.depsdoctor.core.model.scm.ScmCoordinates;
+import com.depsdoctor.misc.scanner.engine.MiscContext;
+import io.xygeni.extensions.custom_detectors.misconfigurations.UnreviewedBranch.BranchProtectionInfo;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * UnreviewedBranch on the GitHub organization served by {@link MockScmServer}.
+ * The default providers go through the platform SCM clients, so the detector is given the GraphQL provider.
+ * <p>
+ * Protections in the mock organization, for the repositories used here (see {@link MockScmServer#expected(int)}):
+ * <pre>
+ *   repo  main                      release/0.0               release/1.0              admins enforced
+ *   0     not protected             1 review                  not protected            yes
+ *   1     1 review                  not protected             1 review                 no
+ *   2     2 reviews                 1 review                  not protected            yes
+ *   3     no reviews                not protected             1 review                 no
+ * </pre>
+ */
+class UnreviewedBranchTest {
+  private final OkHttpClient client = new OkHttpClient();
+  private MockScmServer server;
+
+  @BeforeEach void start() {
+    server = new MockScmServer().repos(4).branches(10).releases(2).start();
+  }
+
+  @AfterEach void stop() throws IOException {
+    server.close();
+  }
+
+  /** Records the misconfigurations reported, as {@code repo: explanation} */
+  private class MockedUnreviewedBranch extends UnreviewedBranch {
+    private final List<String> reported = new ArrayList<>();
+    private String releaseBranchesPattern;
+    private String repo;
+
+    MockedUnreviewedBranch(Map<String, Object> overrides) {
+      Map<String, Object> props = new HashMap<>(properties());
+      props.putAll(overrides);
+      releaseBranchesPattern = (String) props.get("releaseBranchesPattern");
+      configure(props);
+    }
+
+    @Override protected BranchesProvider branchesProvider(ScmCoordinates scm) {
+      return new GithubGraphqlBranchesProvider(scm, releaseBranchesPattern, server.githubGraphqlUrl(), "t0ken", client) {
+        @Override public Map<String, BranchProtectionInfo> getProtectionsForMainReleaseBranches() {
+          Map<String, BranchProtectionInfo> result = new TreeMap<>();
+          fetch(scm.getOwner(), scm.getRepo(), result);
+          return result;
+        }
+      };
+    }
+
+    @Override protected Location location(ScmCoordinates scm) {
+      repo = scm.getRepo(); // misconfigurations are reported from the calling thread, right after
+      return null;
+    }
+
+    @Override protected void report(Location location, MiscContext ctx, String explain) {
+      reported.add(repo + ": " + explain);
+    }
+  }
+
+  /** The properties in the detector YAML */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> properties() {
+    try(InputStream is = UnreviewedBranchTest.class.getResourceAsStream("/misconfigurations/custom_unreviewed_branch.yml")) {
+      Map<String, Object> yaml = new Yaml().load(is);
+      return (Map<String, Object>) yaml.get("properties");
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static ScmCoordinates scm(int repo) {
+    return new ScmCoordinates() {
+      @Override public String getOwner() { return MockScmServer.ORG; }
+      @Override public String getRepo() { return MockScmServer.repo(repo); }
+    };
+  }
+
+  private List<String> execute(MockedUnreviewedBranch detector, int... repos) {
+    var ctx = new MiscContext();
+    for(int repo : repos) {
+      detector.preprocess(scm(repo), ctx);
+      detector.execute(scm(repo), ctx);
+    }
+    return detector.reported;
+  }
+
+  @Test void default_settings() {
+    var reported = execute(new MockedUnreviewedBranch(Map.of()), 0, 1, 2, 3);
+    assertThat(reported).containsExactly(
+      "repo-0000: Branch main is not protected",
+      "repo-0000: Branch release/1.0 is not protected",
+      "repo-0001: Branch release/0.0 is not protected",
+      "repo-0002: Branch release/1.0 is not protected",
+      "repo-0003: No review required",
+      "repo-0003: Branch release/0.0 is not protected"
+    );
+    // fetched once per repository, in preprocess
+    assertThat(server.getRequests()).isEqualTo(4);
+  }
+
+  @Test void min_reviews_and_enforce_admins() {
+    var detector = new MockedUnreviewedBranch(Map.of("minReviews", 2, "enforceAdmins", true));
+    assertThat(execute(detector, 1, 2)).containsExactly(
+      "repo-0001: Minimum number of reviews required: 2, but branch requires only 1; Administrators can skip code reviews",
+      "repo-0001: Branch release/0.0 is not protected",
+      "repo-0001: Minimum number of reviews required: 2, but branch requires only 1; Administrators can skip code reviews",
+      "repo-0002: Minimum number of reviews required: 2, but branch requires only 1",
+      "repo-0002: Branch release/1.0 is not protected"
+    );
+  }
+
+  @Test void release_pattern() {
+    // only release/1.0 is a release branch; the feature branches never are
+    var detector = new MockedUnreviewedBranch(Map.of("releaseBranchesPattern", "^release/1\\.0$"));
+    assertThat(execute(detector, 0, 1, 2)).containsExactly(
+      "repo-0000: Branch main is not protected",
+      "repo-0000: Branch release/1.0 is not protected",
+      "repo-0002: Branch release/1.0 is not protected"
+    );
+  }
+
+  @Test void execute_all() {
+    var detector = new MockedUnreviewedBranch(Map.of("concurrency", 4));
+    var ctx = new MiscContext();
+    // repo-0009 is not in the organization: no protections, nothing reported
+    var scms = List.of(scm(3), scm(9), scm(0));
+    var results = detector.executeAll(scms, ctx);
+
+    assertThat(results).allMatch(r -> r.isOk());
+    assertThat(results.get(1).getValue()).isEmpty();
+    // reported in the given order, as execute does for each repository
+    assertThat(detector.reported).containsExactly(
+      "repo-0003: No review required",
+      "repo-0003: Branch release/0.0 is not protected",
+      "repo-0000: Branch main is not protected",
+      "repo-0000: Branch release/1.0 is not protected"
+    );
+    // the protections are in the snapshot for the scan: execute does not fetch them again
+    var fetched = server.getRequests();
+    scms.forEach(scm -> detector.execute(scm, ctx));
+    assertThat(server.getRequests()).isEqualTo(fetched);
+    assertThat(detector.reported).hasSize(8);
+  }
+}
@@ -0,0 +1,117 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitSchedulerTest {
+  private MockWebServer server;
+  private RateLimitScheduler scheduler;
+  private OkHttpClient client;
+
+  @BeforeEach void start() throws Exception {
+    server = new MockWebServer();
+    server.start();
+    scheduler = new RateLimitScheduler();
+    client = new OkHttpClient.Builder().addInterceptor(scheduler).build();
+  }
+
+  @AfterEach void stop() throws Exception {
+    server.shutdown();
+  }
+
+  private int get() throws Exception {
+    return get(null);
+  }
+
+  private int get(String token) throws Exception {
+    var req = new Request.Builder().url(server.url("/repos"));
+    if(token != null) req.header("PRIVATE-TOKEN", token);
+    try(var res = client.newCall(req.build()).execute()) {
+      return res.code();
+    }
+  }
+
+  private static long epochSeconds(long plusMillis) {
+    return (System.currentTimeMillis() + plusMillis) / 1000;
+  }
+
+  @Test void retried_after_429() throws Exception {
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+    server.enqueue(new MockResponse().setBody("[]"));
+
+    long start = System.currentTimeMillis();
+    assertThat(get()).isEqualTo(200);
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(900);
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(scheduler.getRetries()).isEqualTo(1);
+    assertThat(scheduler.getPauses()).isEqualTo(1);
+    assertThat(scheduler.getWaitMillis()).isGreaterThanOrEqualTo(900);
+  }
+
+  @Test void primary_limit_exhausted() throws Exception {
+    // GitHub: 403 with no remaining requests, retried after the reset
+    server.enqueue(new MockResponse().setResponseCode(403)
+      .setHeader("X-RateLimit-Remaining", "0").setHeader("X-RateLimit-Reset", epochSeconds(1000)));
+    server.enqueue(new MockResponse().setHeader("X-RateLimit-Remaining", "4999").setHeader("X-RateLimit-Reset", epochSeconds(3_600_000)));
+
+    assertThat(get()).isEqualTo(200);
+    assertThat(scheduler.getRetries()).isEqualTo(1);
+    assertThat(scheduler.remaining(server.getHostName(), null)).isEqualTo(4999);
+  }
+
+  @Test void paused_at_reserve() throws Exception {
+    scheduler.configure(5, 60);
+    // GitLab headers
+    server.enqueue(new MockResponse().setHeader("RateLimit-Remaining", "5").setHeader("RateLimit-Reset", epochSeconds(1500)));
+    server.enqueue(new MockResponse().setHeader("RateLimit-Remaining", "600").setHeader("RateLimit-Reset", epochSeconds(60_000)));
+    server.enqueue(new MockResponse().setHeader("RateLimit-Remaining", "599").setHeader("RateLimit-Reset", epochSeconds(60_000)));
+
+    get();
+    long start = System.currentTimeMillis();
+    get(); // waits for the reset
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(400);
+    start = System.currentTimeMillis();
+    get(); // no wait
+    assertThat(System.currentTimeMillis() - start).isLessThan(400);
+    assertThat(scheduler.getRetries()).isZero();
+    assertThat(scheduler.getRequests()).isEqualTo(3);
+  }
+
+  @Test void quota_per_token() throws Exception {
+    scheduler.configure(5, 60);
+    server.enqueue(new MockResponse().setHeader("RateLimit-Remaining", "5").setHeader("RateLimit-Reset", epochSeconds(60_000)));
+    server.enqueue(new MockResponse().setHeader("RateLimit-Remaining", "600").setHeader("RateLimit-Reset", epochSeconds(60_000)));
+
+    get("t0ken-a"); // at the reserve
+    // another token, on the same host, has its own quota: no wait
+    assertThat(get("t0ken-b")).isEqualTo(200);
+    assertThat(scheduler.getPauses()).isZero();
+    assertThat(scheduler.remaining(server.getHostName(), "t0ken-a")).isEqualTo(5);
+    assertThat(scheduler.remaining(server.getHostName(), "t0ken-b")).isEqualTo(600);
+    assertThat(scheduler.remaining(server.getHostName(), null)).isEqualTo(-1);
+  }
+
+  @Test void not_retried() throws Exception {
+    // no permission
+    server.enqueue(new MockResponse().setResponseCode(403).setBody("{\"message\": \"Must have admin rights to Repository.\"}"));
+    assertThat(get()).isEqualTo(403);
+
+    // the wait is longer than allowed
+    scheduler.configure(0, 1);
+    server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "120"));
+    long start = System.currentTimeMillis();
+    assertThat(get()).isEqualTo(429);
+    assertThat(System.currentTimeMillis() - start).isLessThan(1000);
+
+    assertThat(server.getRequestCount()).isEqualTo(2);
+    assertThat(scheduler.getRetries()).isZero();
+    assertThat(scheduler.stats()).startsWith("requests=2, retries=0");
+  }
+}
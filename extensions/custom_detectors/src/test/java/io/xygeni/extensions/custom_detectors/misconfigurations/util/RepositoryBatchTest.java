@@ -0,0 +1,107 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RepositoryBatchTest {
+
+  @Test void results_in_repository_order() {
+    var repos = IntStream.range(0, 50).mapToObj(i -> "repo-" + i).collect(Collectors.toList());
+    // later repositories answer first
+    var results = new RepositoryBatch(8).fetch(repos, r -> {
+      Thread.sleep(50 - Integer.parseInt(r.substring(5)));
+      return r.toUpperCase();
+    });
+    assertThat(results).extracting(RepositoryBatch.Result::getRepository).isEqualTo(repos);
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(results.get(7).getValue()).isEqualTo("REPO-7");
+  }
+
+  @Test void concurrency_is_capped() {
+    var inFlight = new AtomicInteger();
+    var max = new AtomicInteger();
+    var repos = IntStream.range(0, 40).boxed().collect(Collectors.toList());
+    // the first 4 calls wait for each other, so the cap is reached, and never passed
+    var started = new CountDownLatch(4);
+    var results = new RepositoryBatch(4).fetch(repos, r -> overlapping(r, inFlight, max, started));
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(max.get()).isEqualTo(4);
+  }
+
+  @Test void latency_bound_calls_overlap() {
+    var inFlight = new AtomicInteger();
+    var max = new AtomicInteger();
+    var repos = IntStream.range(0, 16).boxed().collect(Collectors.toList());
+    // each call waits until 8 calls have started: sequential calls would never get there
+    var started = new CountDownLatch(8);
+    var results = new RepositoryBatch(8).fetch(repos, r -> overlapping(r, inFlight, max, started));
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(max.get()).isEqualTo(8);
+  }
+
+  @Test void concurrency_is_per_batch() throws Exception {
+    var repos = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+    // two batches at the same time: the first 8 calls, 4 of each, wait for each other
+    var started = new CountDownLatch(8);
+    var otherInFlight = new AtomicInteger();
+    var otherMax = new AtomicInteger();
+    var other = new Thread(() -> new RepositoryBatch(4).fetch(repos, r -> overlapping(r, otherInFlight, otherMax, started)));
+    other.start();
+    var inFlight = new AtomicInteger();
+    var max = new AtomicInteger();
+    var results = new RepositoryBatch(4).fetch(repos, r -> overlapping(r, inFlight, max, started));
+    other.join();
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(max.get()).isEqualTo(4);
+    assertThat(otherMax.get()).isEqualTo(4);
+  }
+
+  @Test void process_concurrency_is_capped() throws Exception {
+    var inFlight = new AtomicInteger();
+    var max = new AtomicInteger();
+    var repos = IntStream.range(0, 2 * RepositoryBatch.MAX_CONCURRENCY).boxed().collect(Collectors.toList());
+    // more than the process cap per batch: the first calls wait for each other, and the cap is reached
+    var started = new CountDownLatch(RepositoryBatch.MAX_CONCURRENCY);
+    var results = new RepositoryBatch(RepositoryBatch.MAX_CONCURRENCY + 16).fetch(repos, r -> overlapping(r, inFlight, max, started));
+    assertThat(results).allMatch(RepositoryBatch.Result::isOk);
+    assertThat(max.get()).isEqualTo(RepositoryBatch.MAX_CONCURRENCY);
+  }
+
+  /** Counts the calls in flight, each one waiting until the latch is down */
+  private static <T> T overlapping(T r, AtomicInteger inFlight, AtomicInteger max, CountDownLatch started)
+    throws InterruptedException {
+    max.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try {
+      started.countDown();
+      if(!started.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Calls did not overlap");
+      return r;
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  @Test void failures_do_not_stop_the_batch() {
+    var results = new RepositoryBatch(2).fetch(List.of("ok", "fail", "ok2"), r -> {
+      if(r.equals("fail")) throw new IOException("403 Forbidden");
+      return r;
+    });
+    assertThat(results).extracting(RepositoryBatch.Result::isOk).containsExactly(true, false, true);
+    assertThat(results.get(1).getError()).isInstanceOf(IOException.class).hasMessage("403 Forbidden");
+    assertThat(results.get(1).getValue()).isNull();
+  }
+
+  @Test void empty_and_invalid() {
+    assertThat(new RepositoryBatch(1).fetch(List.<String>of(), r -> r)).isEmpty();
+    assertThatThrownBy(() -> new RepositoryBatch(0)).isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,115 @@
+package io.xygeni.extensions.custom_detectors.misconfigurations.util;
+
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScmHttpTest {
+  private MockWebServer server;
+
+  @BeforeEach void start() throws Exception {
+    server = new MockWebServer();
+    server.start();
+  }
+
+  @AfterEach void stop() throws Exception {
+    server.shutdown();
+    ScmHttp.close();
+  }
+
+  private String get(String path) throws Exception {
+    return get(path, "t0ken");
+  }
+
+  private String get(String path, String token) throws Exception {
+    var req = new Request.Builder().url(server.url(path)).header("Authorization", "Bearer " + token).build();
+    try(var res = ScmHttp.client().newCall(req).execute()) {
+      assertThat(res.code()).isEqualTo(200);
+      return res.body().string();
+    }
+  }
+
+  @Test void revalidated_with_etag(@TempDir File dir) throws Exception {
+    ScmHttp.configure(dir, 10);
+    // as GitLab: must revalidate on each request
+    server.enqueue(new MockResponse().setBody("[{\"name\": \"main\"}]")
+      .setHeader("ETag", "W/\"abc\"").setHeader("Cache-Control", "max-age=0, private, must-revalidate"));
+    server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "W/\"abc\""));
+
+    assertThat(get("/branches")).isEqualTo("[{\"name\": \"main\"}]");
+    assertThat(get("/branches")).isEqualTo("[{\"name\": \"main\"}]"); // from the cache, after a 304
+
+    assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+    assertThat(server.takeRequest().getHeader("If-None-Match")).isEqualTo("W/\"abc\"");
+    assertThat(ScmHttp.cache().hitCount()).isEqualTo(1);
+    assertThat(ScmHttp.stats()).isEqualTo("requests=2, hits=1, network=2");
+  }
+
+  @Test void not_shared_between_tokens(@TempDir File dir) throws Exception {
+    ScmHttp.configure(dir, 10);
+    server.enqueue(new MockResponse().setBody("a").setHeader("Cache-Control", "max-age=60").setHeader("Vary", "Authorization"));
+    server.enqueue(new MockResponse().setBody("b").setHeader("Cache-Control", "max-age=60").setHeader("Vary", "Authorization"));
+
+    assertThat(get("/p", "t0ken")).isEqualTo("a");
+    assertThat(get("/p", "t0ken")).isEqualTo("a"); // fresh, from the cache
+    assertThat(get("/p", "other")).isEqualTo("b");
+    assertThat(server.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test void changed_resource(@TempDir File dir) throws Exception {
+    ScmHttp.configure(dir, 10);
+    server.enqueue(new MockResponse().setBody("v1").setHeader("ETag", "\"1\"").setHeader("Cache-Control", "no-cache"));
+    server.enqueue(new MockResponse().setBody("v2").setHeader("ETag", "\"2\"").setHeader("Cache-Control", "no-cache"));
+    assertThat(get("/p")).isEqualTo("v1");
+    assertThat(get("/p")).isEqualTo("v2");
+    assertThat(ScmHttp.cache().hitCount()).isZero();
+  }
+
+  @Test void configure() throws Exception {
+    var client = ScmHttp.client();
+    assertThat(ScmHttp.configure(Map.of())).isSameAs(client);
+    assertThat(ScmHttp.cache()).isNull();
+    assertThat(ScmHttp.stats()).isEqualTo("no cache");
+
+    server.enqueue(new MockResponse().setBody("x").setHeader("ETag", "\"1\""));
+    server.enqueue(new MockResponse().setBody("x").setHeader("ETag", "\"1\""));
+    get("/p");
+    get("/p");
+    assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+    assertThat(server.takeRequest().getHeader("If-None-Match")).isNull();
+  }
+
+  @Test void configure_from_properties(@TempDir File dir) {
+    var cached = ScmHttp.configure(Map.of("httpCacheDir", dir.getPath(), "httpCacheMaxMb", 5));
+    assertThat(ScmHttp.cache().maxSize()).isEqualTo(5L * 1024 * 1024);
+    // same settings, same client (and connection pool)
+    assertThat(ScmHttp.configure(Map.of("httpCacheDir", dir.getPath(), "httpCacheMaxMb", 5))).isSameAs(cached);
+    ScmHttp.close();
+    assertThat(ScmHttp.cache()).isNull();
+  }
+
+  @Test void reconfigure_keeps_clients_working(@TempDir File dir) throws Exception {
+    var first = ScmHttp.configure(new File(dir, "a"), 10);
+    // another detector with other settings: the client of the first one still works
+    var second = ScmHttp.configure(new File(dir, "b"), 10);
+    assertThat(second).isNotSameAs(first);
+    assertThat(ScmHttp.configure(null, 10)).isNotSameAs(second);
+
+    server.enqueue(new MockResponse().setBody("x").setHeader("ETag", "\"1\""));
+    try(var res = first.newCall(new Request.Builder().url(server.url("/p")).build()).execute()) {
+      assertThat(res.body().string()).isEqualTo("x");
+    }
+    assertThat(first.cache().networkCount()).isEqualTo(1);
+    // back to the first directory, the same cache
+    assertThat(ScmHttp.configure(new File(dir, "a"), 20)).isSameAs(first);
+  }
+}
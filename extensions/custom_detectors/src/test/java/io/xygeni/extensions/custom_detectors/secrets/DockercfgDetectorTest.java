@@ -0,0 +1,27 @@
+package io.xygeni.extensions.custom_detectors.secrets;
+
+import io.xygeni.extensions.custom_detectors.TestHelper;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * DockercfgDetectorTest - Unit tests for the custom docker configuration credentials detector.
+ *
+ * @author john.doe
+ * @version 01-Jan-1980 (john.doe)
+ */
+class DockercfgDetectorTest {
+
+  @Test
+  void detect() {
+    File dir = TestHelper.getTestResourcesDir("secrets/dockercfg");
+    var ctx = SecretTestHelper.runOnFiles("custom_dockercfg", dir, "custom_dockercfg.yml");
+    var secrets = ctx.secrets().findByDetector("custom_dockercfg");
+    // two in ci/.docker/config.json, one in legacy/.dockercfg, none in desktop/.docker/config.json (credsStore)
+    assertThat(secrets).hasSize(3);
+    secrets.forEach(s -> assertThat(s.getFile()).doesNotContain("desktop"));
+  }
+}
@@ -4,8 +4,15 @@ import com.depsdoctor.commons.json.JsonSerializer;
 import com.depsdoctor.commons.os.OS;
 import io.xygeni.extensions.custom_detectors.TestHelper;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.lang.System.out;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -30,6 +37,63 @@ public class DropboxDetectorTest {
     assertThat(secret.isInactive()).isTrue(); // that was a close one!
   }
 
+  @Test
+  void detect_incremental(@TempDir File tmp) throws IOException {
+    File dir = new File(tmp, "src");
+    File token = new File(dir, "dropbox.token");
+    File clean = new File(dir, "notes.txt");
+    Files.createDirectories(dir.toPath());
+    Files.copy(new File(TestHelper.getTestResourcesDir("secrets/dropbox"), "dropbox.token").toPath(), token.toPath());
+    Files.writeString(clean.toPath(), "nothing to see here\n", StandardCharsets.UTF_8);
+    File index = new File(tmp, "secrets.idx");
+    Files.createDirectories(tmp.toPath().resolve(".git")); // the work tree root, above the scanned directory
+
+    for(int run = 0; run < 2; run++) {
+      List<File> scanned = new ArrayList<>();
+      var ctx = SecretTestHelper.runOnFilesIncremental("custom_dropbox_token", dir, "custom_dropbox_token.yml", index, scanned);
+      // files with findings are never recorded as clean, so the secret is reported again on the second run
+      assertThat(ctx.secrets().findByDetector("custom_dropbox_token")).hasSize(1);
+      // the unchanged clean file is skipped on the second run
+      if(run == 0) assertThat(scanned).containsExactlyInAnyOrder(token, clean);
+      else assertThat(scanned).containsExactly(token);
+    }
+    assertThat(index).isFile();
+    // paths relative to the repository, as git shows them
+    assertThat(Files.readAllLines(index.toPath(), StandardCharsets.UTF_8)).anyMatch(l -> l.endsWith(" src/notes.txt"));
+
+    // same content at another path is scanned: detectors may select files by path
+    File copy = new File(dir, "conf/notes.txt");
+    Files.createDirectories(copy.getParentFile().toPath());
+    Files.copy(clean.toPath(), copy.toPath());
+    List<File> scanned = new ArrayList<>();
+    SecretTestHelper.runOnFilesIncremental("custom_dropbox_token", dir, "custom_dropbox_token.yml", index, scanned);
+    assertThat(scanned).containsExactlyInAnyOrder(token, copy);
+  }
+
+  /** A minified-like file: the token is in a line much longer than the window, and straddles a window cut */
+  @Test
+  void detect_in_large_text() throws IOException {
+    File file = new File(TestHelper.getTestResourcesDir("secrets/dropbox"), "dropbox.token");
+    String token = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).get(1).trim();
+    final int chunkSize = 4096;
+
+    var text = new StringBuilder();
+    for(int i = 0; i < 100; i++) text.append("var a").append(i).append(" = 'not a secret';\n");
+    int lineStart = text.length();
+    while(text.length() - lineStart < 3 * chunkSize - token.length() / 2) text.append("f(x);");
+    text.append(" '").append(token).append("' ");
+    while(text.length() - lineStart < 5 * chunkSize) text.append("g(y);");
+    text.append('\n');
+
+    var ctx = SecretTestHelper.runOnLargeText(
+      "custom_dropbox_token", new StringReader(text.toString()), "custom_dropbox_token.yml", chunkSize, 512
+    );
+    var secrets = ctx.secrets().findByDetector("custom_dropbox_token");
+    assertThat(secrets).hasSize(1);
+    // line in the whole text, not in the window
+    assertThat(secrets.get(0).getBeginLine()).isEqualTo(101);
+  }
+
   /** We do not want to leak real secrets! To test with a real thing, pass DROPBOX_TOKEN environment variable */
   @Test
   void detect_and_remediate_real_secret() {
@@ -6,6 +6,7 @@ import com.depsdoctor.commons.git.Git;
 import com.depsdoctor.core.model.secrets.SecretsReport;
 import com.depsdoctor.secrets.scanner.config.SecretsConfig;
 import com.depsdoctor.secrets.scanner.config.SecretsConfigLoader;
+import com.depsdoctor.secrets.scanner.detector.SecretDetector;
 import com.depsdoctor.secrets.scanner.detector.SecretDetectorLoader;
 import com.depsdoctor.secrets.scanner.engine.SecretsContext;
 import com.depsdoctor.secrets.scanner.engine.SecretsEngine;
@@ -13,15 +14,32 @@ import com.depsdoctor.secrets.scanner.engine.SecretsListener;
 import com.depsdoctor.secrets.scanner.parser.DefaultParser;
 import com.depsdoctor.secrets.scanner.parser.Entry;
 import io.xygeni.extensions.custom_detectors.TestHelper;
+import io.xygeni.extensions.custom_detectors.secrets.util.BlobScanIndex;
+import io.xygeni.extensions.custom_detectors.secrets.util.ChunkedTextSource;
+import io.xygeni.extensions.custom_detectors.secrets.util.PrefixPrefilter;
 import org.assertj.core.api.Assertions;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static io.xygeni.extensions.custom_detectors.TestHelper.getTestResourcesDir;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -56,11 +74,11 @@ public class SecretTestHelper {
     // ensure that, for testing, all detectors are enabled
     conf.getDetectors().forEach(dc -> dc.setEnabled(true));
 
-    // Load the detectors
-    var loaded = new SecretDetectorLoader()
-      .loadDetectors(conf, d -> true, Resources.getThreadClassLoader());
+    // Load the detectors, grouped by detector id so entries are dispatched only to candidate detectors
+    var loaded = loadById(conf);
+    var prefilter = PrefixPrefilter.fromConfigFiles(List.of(configFile(configFile)));
 
-    loaded.forEach(d -> d.initialize(ctx));
+    loaded.values().forEach(ds -> ds.forEach(d -> d.initialize(ctx)));
 
     var parser = new DefaultParser();
     var baseEntry = Entry.with(new File(ctx.getDirectory(), detectorId), FileType.plaintext);
@@ -68,11 +86,165 @@ public class SecretTestHelper {
     assertThat(entries).isNotNull();
 
     entries.forEach(e -> {
-      loaded.forEach(d -> d.detect(e, ctx));
+      // one pass over the entry text selects the detectors whose literal prefix is present
+      var candidates = prefilter.candidates(e.getKey(), e.getValue());
+      loaded.forEach((id, ds) -> {
+        if(!prefilter.isFiltered(id) || candidates.contains(id)) ds.forEach(d -> d.detect(e, ctx));
+      });
+    });
+
+    loaded.values().forEach(ds -> ds.forEach(d -> d.terminate(ctx)));
+
+    return ctx;
+  }
+
+  /**
+   * Streaming variant of {@link #runOnText(String, String, String)}, for text too large to be held in memory.
+   * The text is read through a {@link ChunkedTextSource} window of chunkSize chars, plus overlap chars on each side,
+   * and the detectors run on each window in turn, so memory does not depend on the text size.
+   * <p>
+   * Windows are cut at line breaks, and then the parser is given only the lines owned by the window.
+   * A line longer than chunkSize is split: the parser is then given the window from the start of its context
+   * to the end of its lookahead, so a match straddling the cut is found (if not longer than overlap).
+   * Only the matches starting in the owned region are kept ({@link ChunkedTextSource.Chunk#owns(int)}), so a match is
+   * reported once, and the tail of a token cut by the window start is not reported.
+   * Line numbers in the findings are lines in the whole text.
+   */
+  public static SecretsContext runOnLargeText(String detectorId, Reader text, String configFile, int chunkSize, int overlap) {
+    var ctx = buildContext(detectorId, getTestResourcesDir());
+    var conf = ctx.getConfiguration();
+    conf.setNoVerify(false);
+
+    load(configFile, conf);
+    assertThat(conf.getDetectors()).isNotEmpty();
+    conf.getDetectors().forEach(dc -> dc.setEnabled(true));
+
+    var loaded = loadById(conf);
+    loaded.values().forEach(ds -> ds.forEach(d -> d.initialize(ctx)));
+
+    var parser = new DefaultParser();
+    var baseEntry = Entry.with(new File(ctx.getDirectory(), detectorId), FileType.plaintext);
+    // absolute offsets of the matches reported by the previous window, the only one that may overlap
+    Set<String> previous = new HashSet<>();
+
+    try(var source = new ChunkedTextSource(text, chunkSize, overlap)) {
+      while(source.hasNext()) {
+        var chunk = source.next();
+        String window = chunk.getText().toString();
+        int owned = chunk.getOwnedFrom();
+        // windows starting inside a split line are parsed from the context, so a cut token is seen whole
+        boolean inLine = owned > 0 && window.charAt(owned - 1) != '\n';
+        int from = inLine ? 0 : owned;
+        int to = chunk.isSplitLine() ? chunk.length() : chunk.getOwnedTo();
+        long firstLine = chunk.getFirstLine() - count(window, '\n', from, owned);
+
+        var sink = buildContext(detectorId, getTestResourcesDir(), conf);
+        parser.process(chunk.reader(from, to), baseEntry)
+          .forEach(e -> loaded.values().forEach(ds -> ds.forEach(d -> d.detect(e, sink))));
+
+        Set<String> current = new HashSet<>();
+        sink.secrets().forEach(secret -> {
+          // lines are relative to from: position of the match in the window
+          int lineStart = lineStart(window, from, secret.getBeginLine());
+          int index = secret.getSecret() == null ? -1 : window.indexOf(secret.getSecret(), lineStart);
+          if(index < 0) index = Math.max(lineStart, owned); // value not found as is, keep it where the line is
+          if(!chunk.owns(index)) return;
+
+          String key = secret.getDetector() + "@" + (chunk.getOffset() + index - owned);
+          if(!previous.contains(key)) {
+            secret.setBeginLine((int) (firstLine + secret.getBeginLine() - 1));
+            secret.setEndLine((int) (firstLine + secret.getEndLine() - 1));
+            ctx.addSecret(secret);
+          }
+          current.add(key);
+        });
+        previous.clear();
+        previous.addAll(current);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    loaded.values().forEach(ds -> ds.forEach(d -> d.terminate(ctx)));
+    return ctx;
+  }
+
+  private static int count(String s, char c, int from, int to) {
+    int n = 0;
+    for(int i = from; i < to; i++) if(s.charAt(i) == c) n++;
+    return n;
+  }
+
+  /** Index in s of the given line (1-based), counting lines from index from */
+  private static int lineStart(String s, int from, int line) {
+    int i = from;
+    for(int l = 1; l < line && i >= 0; l++) {
+      i = s.indexOf('\n', i);
+      if(i >= 0) i++;
+    }
+    return i < 0 ? from : i;
+  }
+
+  /**
+   * Parallel variant of {@link #runOnText(String, String, String)}. Entries are split in contiguous ranges, processed by
+   * a work-stealing pool with the given parallelism. Each range collects its findings in its own context,
+   * and the findings are merged into the returned context in range order, at the end, so the result does not depend
+   * on thread scheduling.
+   * <p>
+   * Detectors are loaded once per worker thread, so they need not be thread-safe.
+   */
+  public static SecretsContext runOnTextParallel(String detectorId, String text, String configFile, int parallelism) {
+    var ctx = buildContext(detectorId, getTestResourcesDir());
+    var conf = ctx.getConfiguration();
+    conf.setNoVerify(false);
+
+    load(configFile, conf);
+    assertThat(conf.getDetectors()).isNotEmpty();
+    conf.getDetectors().forEach(dc -> dc.setEnabled(true));
+
+    // each detector instance is confined to a worker thread
+    Queue<List<SecretDetector>> confined = new ConcurrentLinkedQueue<>();
+    ThreadLocal<List<SecretDetector>> perThread = ThreadLocal.withInitial(() -> {
+      List<SecretDetector> ds = new ArrayList<>();
+      loadById(conf).values().forEach(ds::addAll);
+      ds.forEach(d -> d.initialize(ctx));
+      confined.add(ds);
+      return ds;
     });
 
-    loaded.forEach(d -> d.terminate(ctx));
+    var parser = new DefaultParser();
+    var baseEntry = Entry.with(new File(ctx.getDirectory(), detectorId), FileType.plaintext);
+    List<Entry> entries = new ArrayList<>();
+    parser.process(new StringReader(text), baseEntry).forEach(entries::add);
+
+    int ranges = Math.max(1, Math.min(entries.size(), parallelism * 4));
+    List<SecretsContext> sinks = new ArrayList<>(ranges);
+    for(int i = 0; i < ranges; i++) sinks.add(buildContext(detectorId, getTestResourcesDir(), conf));
 
+    var pool = new ForkJoinPool(parallelism);
+    try {
+      pool.submit(() -> IntStream.range(0, ranges).parallel().forEach(r -> {
+        var sink = sinks.get(r);
+        var local = perThread.get();
+        int from = (int)((long) entries.size() * r / ranges), to = (int)((long) entries.size() * (r + 1) / ranges);
+        for(var e : entries.subList(from, to)) {
+          local.forEach(d -> d.detect(e, sink));
+        }
+      })).get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+
+    // merge the per-range findings, in entry order
+    sinks.forEach(sink -> sink.secrets().forEach(ctx::addSecret));
+
+    confined.forEach(ds -> ds.forEach(d -> d.terminate(ctx)));
     return ctx;
   }
 
@@ -81,6 +253,69 @@ public class SecretTestHelper {
    * the configuration in the test with changeConfig before instantiating the detectors
    */
   public static SecretsContext runOnFiles(String testName, File dir, String configFile, Consumer<SecretsConfig> changeConfig) {
+    try(var stream = Files.walk(dir.toPath()).map(Path::toFile).filter(File::isFile)) {
+      return scan(testName, dir, stream, configFile, changeConfig);
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Incremental variant of {@link #runOnFiles(String, File, String)}: files recorded in the index as scanned with
+   * no findings (by the same detector set, at the same path and with the same git blob SHA) are skipped.
+   * The index is updated with the results and saved.
+   */
+  public static SecretsContext runOnFilesIncremental(String testName, File dir, String configFile, File indexFile) {
+    return runOnFilesIncremental(testName, dir, configFile, indexFile, new ArrayList<>());
+  }
+
+  /** Same as {@link #runOnFilesIncremental(String, File, String, File)}, adding the files scanned to scanned */
+  public static SecretsContext runOnFilesIncremental(
+    String testName, File dir, String configFile, File indexFile, Collection<File> scanned
+  ) {
+    String version = BlobScanIndex.detectorSetVersion(
+      List.of(configFile(configFile)), Resources.getThreadClassLoader(),
+      SecretsEngine.class.getPackage().getImplementationVersion()
+    );
+    var index = BlobScanIndex.open(indexFile, version);
+
+    // only changed (or never scanned) files need to be scanned; paths in the index are relative to the repository
+    Path base = dir.toPath().toAbsolutePath();
+    Path root = BlobScanIndex.repoRoot(base);
+    Map<File, String> changed = new LinkedHashMap<>();
+    Map<String, String> shas = new LinkedHashMap<>(); // repository path -> blob sha, for the files scanned
+    try(var stream = Files.walk(base)) {
+      for(Path p : (Iterable<Path>) stream.filter(Files::isRegularFile)::iterator) {
+        String sha = BlobScanIndex.blobSha(p);
+        String path = BlobScanIndex.repoPath(root, base, p.toString());
+        if(!index.isClean(path, sha)) {
+          changed.put(p.toFile(), sha);
+          shas.put(path, sha);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    scanned.addAll(changed.keySet());
+
+    // no verification: the index only needs the findings, and the test must not depend on the network
+    var ctx = scan(testName, dir, changed.keySet().stream(), configFile, conf -> conf.setNoVerify(true));
+
+    // secrets may be reported with absolute paths or relative to the scanned directory
+    Set<String> withFindings = new HashSet<>();
+    ctx.secrets().forEach(secret -> withFindings.add(BlobScanIndex.repoPath(root, base, secret.getFile())));
+    shas.forEach((path, sha) -> {
+      if(withFindings.contains(path)) index.markDirty(path, sha); else index.markClean(path, sha);
+    });
+    index.save();
+
+    return ctx;
+  }
+
+  private static SecretsContext scan(
+    String testName, File dir, Stream<File> files, String configFile, Consumer<SecretsConfig> changeConfig
+  ) {
     var ctx = buildContext(testName, dir);
     var conf = ctx.getConfiguration();
     conf.setTimeout(0);
@@ -104,13 +339,18 @@ public class SecretTestHelper {
     SecretsEngine engine = new SecretsEngine();
     engine.setDetectors(loaded);
 
-    try(var stream = Files.walk(dir.toPath()).map(Path::toFile).filter(File::isFile)) {
-      engine.scanSecrets(stream, ctx);
-      return ctx;
+    engine.scanSecrets(files, ctx);
+    return ctx;
+  }
 
-    } catch (IOException e) {
-      throw new UncheckedIOException(e);
+  /** Loads the enabled detectors in the configuration, keyed by detector id */
+  public static Map<String, List<SecretDetector>> loadById(SecretsConfig conf) {
+    var loader = new SecretDetectorLoader();
+    Map<String, List<SecretDetector>> loaded = new LinkedHashMap<>();
+    for(var dc : conf.getDetectors()) {
+      loaded.put(dc.getId(), loader.loadDetectors(conf, d -> d == dc, Resources.getThreadClassLoader()));
     }
+    return loaded;
   }
 
   /**
@@ -129,7 +369,7 @@ public class SecretTestHelper {
     detectors.forEach(config::addDetector);
   }
 
-  private static File configFile(String fname) {
+  static File configFile(String fname) {
     if(!fname.endsWith(".yml")) fname += ".yml";
     File f = new File(secretConfigDir, fname);
     Assertions.assertThat(f).isFile();
@@ -139,6 +379,11 @@ public class SecretTestHelper {
   public static SecretsContext buildContext(String projName, File dir) {
     SecretsConfig conf = new SecretsConfig();
     conf.setGitRoot(Git.getRootDirectory(dir));
+    return buildContext(projName, dir, conf);
+  }
+
+  /** Context with the given (possibly shared) configuration */
+  public static SecretsContext buildContext(String projName, File dir, SecretsConfig conf) {
     SecretsReport report = new SecretsReport(projName, dir, null, true, null);
     return SecretsContext.builder()
       .projectName(projName)
@@ -1,7 +1,17 @@
 package io.xygeni.extensions.custom_detectors.secrets;
 
+import com.depsdoctor.commons.json.JsonSerializer;
 import com.depsdoctor.core.utils.jwt.JWT;
+import io.xygeni.extensions.custom_detectors.secrets.util.Entropy;
+import io.xygeni.extensions.custom_detectors.secrets.util.SecretAllowlist;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -46,4 +56,76 @@ class XygeniJwtDetectorTest {
     boolean isXygeni = new XygeniJwtDetector().isValidToken(jwt);
     assertThat(isXygeni).isFalse();
   }
-}
\ No newline at end of file
+
+  @Test void test_low_entropy_rejected() {
+    var detector = new XygeniJwtDetector();
+    assertThat(detector.isValidToken("xya_eyJaaaaaaaaaaaaaaaa.aaaaaaaaaaaaaaaa.aaaaaaaa")).isFalse();
+    assertThat(Entropy.hasMinEntropy("xya_" + EXPIRED_JWT, detector.getMinEntropy())).isTrue();
+  }
+
+  /** Candidates just below and just above the 'minEntropy' given in the detector YAML, read in configure() */
+  @Test void test_min_entropy_boundary() {
+    var conf = SecretTestHelper.load("custom_xygeni_token");
+    var detector = (XygeniJwtDetector) SecretTestHelper.loadById(conf).get("custom_xygeni_token").get(0);
+    double min = detector.getMinEntropy();
+    assertThat(min).isEqualTo(3.0);
+
+    // 64 chars over 8 symbols, 8 of each, is exactly 3 bits per char
+    String below = "xya_" + repeat('a', 9) + repeat('b', 7) + symbols("cdefgh", 8); // 2.997
+    String above = "xya_" + repeat('a', 7) + 'i' + symbols("bcdefgh", 8); // 3.068
+    assertThat(Entropy.shannon(below, 4, below.length())).isLessThan(min).isGreaterThan(min - 0.01);
+    assertThat(Entropy.shannon(above, 4, above.length())).isGreaterThan(min).isLessThan(min + 0.1);
+
+    // the early check is on the token after the prefix, with the configured threshold
+    assertThat(Entropy.hasMinEntropy(below, 4, below.length(), min)).isFalse();
+    assertThat(Entropy.hasMinEntropy(above, 4, above.length(), min)).isTrue();
+    assertThat(detector.isValidToken(below)).isFalse();
+    // passing the early check is not enough: the candidate must still parse as a Xygeni JWT
+    assertThat(detector.isValidToken(above)).isFalse();
+  }
+
+  private static String repeat(char c, int times) {
+    return String.valueOf(c).repeat(times);
+  }
+
+  private static String symbols(String symbols, int times) {
+    var sb = new StringBuilder();
+    for(char c : symbols.toCharArray()) sb.append(repeat(c, times));
+    return sb.toString();
+  }
+
+  @Test void test_allowlisted_token_dropped(@TempDir Path tmp) throws IOException {
+    var detector = new XygeniJwtDetector();
+    String token = "xya_" + EXPIRED_JWT;
+    boolean valid = detector.isValidToken(token);
+
+    Path allowlist = tmp.resolve("allowlist.txt");
+    Files.writeString(allowlist, "# test fixture\n" + SecretAllowlist.hash(token) + "\n");
+    System.setProperty(SecretAllowlist.PROPERTY, allowlist.toString());
+    try {
+      assertThat(detector.isValidToken(token)).isFalse();
+    } finally {
+      System.clearProperty(SecretAllowlist.PROPERTY);
+    }
+    assertThat(detector.isValidToken(token)).isEqualTo(valid);
+  }
+
+  /** The parallel harness must find the same secrets, in the same order, as the sequential one */
+  @Test void detect_parallel_matches_sequential() {
+    var text = new StringBuilder();
+    for(int i = 0; i < 400; i++) {
+      if(i % 7 == 0) text.append("token").append(i).append(" = xya_").append(EXPIRED_JWT).append('\n');
+      else if(i % 11 == 0) text.append("zoom").append(i).append(" = xya_").append(ZOOM_TOKEN).append('\n');
+      else text.append("line").append(i).append(" = nothing here\n");
+    }
+
+    var sequential = SecretTestHelper.runOnText("custom_xygeni_token", text.toString(), "custom_xygeni_token.yml");
+    var parallel = SecretTestHelper.runOnTextParallel("custom_xygeni_token", text.toString(), "custom_xygeni_token.yml", 8);
+
+    List<String> expected = new ArrayList<>(), found = new ArrayList<>();
+    sequential.secrets().findByDetector("custom_xygeni_token").forEach(s -> expected.add(JsonSerializer.dump(s, false)));
+    parallel.secrets().findByDetector("custom_xygeni_token").forEach(s -> found.add(JsonSerializer.dump(s, false)));
+    assertThat(expected).isNotEmpty(); // one every 7 lines, zoom tokens are rejected
+    assertThat(found).isEqualTo(expected);
+  }
+}
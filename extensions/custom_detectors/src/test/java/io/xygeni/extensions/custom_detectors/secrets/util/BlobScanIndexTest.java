@@ -0,0 +1,97 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BlobScanIndexTest {
+  @TempDir File tmp;
+
+  @Test void blob_sha_matches_git() throws IOException {
+    var f = new File(tmp, "hello.txt");
+    Files.writeString(f.toPath(), "hello\n", StandardCharsets.UTF_8);
+    // git hash-object hello.txt
+    assertThat(BlobScanIndex.blobSha(f.toPath())).isEqualTo("ce013625030ba8dba906f756967f9e9ca394464a");
+  }
+
+  /** Blob SHAs and paths, for the files in a temporary git repository, as given by {@code git ls-files -s} */
+  @Test void blob_sha_and_path_match_git() throws Exception {
+    var repo = tmp.toPath().resolve("repo");
+    var sub = repo.resolve("src/conf");
+    Files.createDirectories(sub);
+    Files.writeString(sub.resolve("app.properties"), "token=abc\r\nuser=me\r\n", StandardCharsets.UTF_8);
+    Files.write(sub.resolve("blob.bin"), new byte[] { 0, 1, 2, (byte) 0xff, '\n' });
+    Files.writeString(repo.resolve("empty.txt"), "", StandardCharsets.UTF_8);
+    assumeTrue(git(repo, "init", "-q") != null, "git is not available");
+    git(repo, "-c", "core.autocrlf=false", "add", "-A");
+
+    var base = repo.resolve("src"); // the scanned directory, below the repository root
+    assertThat(BlobScanIndex.repoRoot(base)).isEqualTo(repo.toAbsolutePath().normalize());
+    int files = 0;
+    for(String line : git(repo, "ls-files", "-s").split("\n")) {
+      // mode sha stage<TAB>path
+      String sha = line.split(" ")[1];
+      String path = line.substring(line.indexOf('\t') + 1);
+      var file = repo.resolve(path);
+      assertThat(BlobScanIndex.blobSha(file)).as(path).isEqualTo(sha);
+      // the same entry whether the file is given as absolute, or relative to the scanned directory
+      assertThat(BlobScanIndex.repoPath(repo, base, file.toString())).isEqualTo(path);
+      if(file.startsWith(base)) assertThat(BlobScanIndex.repoPath(repo, base, base.relativize(file).toString())).isEqualTo(path);
+      files++;
+    }
+    assertThat(files).isEqualTo(3);
+  }
+
+  /** Runs git in dir, returning its output, or null if git could not be run */
+  private static String git(Path dir, String... args) throws InterruptedException {
+    var cmd = new ArrayList<String>();
+    cmd.add("git");
+    cmd.addAll(List.of(args));
+    try {
+      var process = new ProcessBuilder(cmd).directory(dir.toFile()).redirectErrorStream(true).start();
+      String out = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+      return process.waitFor() == 0 ? out : null;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Test void save_and_reopen() {
+    var file = new File(tmp, "idx/secrets.idx");
+    var index = BlobScanIndex.open(file, "v1");
+    index.markClean("src/a.json", "aaa");
+    index.markClean("src/b.json", "bbb");
+    index.markDirty("src/b.json", "bbb");
+    index.markClean("src\\win.json", "ccc");
+    index.save();
+
+    var reopened = BlobScanIndex.open(file, "v1");
+    assertThat(reopened.isClean("src/a.json", "aaa")).isTrue();
+    assertThat(reopened.isClean("src/b.json", "bbb")).isFalse();
+    assertThat(reopened.isClean("src/win.json", "ccc")).isTrue();
+    // same content at another path must be scanned, detectors select files by path
+    assertThat(reopened.isClean(".docker/config.json", "aaa")).isFalse();
+    // another detector set discards the index
+    assertThat(BlobScanIndex.open(file, "v2").size()).isZero();
+  }
+
+  @Test void detector_set_version_changes_with_config() throws IOException {
+    var conf = new File(tmp, "custom.yml");
+    Files.writeString(conf.toPath(), "id: custom\nvalue:\n  regex:\n    pattern: 'abc'\n", StandardCharsets.UTF_8);
+    String v1 = BlobScanIndex.detectorSetVersion(List.of(conf), getClass().getClassLoader());
+    assertThat(BlobScanIndex.detectorSetVersion(List.of(conf), getClass().getClassLoader())).isEqualTo(v1);
+
+    Files.writeString(conf.toPath(), "id: custom\nvalue:\n  regex:\n    pattern: 'abcd'\n", StandardCharsets.UTF_8);
+    assertThat(BlobScanIndex.detectorSetVersion(List.of(conf), getClass().getClassLoader())).isNotEqualTo(v1);
+  }
+}
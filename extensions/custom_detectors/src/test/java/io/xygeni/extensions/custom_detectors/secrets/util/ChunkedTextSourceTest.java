@@ -0,0 +1,98 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkedTextSourceTest {
+  private static final Pattern TOKEN = Pattern.compile("glpat-[0-9a-zA-Z\\-=_]{20}");
+
+  @Test void owned_regions_cover_text() {
+    String text = randomText(new Random(1), 50_000, 0.02);
+    var owned = new StringBuilder();
+    try(var source = new ChunkedTextSource(new StringReader(text), 1000, 64)) {
+      while(source.hasNext()) {
+        var chunk = source.next();
+        assertThat(chunk.length()).isLessThanOrEqualTo(source.getCapacity());
+        owned.append(chunk.getText(), chunk.getOwnedFrom(), chunk.getOwnedTo());
+      }
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+    assertThat(owned.toString()).isEqualTo(text);
+  }
+
+  @Test void cuts_at_line_breaks_and_counts_lines() {
+    String text = "line 1\nline 2\nline 3\nline 4\nline 5\n";
+    var source = new ChunkedTextSource(new StringReader(text), 16, 4);
+    List<Long> firstLines = new ArrayList<>();
+    while(source.hasNext()) {
+      var chunk = source.next();
+      assertThat(chunk.isSplitLine()).isFalse();
+      var owned = chunk.getText().subSequence(chunk.getOwnedFrom(), chunk.getOwnedTo()).toString();
+      assertThat(owned).endsWith("\n").startsWith("line " + chunk.getFirstLine());
+      firstLines.add(chunk.getFirstLine());
+    }
+    assertThat(firstLines).containsExactly(1L, 3L, 5L);
+  }
+
+  @Test void splits_long_lines() {
+    String text = "x".repeat(100);
+    var source = new ChunkedTextSource(new StringReader(text), 30, 5);
+    var offsets = new ArrayList<Long>();
+    while(source.hasNext()) {
+      var chunk = source.next();
+      offsets.add(chunk.getOffset());
+      if(chunk.getOffset() < 90) assertThat(chunk.isSplitLine()).isTrue();
+    }
+    assertThat(offsets).containsExactly(0L, 30L, 60L, 90L);
+  }
+
+  /** Matches owned by the chunks are the matches on the whole text, including those straddling a boundary */
+  @Test void finds_every_match_once() {
+    var rnd = new Random(42);
+    for(int round = 0; round < 50; round++) {
+      // long lines with no breaks are split, the rest are cut at line breaks
+      String text = randomText(rnd, 20_000 + rnd.nextInt(20_000), rnd.nextBoolean() ? 0.0 : 0.01);
+      List<Long> expected = new ArrayList<>();
+      Matcher m = TOKEN.matcher(text);
+      while(m.find()) expected.add((long) m.start());
+      assertThat(expected).isNotEmpty();
+
+      List<Long> found = new ArrayList<>();
+      var source = new ChunkedTextSource(new StringReader(text), 500 + rnd.nextInt(1500), 32);
+      while(source.hasNext()) {
+        var chunk = source.next();
+        Matcher cm = TOKEN.matcher(chunk.getText());
+        while(cm.find()) {
+          if(chunk.owns(cm.start())) found.add(chunk.getOffset() + cm.start() - chunk.getOwnedFrom());
+        }
+      }
+      assertThat(found).isEqualTo(expected);
+    }
+  }
+
+  private static String randomText(Random rnd, int size, double lineBreakRate) {
+    String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789 =;";
+    var sb = new StringBuilder(size + 64);
+    while(sb.length() < size) {
+      if(rnd.nextInt(200) == 0) {
+        sb.append("glpat-");
+        for(int i = 0; i < 20; i++) sb.append((char) ('a' + rnd.nextInt(26)));
+        sb.append(' ');
+      } else if(rnd.nextDouble() < lineBreakRate) {
+        sb.append('\n');
+      } else {
+        sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      }
+    }
+    return sb.toString();
+  }
+}
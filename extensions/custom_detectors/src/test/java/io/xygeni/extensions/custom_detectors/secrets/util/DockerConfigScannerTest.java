@@ -0,0 +1,46 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import io.xygeni.extensions.custom_detectors.TestHelper;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DockerConfigScannerTest {
+  private static final File DIR = TestHelper.getTestResourcesDir("secrets/dockercfg");
+
+  @Test void config_json() throws IOException {
+    assertThat(DockerConfigScanner.hasCredentials(new File(DIR, "ci/.docker/config.json").toPath())).isTrue();
+  }
+
+  @Test void legacy_dockercfg() throws IOException {
+    assertThat(DockerConfigScanner.hasCredentials(new File(DIR, "legacy/.dockercfg").toPath())).isTrue();
+  }
+
+  @Test void no_inline_credentials() throws IOException {
+    assertThat(DockerConfigScanner.hasCredentials(new File(DIR, "desktop/.docker/config.json").toPath())).isFalse();
+  }
+
+  @Test void skips_other_values() throws IOException {
+    String json = "{ \"auths\": { \"r1\": { \"email\": \"a@b.c\", \"auth\": 42, \"nested\": { \"auth\": \"dTpw\" } } }," +
+      " \"proxies\": { \"default\": { \"auth\": \"dTpw\" } }, \"auth\": \"dTpw\" }";
+    assertThat(hasCredentials(json)).isFalse();
+    // not base64
+    assertThat(hasCredentials("{ \"auths\": { \"r1\": { \"auth\": \"not base64!\" } } }")).isFalse();
+    assertThat(hasCredentials("{ \"auths\": { \"r1\": { \"auth\": \"\" } } }")).isFalse();
+  }
+
+  @Test void legacy_only_without_auths() throws IOException {
+    // 'proxies' comes first, and has an 'auth' at the registry level: not a legacy registry, as the file has 'auths'
+    assertThat(hasCredentials("{ \"proxies\": { \"auth\": \"dTpw\" }, \"auths\": { \"r1\": { \"email\": \"a@b.c\" } } }")).isFalse();
+    assertThat(hasCredentials("{ \"proxies\": { \"auth\": \"dTpw\" }, \"auths\": { \"r1\": { \"auth\": \"dTpx\" } } }")).isTrue();
+    assertThat(hasCredentials("{ \"r1\": { \"email\": \"a@b.c\" }, \"r2\": { \"auth\": \"dTpx\" } }")).isTrue();
+  }
+
+  private static boolean hasCredentials(String json) throws IOException {
+    return DockerConfigScanner.hasCredentials(new StringReader(json));
+  }
+}
@@ -0,0 +1,49 @@
+package io.xygeni.extensions.custom_detectors.secrets.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static io.xygeni.extensions.custom_detectors.secrets.util.Entropy.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class EntropyTest {
+
+  @Test void shannon() {
+    assertThat(Entropy.shannon("aaaa")).isEqualTo(0.0);
+    assertThat(Entropy.shannon("abcd")).isCloseTo(2.0, within(1e-9));
+    assertThat(Entropy.shannon("aabb")).isCloseTo(1.0, within(1e-9));
+    // window, no substring
+    assertThat(Entropy.shannon("xya_abcd", 4, 8)).isCloseTo(2.0, within(1e-9));
+    // non latin-1 chars
+    assertThat(Entropy.shannon("ab中文")).isCloseTo(2.0, within(1e-9));
+  }
+
+  /** The early-rejecting check must give the same answer as computing the whole entropy */
+  @Test void min_entropy_same_as_full_computation() {
+    var rnd = new Random(42);
+    String[] alphabets = { "a", "ab", "abc0", "0123456789abcdef", "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_" };
+    for(int i = 0; i < 5_000; i++) {
+      String alphabet = alphabets[rnd.nextInt(alphabets.length)];
+      int len = 1 + rnd.nextInt(80);
+      var sb = new StringBuilder();
+      for(int j = 0; j < len; j++) sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+      double min = rnd.nextDouble() * 6;
+
+      double h = Entropy.shannon(sb);
+      if(Math.abs(h - min) < 1e-9) continue; // too close to call with floating point
+      assertThat(Entropy.hasMinEntropy(sb, min)).as("%s (H=%s) >= %s", sb, h, min).isEqualTo(h >= min);
+    }
+  }
+
+  @Test void char_classes() {
+    assertThat(Entropy.isBase64("dXNlcjpwYXNz", 0, 12)).isTrue(); // user:pass
+    assertThat(Entropy.isBase64("dXNlcjpwYXNzMQ==", 0, 16)).isTrue();
+    assertThat(Entropy.isBase64("dXNlcjpwYXNzMQ=", 0, 15)).isFalse();
+    assertThat(Entropy.isBase64("not base64!", 0, 11)).isFalse();
+    assertThat(Entropy.isPrintableAscii("user:pass", 0, 9)).isTrue();
+    assertThat(Entropy.isPrintableAscii("user\u0000pass", 0, 9)).isFalse();
+    assertThat(Entropy.charClasses("aB3", 0, 3)).isEqualTo(LOWER | UPPER | DIGIT);
+  }
+}
@@ -0,0 +1,69 @@
+package io.xygeni.extensions.custom_detectors.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeywordMatcherTest {
+  private static final List<String> ACLS = List.of("public-read", "public-read-write", "website", "authenticated-read");
+
+  @Test void contains() {
+    var m = KeywordMatcher.of(ACLS);
+    for(String acl : ACLS) assertThat(m.contains(acl)).isTrue();
+    assertThat(m.contains(new StringBuilder("website"))).isTrue();
+    assertThat(m.contains("private")).isFalse();
+    assertThat(m.contains("public-reae")).isFalse();
+    assertThat(m.contains("")).isFalse();
+    assertThat(m.contains(null)).isFalse();
+  }
+
+  @Test void ordinals() {
+    var m = KeywordMatcher.of(ACLS);
+    assertThat(m.indexOf("public-read")).isZero();
+    assertThat(m.indexOf("authenticated-read")).isEqualTo(3);
+    assertThat(m.keyword(m.indexOf("website"))).isEqualTo("website");
+    assertThat(KeywordMatcher.of("a", "b", "a").keywords()).containsExactly("a", "b");
+  }
+
+  @Test void empty() {
+    assertThat(KeywordMatcher.of(Set.of()).contains("x")).isFalse();
+    assertThat(KeywordMatcher.of(List.of()).isEmpty()).isTrue();
+  }
+
+  @Test void same_hash_code() {
+    // "Aa" and "BB" have the same String.hashCode()
+    var m = KeywordMatcher.of("Aa", "BB", "x");
+    assertThat(m.contains("Aa")).isTrue();
+    assertThat(m.contains("BB")).isTrue();
+    assertThat(m.contains("AaBB")).isFalse();
+    assertThat(m.indexOf(new StringBuilder("BB"))).isEqualTo(1);
+  }
+
+  @Test void many_keywords() {
+    var rnd = new Random(7);
+    List<String> keywords = new ArrayList<>();
+    for(int i = 0; i < 2000; i++) keywords.add(Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36));
+    var m = KeywordMatcher.of(keywords);
+    for(int i = 0; i < keywords.size(); i++) assertThat(m.indexOf(keywords.get(i))).isEqualTo(keywords.indexOf(keywords.get(i)));
+    for(int i = 0; i < 2000; i++) {
+      String other = "z" + Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36);
+      assertThat(m.contains(other)).isEqualTo(keywords.contains(other));
+    }
+  }
+
+  @Test void table_grows_linearly() {
+    var rnd = new Random(11);
+    for(int n : new int[] {1, 10, 1000, 50_000}) {
+      List<String> keywords = new ArrayList<>();
+      for(int i = 0; i < n; i++) keywords.add(Long.toString(rnd.nextLong() & Long.MAX_VALUE, 36));
+      var m = KeywordMatcher.of(keywords);
+      assertThat(m.tableSize()).isBetween(n, Math.max(2, n * 5 / 2));
+      for(String k : keywords) assertThat(m.contains(k)).isTrue();
+    }
+  }
+}
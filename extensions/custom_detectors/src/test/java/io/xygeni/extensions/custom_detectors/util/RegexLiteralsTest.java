@@ -0,0 +1,32 @@
+package io.xygeni.extensions.custom_detectors.util;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegexLiteralsTest {
+
+  @ParameterizedTest(name = "{0} -> ''{1}''")
+  @CsvSource(delimiter = ' ', emptyValue = "", value = {
+    "\\bglpat-[0-9a-zA-Z\\-=_]{20,22}\\b glpat-",
+    "\\bsl\\.[A-Za-z0-9\\-\\_]{130,140}\\b sl.",
+    "xya_eyJ[A-Za-z0-9-_=]+\\.[A-Za-z0-9-_=]+ xya_eyJ",
+    "^release/.+$ release/",
+    "auth auth",
+    "abc?d ab",
+    "abc*d ab",
+    "abc{0,2}d ab",
+    "abc+d abc",
+    "abc{2}d abc",
+    "\\Qa.b\\Ec a.bc",
+    "(abc)d ''",
+    "abc|abd ''",
+    "[a-z]+abc ''",
+    "\\d+abc ''",
+    "a(b|c) a",
+  })
+  void literalPrefix(String regex, String expected) {
+    assertThat(RegexLiterals.literalPrefix(regex)).isEqualTo(expected);
+  }
+}
@@ -0,0 +1,34 @@
+resource "aws_lb" "internal" {
+  name     = "internal"
+  internal = true
+}
+
+resource "aws_lb" "network" {
+  name               = "network"
+  load_balancer_type = "network"
+}
+
+resource "aws_lb" "protected" {
+  name               = "protected"
+  load_balancer_type = "application"
+}
+
+resource "aws_wafv2_web_acl" "waf" {
+  name  = "waf"
+  scope = "REGIONAL"
+}
+
+resource "aws_wafv2_web_acl_association" "protected" {
+  resource_arn = aws_lb.protected.arn
+  web_acl_arn  = aws_wafv2_web_acl.waf.arn
+}
+
+resource "aws_lb" "public" {
+  name               = "public"
+  load_balancer_type = "application"
+}
+
+resource "aws_alb" "public_alb" {
+  name     = "public-alb"
+  internal = false
+}
@@ -0,0 +1,13 @@
+variable "website_bucket" {
+  default = "website"
+}
+
+resource "aws_s3_bucket" "website" {
+  bucket = var.website_bucket
+}
+
+# the bucket is not referenced by resource address: only the engine can link them
+resource "aws_s3_bucket_acl" "website_acl" {
+  bucket = var.website_bucket
+  acl    = "private" # no flaw, whatever the engine links it to
+}